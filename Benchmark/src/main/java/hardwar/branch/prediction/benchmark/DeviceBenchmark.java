@@ -0,0 +1,123 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.StorageMode;
+import hardwar.branch.prediction.shared.devices.Cache;
+import hardwar.branch.prediction.shared.devices.CombinationalLogic;
+import hardwar.branch.prediction.shared.devices.DeviceFactory;
+import hardwar.branch.prediction.shared.devices.PackedRegisterBank;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+microbenchmarks of the shared devices
+
+the keys are generated once and used round robin, so every operation touches a different entry.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeviceBenchmark {
+    private static final int KEYS = 1 << 12;
+    private static final int SC_SIZE = 2;
+    private static final int SELECTOR_SIZE = 8;
+
+    @Param({"4", "8", "12"})
+    public int BHRSize;
+
+    @Param({"MAP", "DENSE", "SET_ASSOCIATIVE"})
+    public StorageMode storageMode;
+
+    private Cache<Bit[], Bit[]> PHT;
+    private Cache<Bit[], Bit[]> PAPHT;
+    private PackedRegisterBank registerBank;
+    private SIPORegister register;
+    private Bit[][] historyKeys; // BHRSize bit keys
+    private Bit[][] addressKeys; // SELECTOR_SIZE + BHRSize bit keys
+    private Bit[][] selectors; // SELECTOR_SIZE bit keys
+    private Bit[] block;
+    private Bit[] counter;
+    private int position;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        PHT = DeviceFactory.pageHistoryTable(storageMode, 1 << BHRSize, SC_SIZE);
+        PAPHT = DeviceFactory.perAddressPredictionHistoryTable(storageMode, SELECTOR_SIZE, 1 << BHRSize, SC_SIZE);
+        registerBank = DeviceFactory.registerBank(storageMode, SELECTOR_SIZE, BHRSize);
+        register = new SIPORegister("BHR", BHRSize, null);
+
+        Random random = new Random(2023);
+        historyKeys = new Bit[KEYS][];
+        addressKeys = new Bit[KEYS][];
+        selectors = new Bit[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            historyKeys[i] = BitVector.of(random.nextLong(), BHRSize).toArray();
+            addressKeys[i] = BitVector.of(random.nextLong(), SELECTOR_SIZE + BHRSize).toArray();
+            selectors[i] = BitVector.of(random.nextLong(), SELECTOR_SIZE).toArray();
+        }
+        block = BitVector.of(1, SC_SIZE).toArray();
+        counter = BitVector.of(1, SC_SIZE).toArray();
+        position = 0;
+    }
+
+    private int next() {
+        int i = position;
+        position = (i + 1) & (KEYS - 1);
+        return i;
+    }
+
+    @Benchmark
+    public Bit[] pageHistoryTableSetDefault() {
+        return PHT.setDefault(historyKeys[next()], block);
+    }
+
+    @Benchmark
+    public Bit[] perAddressPredictionHistoryTableSetDefault() {
+        return PAPHT.setDefault(addressKeys[next()], block);
+    }
+
+    @Benchmark
+    public Bit[] registerBankReadAndWrite() {
+        Bit[] selector = selectors[next()];
+        Bit[] value = registerBank.read(selector).read();
+        registerBank.write(selector, value);
+        return value;
+    }
+
+    @Benchmark
+    public Bit[] SIPORegisterInsert() {
+        register.insert(Bit.of((next() & 1) == 1));
+        return register.read();
+    }
+
+    @Benchmark
+    public Bit[] combinationalLogicCount() {
+        counter = CombinationalLogic.count(counter, (next() & 1) == 1, CountMode.SATURATING);
+        return counter;
+    }
+
+    @Benchmark
+    public Bit[] combinationalLogicHash() {
+        return CombinationalLogic.hash(addressKeys[next()], SELECTOR_SIZE, HashMode.XOR);
+    }
+}
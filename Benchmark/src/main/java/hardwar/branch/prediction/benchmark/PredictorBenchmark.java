@@ -0,0 +1,89 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.StorageMode;
+import hardwar.branch.prediction.simulation.Configuration;
+import hardwar.branch.prediction.simulation.DecodedTrace;
+import hardwar.branch.prediction.simulation.PredictorFamily;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+predict + update throughput of the judged predictors
+
+one operation is a single branch of the trace, the trace is replayed from the start
+when it is finished. the predictor is created again for each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PredictorBenchmark {
+    @Param({"GAg", "GAp", "GAs", "PAg", "PAp", "PAs", "SAg", "SAp", "SAs", "GShare", "TAGE", "Perceptron",
+            "Tournament"})
+    public PredictorFamily family;
+
+    @Param({"4", "8", "12"})
+    public int BHRSize;
+
+    @Param({"MAP", "DENSE", "SET_ASSOCIATIVE"})
+    public StorageMode storageMode;
+
+    @Param({Traces.SYNTHETIC})
+    public String trace;
+
+    private BranchInstruction[] instructions;
+    private BranchResult[] results;
+    private BranchPredictor predictor;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void loadTrace() throws IOException {
+        DecodedTrace decoded = Traces.load(trace);
+        instructions = new BranchInstruction[decoded.size()];
+        results = new BranchResult[decoded.size()];
+        for (int i = 0; i < decoded.size(); i++) {
+            instructions[i] = decoded.getInstruction(i);
+            results[i] = decoded.getResult(i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createPredictor() {
+        // the branch instruction size must be the address width of the trace
+        int branchInstructionSize = instructions[0].getInstructionAddress().length;
+        int KSize = Math.min(4, branchInstructionSize);
+        Configuration configuration = new Configuration(family, BHRSize, 2, branchInstructionSize, KSize,
+                HashMode.XOR);
+        predictor = family.create(configuration, storageMode);
+        position = 0;
+    }
+
+    @Benchmark
+    public BranchResult predictAndUpdate() {
+        int i = position;
+        position = i + 1 == instructions.length ? 0 : i + 1;
+
+        BranchResult prediction = predictor.predict(instructions[i]);
+        predictor.update(instructions[i], results[i]);
+        return prediction;
+    }
+}
@@ -0,0 +1,103 @@
+package hardwar.branch.prediction.benchmark;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.simulation.DecodedTrace;
+import hardwar.branch.prediction.trace.BinaryTraceReader;
+import hardwar.branch.prediction.trace.JsonTraceReader;
+import hardwar.branch.prediction.trace.TraceReader;
+import hardwar.branch.prediction.trace.TraceRecord;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/*
+the traces of the benchmarks
+
+a trace is named by the trace parameter of a benchmark:
+    synthetic        a generated trace with biased branches and loops, the same for every run
+    <file>.bin       a recorded trace in the binary trace format
+    <dir>            a recorded trace, the instruction.json and result.json files of the directory
+ */
+final class Traces {
+    static final String SYNTHETIC = "synthetic";
+
+    private static final int SYNTHETIC_SIZE = 1 << 16;
+    private static final int SYNTHETIC_BRANCHES = 256; // number of distinct branches of the synthetic trace
+
+    private Traces() {
+    }
+
+    static DecodedTrace load(String trace) throws IOException {
+        if (SYNTHETIC.equals(trace)) return synthetic();
+
+        Path path = Paths.get(trace);
+        try (TraceReader reader = trace.endsWith(".bin") ? new BinaryTraceReader(path)
+                : new JsonTraceReader(path.resolve("instruction.json"), path.resolve("result.json"))) {
+            DecodedTrace decoded = DecodedTrace.load(reader);
+            if (decoded.size() == 0) throw new IOException("trace is empty: " + trace);
+            return decoded;
+        }
+    }
+
+    /**
+     * @return a trace of 8 bit addresses, half of the branches are biased and the other half are loops
+     */
+    static DecodedTrace synthetic() throws IOException {
+        Random random = new Random(2023);
+        long[] addresses = new long[SYNTHETIC_BRANCHES];
+        double[] bias = new double[SYNTHETIC_BRANCHES];
+        int[] period = new int[SYNTHETIC_BRANCHES];
+        int[] iteration = new int[SYNTHETIC_BRANCHES];
+        for (int i = 0; i < SYNTHETIC_BRANCHES; i++) {
+            addresses[i] = random.nextInt(256);
+            bias[i] = random.nextDouble();
+            period[i] = i % 2 == 0 ? 0 : 2 + random.nextInt(8);
+        }
+
+        BranchInstruction[] instructions = new BranchInstruction[SYNTHETIC_SIZE];
+        BranchResult[] results = new BranchResult[SYNTHETIC_SIZE];
+        for (int i = 0; i < SYNTHETIC_SIZE; i++) {
+            int branch = random.nextInt(SYNTHETIC_BRANCHES);
+            boolean taken;
+            if (period[branch] == 0) {
+                taken = random.nextDouble() < bias[branch];
+            } else {
+                taken = ++iteration[branch] % period[branch] != 0;
+            }
+            instructions[i] = new BranchInstruction(BitVector.of(random.nextInt(8), 3),
+                    BitVector.of(addresses[branch], 8), BitVector.of(random.nextInt(256), 8));
+            results[i] = BranchResult.of(taken);
+        }
+        return DecodedTrace.load(new ArrayTraceReader(instructions, results));
+    }
+
+    /**
+     * reads a trace from arrays
+     */
+    private static final class ArrayTraceReader implements TraceReader {
+        private final BranchInstruction[] instructions;
+        private final BranchResult[] results;
+        private int position;
+
+        ArrayTraceReader(BranchInstruction[] instructions, BranchResult[] results) {
+            this.instructions = instructions;
+            this.results = results;
+        }
+
+        @Override
+        public TraceRecord next() {
+            if (position == instructions.length) return null;
+            TraceRecord record = new TraceRecord(instructions[position], results[position]);
+            position++;
+            return record;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -3,11 +3,14 @@ package hardwar.branch.prediction.judged.GAg;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class GAg implements BranchPredictor {
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
+    private final PackedCache PHT; // page history table
     private final ShiftRegister SC; // saturated counter register
 
     public GAg() {
@@ -21,10 +24,48 @@ public class GAg implements BranchPredictor {
      * @param SCSize  the size of the register which hold the saturating counter value and the cache block size
      */
     public GAg(int BHRSize, int SCSize) {
+        this(BHRSize, SCSize, StorageMode.MAP);
+    }
+
+    /**
+     * Creates a new GAg predictor with the given BHR register size and PHT storage.
+     *
+     * @param BHRSize     the size of the BHR register
+     * @param SCSize      the size of the register which hold the saturating counter value and the cache block size
+     * @param storageMode the storage of the PHT, DENSE keeps the counters in a primitive array
+     */
+    public GAg(int BHRSize, int SCSize, StorageMode storageMode) {
+        this(BHRSize, SCSize, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * Creates a new GAg predictor with the given BHR register size and PHT storage.
+     *
+     * @param BHRSize     the size of the BHR register
+     * @param SCSize      the size of the register which hold the saturating counter value and the cache block size
+     * @param storageMode the storage of the PHT, DENSE keeps the counters in a primitive array
+     * @param countMode   the counter type of the PHT blocks
+     */
+    public GAg(int BHRSize, int SCSize, StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * Creates a new GAg predictor with the given BHR register size and PHT storage.
+     *
+     * @param BHRSize     the size of the BHR register
+     * @param SCSize      the size of the register which hold the saturating counter value and the cache block size
+     * @param storageMode the storage of the PHT, DENSE keeps the counters in a primitive array
+     * @param countMode   the counter type of the PHT blocks
+     * @param budget      the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public GAg(int BHRSize, int SCSize, StorageMode storageMode, CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
 
         Bit[] defaultBlock = new Bit[BHRSize];
         Arrays.fill(defaultBlock, Bit.ZERO);
-        this.BHR = new SIPORegister("BHR",BHRSize,null) ;
+        this.BHR = DeviceFactory.shiftRegister(storageMode, "BHR", BHRSize);
         //
 
         // TODO : complete the constructor
@@ -33,7 +74,7 @@ public class GAg implements BranchPredictor {
 
         // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
         int PHT_col = 1 << BHRSize ;
-        PHT = new PageHistoryTable(PHT_col, SCSize);
+        PHT = DeviceFactory.pageHistoryTable(storageMode, PHT_col, SCSize, budget);
 
             
         
@@ -72,10 +113,10 @@ public class GAg implements BranchPredictor {
         //TODO OOOOOOOOOOOOOOOOOOOOO
 
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PHT.put(BHR.read(), SC.read());
 
@@ -89,6 +130,90 @@ public class GAg implements BranchPredictor {
         // TODO: complete Task 2
     }
 
+    /**
+     * Predict the branch with a token which holds the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31) return BranchPredictor.super.lookup(instruction);
+
+        long history = BHR.readVector().toLong();
+        int counter = PHT.setDefault(history, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, 0, history, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
+        }
+
+        boolean taken = BranchResult.isTaken(actual);
+        PHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        BHR.insert(Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The cache entry
+     * is computed once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31) return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        long history = BHR.readVector().toLong();
+        int counter = PHT.setDefault(history, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PHT.count(history, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        BHR.insert(Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31)
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PHT = this.PHT;
+        long history = BHR.readVector().toLong();
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            counter = PHT.setDefault(history, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PHT.put(history, counter);
+            history = BitVector.shiftIn(history, BHRSize, taken);
+        }
+
+        BHR.load(BitVector.of(history, BHRSize));
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
 
     /**
      * @return a zero series of bits as default value of cache block
@@ -99,11 +224,45 @@ public class GAg implements BranchPredictor {
         return defaultBlock;
     }
 
+    @Override
+    public long getOccupancy() {
+        return PHT.size();
+    }
+
+    /**
+     * Save the count mode, the BHR, the SC register and the PHT into the checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        BHR.save(out);
+        SC.save(out);
+        PHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        BHR.restore(in);
+        SC.restore(in);
+        PHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return "GAg predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PHT.monitor();
     }
 
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * rows of the PHT
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("GAg predictor snapshot: \n").append(BHR.monitor()).append(SC.monitor());
+        PHT.monitor(out, filter, offset, limit);
+    }
+
     public static void main(String[] args) {
         
     }
@@ -3,13 +3,16 @@ package hardwar.branch.prediction.judged.GAp;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class GAp implements BranchPredictor {
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
     private final ShiftRegister SC; // saturating counter register
     private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PAPHT; // Per Address History Table
+    private final PackedCache PAPHT; // Per Address History Table
 
     public GAp() {
         this(4, 2, 8);
@@ -24,20 +27,81 @@ public class GAp implements BranchPredictor {
      * @param branchInstructionSize the number of bits which is used for saving a branch instruction
      */
     public GAp(int BHRSize, int SCSize, int branchInstructionSize) {
+        this(BHRSize, SCSize, branchInstructionSize, StorageMode.MAP);
+    }
+
+    /**
+     * Creates a new GAp predictor with the given BHR register size and PAPHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PAPHT, DENSE keeps all the counters in one primitive array
+     */
+    public GAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * Creates a new GAp predictor with the given BHR register size and PAPHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PAPHT, DENSE keeps all the counters in one primitive array
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public GAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * Creates a new GAp predictor with the given BHR register size and PAPHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PAPHT, DENSE keeps all the counters in one primitive array
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public GAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, CountMode countMode,
+               SetAssociativeBudget budget) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode,
+                DeviceFactory.perAddressPredictionHistoryTable(storageMode, branchInstructionSize, 1 << BHRSize, SCSize,
+                        budget),
+                countMode);
+    }
+
+    /**
+     * Creates a new GAp predictor on the given PAPHT, e.g. a SetAssociativePageHistoryTable with a fixed budget.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param PAPHT                 the table of the counters, an entry is the branch address followed by the BHR
+     *                              and a block is SCSize bits
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public GAp(int BHRSize, int SCSize, int branchInstructionSize, PackedCache PAPHT, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, StorageMode.DENSE, PAPHT, countMode);
+    }
+
+    private GAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, PackedCache PAPHT,
+                CountMode countMode) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
         this.branchInstructionSize = branchInstructionSize;
 
         Bit[] defaultBlock = new Bit[BHRSize];
         Arrays.fill(defaultBlock, Bit.ZERO);
-        this.BHR = new SIPORegister("BHR",BHRSize,null) ;
+        this.BHR = DeviceFactory.shiftRegister(storageMode, "BHR", BHRSize);
 
         defaultBlock = new Bit[SCSize];
         Arrays.fill(defaultBlock, Bit.ZERO);
         SC = new SIPORegister("SC", SCSize,null );
 
-        // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
-        int PHT_col =(1 << BHRSize);
-
-        PAPHT = new PerAddressPredictionHistoryTable(this.branchInstructionSize,PHT_col,SCSize);
+        this.PAPHT = PAPHT;
     }
 
     /**
@@ -48,6 +112,7 @@ public class GAp implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
+        checkAddress(branchInstruction);
         PAPHT.putIfAbsent(getCacheEntry(branchInstruction.getInstructionAddress()), getDefaultBlock());
 
         SC.load(PAPHT.get(getCacheEntry(branchInstruction.getInstructionAddress())));
@@ -64,11 +129,12 @@ public class GAp implements BranchPredictor {
      */
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        checkAddress(branchInstruction);
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PAPHT.put(getCacheEntry(branchInstruction.getInstructionAddress()), SC.read());
 
@@ -80,6 +146,131 @@ public class GAp implements BranchPredictor {
         }
     }
 
+    /**
+     * Predict the branch with a token which holds the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction, BHRSize)) return BranchPredictor.super.lookup(instruction);
+
+        long history = BHR.readVector().toLong();
+        long entry = getCacheEntry(instruction.getPackedInstructionAddress(), history, BHRSize);
+        int counter = PAPHT.setDefault(entry, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, 0, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
+        }
+
+        boolean taken = BranchResult.isTaken(actual);
+        PAPHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        BHR.insert(Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The cache entry
+     * is computed once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction, BHRSize))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        long history = BHR.readVector().toLong();
+        long entry = getCacheEntry(instruction.getPackedInstructionAddress(), history, BHRSize);
+        int counter = PAPHT.setDefault(entry, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PAPHT.count(entry, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        BHR.insert(Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length, BHRSize))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PAPHT = this.PAPHT;
+        long history = BHR.readVector().toLong();
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long entry = getCacheEntry(address, history, BHRSize);
+            counter = PAPHT.setDefault(entry, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PAPHT.put(entry, counter);
+            history = BitVector.shiftIn(history, BHRSize, taken);
+        }
+
+        BHR.load(BitVector.of(history, BHRSize));
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the cache entry, the same as the Bit[] version
+     */
+    private long getCacheEntry(BitVector address, long history, int BHRSize) {
+        return (address.toLong() << BHRSize) | history;
+    }
+
+    /**
+     * @return true if the branch address and the BHR together fit in the long of the packed cache entry, longer
+     * entries are handled by the Bit[] path
+     * @throws IllegalArgumentException if the branch address is not branchInstructionSize bits long
+     */
+    private boolean fits(BranchInstruction instruction, int BHRSize) {
+        checkAddress(instruction);
+        return instruction.getInstructionAddressLength() + BHRSize <= BitVector.MAX_LENGTH;
+    }
+
+    private boolean fits(BranchInstruction[] instructions, int offset, int length, int BHRSize) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i], BHRSize)) return false;
+        return true;
+    }
+
+    /**
+     * every path takes only branch addresses of branchInstructionSize bits, the BHR selectors and the cache entries
+     * of other widths would not be the same in the Bit[] and the packed paths
+     */
+    private void checkAddress(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() != branchInstructionSize)
+            throw new IllegalArgumentException("branch address must be " + branchInstructionSize + " bits long");
+    }
+
 
     /**
      * concat the branch address and BHR to retrieve the desired address
@@ -105,9 +296,43 @@ public class GAp implements BranchPredictor {
     /**
      * @return snapshot of caches and registers content
      */
+    @Override
+    public long getOccupancy() {
+        return PAPHT.size();
+    }
+
+    /**
+     * Save the count mode, the BHR, the SC register and the PAPHT into the checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        BHR.save(out);
+        SC.save(out);
+        PAPHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        BHR.restore(in);
+        SC.restore(in);
+        PAPHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return "GAp predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PAPHT.monitor();
     }
 
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * rows of the PAPHT
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("GAp predictor snapshot: \n").append(BHR.monitor()).append(SC.monitor());
+        PAPHT.monitor(out, filter, offset, limit);
+    }
+
 }
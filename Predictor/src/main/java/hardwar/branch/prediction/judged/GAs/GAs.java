@@ -5,16 +5,19 @@ import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 import sun.security.util.ArrayUtil;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class GAs implements BranchPredictor {
 
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
     private final int KSize;
     private final HashMode hashMode;
     private final ShiftRegister SC; // saturating counter register
     private final ShiftRegister BHR; // branch history register
-    private final Cache<Bit[], Bit[]> PSPHT; // Per Set Predication History Table
+    private final PackedCache PSPHT; // Per Set Predication History Table
 
     public GAs() {
         this(4, 2, 8, 4, HashMode.XOR);
@@ -29,17 +32,68 @@ public class GAs implements BranchPredictor {
      * @param branchInstructionSize the number of bits which is used for saving a branch instruction
      */
     public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashmode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashmode, StorageMode.MAP);
+    }
+
+    /**
+     * Creates a new GAs predictor with the given BHR register size and PSPHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash which select the PHT
+     * @param hashmode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT, DENSE keeps all the counters in one primitive array
+     */
+    public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashmode,
+               StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashmode, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * Creates a new GAs predictor with the given BHR register size and PSPHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash which select the PHT
+     * @param hashmode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT, DENSE keeps all the counters in one primitive array
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashmode,
+               StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashmode,
+                storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * Creates a new GAs predictor with the given BHR register size and PSPHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash which select the PHT
+     * @param hashmode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT, DENSE keeps all the counters in one primitive array
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public GAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashmode,
+               StorageMode storageMode, CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
         // TODO: complete the constructor
         this.branchInstructionSize = branchInstructionSize;
         this.KSize = KSize;
-        this.hashMode = HashMode.XOR;
+        this.hashMode = hashmode;
 
         // Initialize the BHR register with the given size and no default value
-        BHR = new SIPORegister("BHR", BHRSize, null);
+        BHR = DeviceFactory.shiftRegister(storageMode, "BHR", BHRSize);
 
         // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PSPHT = new PerAddressPredictionHistoryTable(KSize, 1 << BHRSize, SCSize);
+        PSPHT = DeviceFactory.perAddressPredictionHistoryTable(storageMode, KSize, 1 << BHRSize, SCSize, budget);
 
         // Initialize the saturating counter
         SC = new SIPORegister("SC", SCSize, null);
@@ -73,9 +127,9 @@ public class GAs implements BranchPredictor {
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
         if (actual == BranchResult.TAKEN) {
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         } else {
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PSPHT.put(getCacheEntry(branchInstruction.getInstructionAddress()), SC.read());
 
@@ -87,6 +141,152 @@ public class GAs implements BranchPredictor {
 
     }
 
+    /**
+     * Predict the branch with a token which holds the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction)) return BranchPredictor.super.lookup(instruction);
+
+        long history = BHR.readVector().toLong();
+        long entry = getCacheEntry(instruction.getPackedInstructionAddress(), history, BHRSize);
+        int counter = PSPHT.setDefault(entry, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, 0, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
+        }
+
+        boolean taken = BranchResult.isTaken(actual);
+        PSPHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        BHR.insert(Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The cache entry
+     * is computed once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        long history = BHR.readVector().toLong();
+        long entry = getCacheEntry(instruction.getPackedInstructionAddress(), history, BHRSize);
+        int counter = PSPHT.setDefault(entry, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PSPHT.count(entry, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        BHR.insert(Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = BHR.getLength();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PSPHT = this.PSPHT;
+        long history = BHR.readVector().toLong();
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long entry = getCacheEntry(address, history, BHRSize);
+            counter = PSPHT.setDefault(entry, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PSPHT.put(entry, counter);
+            history = BitVector.shiftIn(history, BHRSize, taken);
+        }
+
+        BHR.load(BitVector.of(history, BHRSize));
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @return true if the branch address fits in a packed vector, longer addresses are handled by the Bit[] path
+     */
+    private static boolean fits(BranchInstruction instruction) {
+        return instruction.getInstructionAddressLength() <= BitVector.MAX_LENGTH;
+    }
+
+    private static boolean fits(BranchInstruction[] instructions, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i])) return false;
+        return true;
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the cache entry, the same as the Bit[] version. the hash of the address and the
+     * history in gshare mode, otherwise the hash of the address concatenated with the history
+     */
+    private long getCacheEntry(BitVector address, long history, int BHRSize) {
+        if (hashMode == HashMode.GSHARE) {
+            return CombinationalLogic.hash(address.toLong(), address.length(), history, BHRSize, KSize + BHRSize,
+                    hashMode);
+        }
+        long hash = CombinationalLogic.hash(address.toLong(), address.length(), history, BHRSize, KSize, hashMode);
+        return (hash << BHRSize) | history;
+    }
+
+    @Override
+    public long getOccupancy() {
+        return PSPHT.size();
+    }
+
+    /**
+     * Save the count and hash modes, the BHR, the SC register and the PSPHT into the
+     * checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        out.writeMode(hashMode);
+        BHR.save(out);
+        SC.save(out);
+        PSPHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        in.expect(hashMode, "hash mode");
+        BHR.restore(in);
+        SC.restore(in);
+        PSPHT.restore(in);
+    }
+
     /**
      * @return snapshot of caches and registers content
      */
@@ -94,6 +294,16 @@ public class GAs implements BranchPredictor {
         return "GAp predictor snapshot: \n" + BHR.monitor() + SC.monitor() + PSPHT.monitor();
     }
 
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * rows of the PSPHT
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("GAp predictor snapshot: \n").append(BHR.monitor()).append(SC.monitor());
+        PSPHT.monitor(out, filter, offset, limit);
+    }
+
 
     /**
      * concat the PC and BHR to retrieve the desired address
@@ -102,11 +312,16 @@ public class GAs implements BranchPredictor {
      * @return concatenated value of first M bits of branch address and BHR
      */
     private Bit[] getCacheEntry(Bit[] branchAddress) {
+        Bit[] bhrBits = BHR.read();
+        // gshare xors the BHR into the address hash over the whole entry instead of concatenating it
+        if (hashMode == HashMode.GSHARE) {
+            return CombinationalLogic.hash(branchAddress, bhrBits, KSize + bhrBits.length, hashMode);
+        }
+
         // hash the branch address
-        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, KSize, hashMode);
+        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, bhrBits, KSize, hashMode);
 
         // Concatenate the Hash bits with the BHR bits
-        Bit[] bhrBits = BHR.read();
         Bit[] cacheEntry = new Bit[hashKSize.length + bhrBits.length];
         System.arraycopy(hashKSize, 0, cacheEntry, 0, hashKSize.length);
         System.arraycopy(bhrBits, 0, cacheEntry, hashKSize.length, bhrBits.length);
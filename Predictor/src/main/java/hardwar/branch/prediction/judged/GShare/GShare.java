@@ -0,0 +1,198 @@
+package hardwar.branch.prediction.judged.GShare;
+
+import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.shared.devices.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+a gshare predictor, one global BHR and one PHT of 2^K counters
+
+the PHT entry of a branch is the xor of the folded branch address and the folded BHR (see HashMode.GSHARE).
+the BHR and the counters are kept in a long and an int array, no register or Bit[] is built on the predictions.
+the PHT is also viewed as a DensePageHistoryTable, which is only used for the checkpoint and the monitor.
+ */
+public class GShare implements BranchPredictor {
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final int BHRSize;
+    private final int SCSize;
+    private final int branchInstructionSize;
+    private final int KSize;
+    private final int[] PHT; // counter of each entry, -1 if the entry is empty
+    private final PackedCache table; // the PHT as a page history table
+    private long BHR; // branch history register, the last result is the most significant bit
+
+    public GShare() {
+        this(8, 2, 8, 8);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the saturating counters
+     * @param branchInstructionSize the number of bits of the branch address which are hashed
+     * @param KSize                 the number of bits of the PHT entry, the PHT has 2^KSize counters
+     */
+    public GShare(int BHRSize, int SCSize, int branchInstructionSize, int KSize) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, CountMode.SATURATING);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the saturating counters
+     * @param branchInstructionSize the number of bits of the branch address which are hashed
+     * @param KSize                 the number of bits of the PHT entry, the PHT has 2^KSize counters
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public GShare(int BHRSize, int SCSize, int branchInstructionSize, int KSize, CountMode countMode) {
+        if (BHRSize < 0 || BHRSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("gshare BHR size must be in [0, 64]");
+        if (SCSize < 1 || SCSize > 31)
+            throw new IllegalArgumentException("gshare counter size must be in [1, 31]");
+        if (branchInstructionSize < 0 || branchInstructionSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("gshare branch instruction size must be in [0, 64]");
+        if (KSize < 0 || KSize > 30)
+            throw new IllegalArgumentException("gshare PHT entry size must be in [0, 30]");
+
+        this.countMode = countMode;
+        this.BHRSize = BHRSize;
+        this.SCSize = SCSize;
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
+        this.PHT = new int[1 << KSize];
+        Arrays.fill(PHT, -1);
+        this.table = new DensePageHistoryTable(PHT, SCSize);
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        int entry = getCacheEntry(instruction.getPackedInstructionAddress(), BHR);
+        if (PHT[entry] < 0) PHT[entry] = 0;
+        return BranchResult.of(PHT[entry] >>> (SCSize - 1) == 1);
+    }
+
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        predictAndUpdate(instruction, actual);
+    }
+
+    /**
+     * Predict the branch with a token which holds the PHT entry and the counter, see BranchPredictor
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int entry = getCacheEntry(instruction.getPackedInstructionAddress(), BHR);
+        if (PHT[entry] < 0) PHT[entry] = 0;
+        int counter = PHT[entry];
+        return new Prediction(instruction, BranchResult.of(counter >>> (SCSize - 1) == 1), 0, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        int entry = (int) prediction.getEntry();
+        int counter = PHT[entry] < 0 ? prediction.getCounter() : PHT[entry];
+        PHT[entry] = CombinationalLogic.count(counter, SCSize, taken, countMode);
+        BHR = BitVector.shiftIn(BHR, BHRSize, taken);
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        boolean taken = BranchResult.isTaken(actual);
+        int entry = getCacheEntry(instruction.getPackedInstructionAddress(), BHR);
+        int counter = Math.max(PHT[entry], 0);
+        PHT[entry] = CombinationalLogic.count(counter, SCSize, taken, countMode);
+        BHR = BitVector.shiftIn(BHR, BHRSize, taken);
+        return BranchResult.of(counter >>> (SCSize - 1) == 1);
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The BHR is kept in a local variable during
+     * the batch and written back at the end.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int[] PHT = this.PHT;
+        long history = BHR;
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            int entry = getCacheEntry(instructions[i].getPackedInstructionAddress(), history);
+            int counter = Math.max(PHT[entry], 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            PHT[entry] = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            history = BitVector.shiftIn(history, BHRSize, taken);
+        }
+
+        BHR = history;
+        return correct;
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the PHT entry, the xor of the folded first branchInstructionSize bits of the address
+     * and the folded BHR. a shorter address is hashed as a whole
+     */
+    private int getCacheEntry(BitVector address, long history) {
+        int size = Math.min(address.length(), branchInstructionSize);
+        long bits = BitVector.slice(address.toLong(), address.length(), 0, size);
+        return (int) CombinationalLogic.hash(bits, size, history, BHRSize, KSize, HashMode.GSHARE);
+    }
+
+    @Override
+    public long getOccupancy() {
+        return table.size();
+    }
+
+    /**
+     * Save the count mode and then the BHR and the PHT into the checkpoint, the BHR and the PHT in the same
+     * format as a SIPORegister and a DensePageHistoryTable, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        getBHR().save(out);
+        table.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        ShiftRegister register = new SIPORegister("BHR", BHRSize, null);
+        register.restore(in);
+        table.restore(in);
+        BHR = register.readVector().toLong();
+    }
+
+    /**
+     * @return snapshot of caches and registers content
+     */
+    @Override
+    public String monitor() {
+        return "GShare predictor snapshot: \n" + getBHR().monitor() + table.monitor();
+    }
+
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * rows of the PHT
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("GShare predictor snapshot: \n").append(getBHR().monitor());
+        table.monitor(out, filter, offset, limit);
+    }
+
+    /**
+     * @return a copy of the BHR as a register
+     */
+    private ShiftRegister getBHR() {
+        return new SIPORegister("BHR", BHRSize, BitVector.of(BHR, BHRSize).toArray());
+    }
+}
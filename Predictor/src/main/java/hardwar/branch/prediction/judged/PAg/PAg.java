@@ -3,12 +3,15 @@ package hardwar.branch.prediction.judged.PAg;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class PAg implements BranchPredictor {
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final ShiftRegister SC; // saturating counter register
-    private final RegisterBank PABHR; // per address branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
+    private final PackedRegisterBank PABHR; // per address branch history register
+    private final PackedCache PHT; // page history table
 
     public PAg() {
         this(4, 2, 8);
@@ -23,13 +26,55 @@ public class PAg implements BranchPredictor {
      * @param branchInstructionSize the number of bits which is used for saving a branch instruction
      */
     public PAg(int BHRSize, int SCSize, int branchInstructionSize) {
+        this(BHRSize, SCSize, branchInstructionSize, StorageMode.MAP);
+    }
+
+    /**
+     * Creates a new PAg predictor with the given BHR register size and PHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public PAg(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * Creates a new PAg predictor with the given BHR register size and PHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public PAg(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * Creates a new PAg predictor with the given BHR register size and PHT storage.
+     *
+     * @param BHRSize               the size of the BHR register
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public PAg(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, CountMode countMode,
+               SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
 
         // TODO: complete the constructor
         // Initialize the PABHR with the given bhr and branch instruction size
-        PABHR = new RegisterBank(branchInstructionSize, BHRSize);
+        PABHR = DeviceFactory.registerBank(storageMode, branchInstructionSize, BHRSize, budget);
 
         int PHT_col = 1 << BHRSize ;
-        PHT = new PageHistoryTable(PHT_col, SCSize);
+        PHT = DeviceFactory.pageHistoryTable(storageMode, PHT_col, SCSize, budget);
 
         Bit[] defaultBlock = new Bit[SCSize];
         Arrays.fill(defaultBlock, Bit.ZERO);
@@ -42,6 +87,7 @@ public class PAg implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction instruction) {
+        checkAddress(instruction);
         PHT.putIfAbsent( PABHR.read(instruction.getInstructionAddress()).read() , getDefaultBlock());
         // TODO : complete Task 1
         SC.load(PHT.get(PABHR.read(instruction.getInstructionAddress()).read()));
@@ -56,25 +102,134 @@ public class PAg implements BranchPredictor {
      */
     @Override
     public void update(BranchInstruction instruction, BranchResult actual) {
+        checkAddress(instruction);
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PHT.put(PABHR.read(instruction.getInstructionAddress()).read(), SC.read());
 
-        if(actual== BranchResult.TAKEN){
-            ShiftRegister bits =  PABHR.read(instruction.getInstructionAddress());
-            bits.insert(Bit.ONE);
-            PABHR.write(instruction.getInstructionAddress(),bits.read());
+        // shift the branch result into its history register in place
+        PABHR.shiftIn(instruction.getInstructionAddress(), Bit.of(BranchResult.isTaken(actual)));
+        
+    }
+
+    /**
+     * Predict the branch with a token which holds the BHR selector, the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction)) return BranchPredictor.super.lookup(instruction);
+
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = address.toLong();
+        long history = PABHR.readAsLong(selector);
+        int counter = PHT.setDefault(history, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, selector, history, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the selected BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
         }
-        else{
-            ShiftRegister bits =  PABHR.read(instruction.getInstructionAddress());
-            bits.insert(Bit.ZERO);
-            PABHR.write(instruction.getInstructionAddress(),bits.read());
+
+        boolean taken = BranchResult.isTaken(actual);
+        PHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        PABHR.shiftIn(prediction.getSelector(), Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The BHR and the
+     * cache entry are resolved once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = address.toLong();
+        long history = PABHR.readAsLong(selector);
+        int counter = PHT.setDefault(history, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PHT.count(history, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        PABHR.shiftIn(selector, Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PHT = this.PHT;
+        PackedRegisterBank PABHR = this.PABHR;
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long selector = address.toLong();
+            long history = PABHR.readAsLong(selector);
+            counter = PHT.setDefault(history, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PHT.put(history, counter);
+            PABHR.shiftIn(selector, Bit.of(taken));
         }
-        
+
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @return true if the branch address fits in a packed vector, longer addresses are handled by the Bit[] path
+     * @throws IllegalArgumentException if the branch address is not branchInstructionSize bits long
+     */
+    private boolean fits(BranchInstruction instruction) {
+        checkAddress(instruction);
+        return instruction.getInstructionAddressLength() <= BitVector.MAX_LENGTH;
+    }
+
+    private boolean fits(BranchInstruction[] instructions, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i])) return false;
+        return true;
+    }
+
+    /**
+     * every path takes only branch addresses of branchInstructionSize bits, the BHR selectors and the cache entries
+     * of other widths would not be the same in the Bit[] and the packed paths
+     */
+    private void checkAddress(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() != PABHR.getSelectorSize())
+            throw new IllegalArgumentException("branch address must be " + PABHR.getSelectorSize() + " bits long");
     }
 
     /**
@@ -86,8 +241,44 @@ public class PAg implements BranchPredictor {
         return defaultBlock;
     }
 
+    @Override
+    public long getOccupancy() {
+        return PHT.size();
+    }
+
+    /**
+     * Save the count mode, the BHR bank, the SC register and the PHT into the checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        PABHR.save(out);
+        SC.save(out);
+        PHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        PABHR.restore(in);
+        SC.restore(in);
+        PHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return "PAg predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PHT.monitor();
     }
+
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * BHR bank and the PHT separately
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("PAg predictor snapshot: \n");
+        PABHR.monitor(out, filter, offset, limit);
+        out.append(SC.monitor());
+        PHT.monitor(out, filter, offset, limit);
+    }
 }
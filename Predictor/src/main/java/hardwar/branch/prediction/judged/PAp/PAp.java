@@ -4,41 +4,97 @@ package hardwar.branch.prediction.judged.PAp;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class PAp implements BranchPredictor {
 
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
 
     private final ShiftRegister SC; // saturating counter register
 
-    private final RegisterBank PABHR; // per address branch history register
+    private final PackedRegisterBank PABHR; // per address branch history register
 
-    private final Cache<Bit[], Bit[]> PAPHT; // Per Address Predication History Table
+    private final PackedCache PAPHT; // Per Address Predication History Table
 
     public PAp() {
         this(4, 2, 8);
     }
 
     public PAp(int BHRSize, int SCSize, int branchInstructionSize) {
+        this(BHRSize, SCSize, branchInstructionSize, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public PAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public PAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public PAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, CountMode countMode,
+               SetAssociativeBudget budget) {
+        this(BHRSize, SCSize, branchInstructionSize, storageMode,
+                DeviceFactory.perAddressPredictionHistoryTable(storageMode, branchInstructionSize, 1 << BHRSize, SCSize,
+                        budget),
+                countMode, budget);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param PAPHT                 the table of the counters, e.g. a SetAssociativePageHistoryTable with a fixed
+     *                              budget. an entry is the branch address followed by its BHR and a block is SCSize bits
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public PAp(int BHRSize, int SCSize, int branchInstructionSize, PackedCache PAPHT, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, StorageMode.DENSE, PAPHT, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    private PAp(int BHRSize, int SCSize, int branchInstructionSize, StorageMode storageMode, PackedCache PAPHT,
+                CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
         this.branchInstructionSize = branchInstructionSize;
 
-        this.PABHR = new RegisterBank(branchInstructionSize, BHRSize);
+        this.PABHR = DeviceFactory.registerBank(storageMode, branchInstructionSize, BHRSize, budget);
 
 
         Bit[] defaultBlock = new Bit[SCSize];
         Arrays.fill(defaultBlock, Bit.ZERO);
         this.SC = new SIPORegister("SC", SCSize,null );
 
-        // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
-        int PHT_col =(1 << BHRSize);
-
-        this.PAPHT = new PerAddressPredictionHistoryTable(this.branchInstructionSize,PHT_col,SCSize);
-    
+        this.PAPHT = PAPHT;
     }
 
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
+        checkAddress(branchInstruction);
         PAPHT.putIfAbsent(getCacheEntry(branchInstruction.getInstructionAddress(), PABHR.read(branchInstruction.getInstructionAddress()).read()), getDefaultBlock());
 
         SC.load( PAPHT.get(getCacheEntry(branchInstruction.getInstructionAddress(), PABHR.read(branchInstruction.getInstructionAddress()).read() )));
@@ -49,24 +105,147 @@ public class PAp implements BranchPredictor {
 
     @Override
     public void update(BranchInstruction instruction, BranchResult actual) {
+        checkAddress(instruction);
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PAPHT.put(getCacheEntry(instruction.getInstructionAddress(), PABHR.read(instruction.getInstructionAddress()).read()), SC.read());
     
-        if(actual== BranchResult.TAKEN){
-            ShiftRegister bits =  PABHR.read(instruction.getInstructionAddress());
-            bits.insert(Bit.ONE);
-            PABHR.write(instruction.getInstructionAddress(),bits.read());
+        // shift the branch result into its history register in place
+        PABHR.shiftIn(instruction.getInstructionAddress(), Bit.of(BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * Predict the branch with a token which holds the BHR selector, the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction, BHRSize)) return BranchPredictor.super.lookup(instruction);
+
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = address.toLong();
+        long history = PABHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PAPHT.setDefault(entry, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, selector, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the selected BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
         }
-        else{
-            ShiftRegister bits =  PABHR.read(instruction.getInstructionAddress());
-            bits.insert(Bit.ZERO);
-            PABHR.write(instruction.getInstructionAddress(),bits.read());
+
+        boolean taken = BranchResult.isTaken(actual);
+        PAPHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        PABHR.shiftIn(prediction.getSelector(), Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The BHR and the
+     * cache entry are resolved once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction, BHRSize))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = address.toLong();
+        long history = PABHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PAPHT.setDefault(entry, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PAPHT.count(entry, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        PABHR.shiftIn(selector, Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length, BHRSize))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PAPHT = this.PAPHT;
+        PackedRegisterBank PABHR = this.PABHR;
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long selector = address.toLong();
+            long history = PABHR.readAsLong(selector);
+            long entry = getCacheEntry(address, history, BHRSize);
+            counter = PAPHT.setDefault(entry, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PAPHT.put(entry, counter);
+            PABHR.shiftIn(selector, Bit.of(taken));
         }
+
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the cache entry, the same as the Bit[] version
+     */
+    private long getCacheEntry(BitVector address, long history, int BHRSize) {
+        return (address.toLong() << BHRSize) | history;
+    }
+
+    /**
+     * @return true if the branch address and the BHR together fit in the long of the packed cache entry, longer
+     * entries are handled by the Bit[] path
+     * @throws IllegalArgumentException if the branch address is not branchInstructionSize bits long
+     */
+    private boolean fits(BranchInstruction instruction, int BHRSize) {
+        checkAddress(instruction);
+        return instruction.getInstructionAddressLength() + BHRSize <= BitVector.MAX_LENGTH;
+    }
+
+    private boolean fits(BranchInstruction[] instructions, int offset, int length, int BHRSize) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i], BHRSize)) return false;
+        return true;
+    }
+
+    /**
+     * every path takes only branch addresses of branchInstructionSize bits, the BHR selectors and the cache entries
+     * of other widths would not be the same in the Bit[] and the packed paths
+     */
+    private void checkAddress(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() != branchInstructionSize)
+            throw new IllegalArgumentException("branch address must be " + branchInstructionSize + " bits long");
     }
 
 
@@ -87,10 +266,46 @@ public class PAp implements BranchPredictor {
         return defaultBlock;
     }
 
+    @Override
+    public long getOccupancy() {
+        return PAPHT.size();
+    }
+
+    /**
+     * Save the count mode, the BHR bank, the SC register and the PAPHT into the checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        PABHR.save(out);
+        SC.save(out);
+        PAPHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        PABHR.restore(in);
+        SC.restore(in);
+        PAPHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return "PAp predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PAPHT.monitor();
     }
+
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * BHR bank and the PAPHT separately
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("PAp predictor snapshot: \n");
+        PABHR.monitor(out, filter, offset, limit);
+        out.append(SC.monitor());
+        PAPHT.monitor(out, filter, offset, limit);
+    }
 }
 
 
@@ -4,16 +4,19 @@ package hardwar.branch.prediction.judged.PAs;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class PAs implements BranchPredictor {
 
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
     private final int KSize;
     private final HashMode hashMode;
     private final ShiftRegister SC; // saturating counter register
-    private final RegisterBank PABHR; // per address Branch History Register
-    private final Cache<Bit[], Bit[]> PSPHT; // Per Set Predication History Table
+    private final PackedRegisterBank PABHR; // per address Branch History Register
+    private final PackedCache PSPHT; // Per Set Predication History Table
 
     public PAs() {
         this(4, 2, 8, 4, HashMode.XOR);
@@ -21,17 +24,62 @@ public class PAs implements BranchPredictor {
 
 
     public PAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash which select the PHT
+     * @param hashMode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public PAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash which select the PHT
+     * @param hashMode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public PAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode,
+                storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash which select the PHT
+     * @param hashMode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public PAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
         // TODO: complete the constructor
         this.branchInstructionSize = branchInstructionSize;
         this.KSize = KSize;
-        this.hashMode = HashMode.XOR;
+        this.hashMode = hashMode;
 
         // Initialize the PABHR with the given bhr and branch instruction size
-        PABHR = new RegisterBank(branchInstructionSize, BHRSize);
+        PABHR = DeviceFactory.registerBank(storageMode, branchInstructionSize, BHRSize, budget);
 
         // Initializing the PAPHT with K bit as PHT selector and 2^BHRSize row as each PHT entries
         // number and SCSize as block size
-        PSPHT = new PerAddressPredictionHistoryTable(KSize, 1 << BHRSize, SCSize);
+        PSPHT = DeviceFactory.perAddressPredictionHistoryTable(storageMode, KSize, 1 << BHRSize, SCSize, budget);
 
         // Initialize the saturating counter
         SC = new SIPORegister("SC", SCSize, null);
@@ -46,6 +94,7 @@ public class PAs implements BranchPredictor {
      */
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
+        checkAddress(branchInstruction);
         PSPHT.putIfAbsent(getCacheEntry(branchInstruction.getInstructionAddress(),
                 PABHR.read(branchInstruction.getInstructionAddress()).read()), getDefaultBlock());
 
@@ -60,38 +109,210 @@ public class PAs implements BranchPredictor {
 
     @Override
     public void update(BranchInstruction instruction, BranchResult actual) {
+        checkAddress(instruction);
         // TODO:complete Task 2
         //payam
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PSPHT.put(getCacheEntry(instruction.getInstructionAddress(),
                 PABHR.read(instruction.getInstructionAddress()).read()), SC.read());
 
-        if(actual== BranchResult.TAKEN){
-            ShiftRegister bits =  PABHR.read(instruction.getInstructionAddress());
-            bits.insert(Bit.ONE);
-            PABHR.write(instruction.getInstructionAddress(),bits.read());
+        // shift the branch result into its history register in place
+        PABHR.shiftIn(instruction.getInstructionAddress(), Bit.of(BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * Predict the branch with a token which holds the BHR selector, the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction)) return BranchPredictor.super.lookup(instruction);
+
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = address.toLong();
+        long history = PABHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PSPHT.setDefault(entry, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, selector, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the selected BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
         }
-        else{
-            ShiftRegister bits =  PABHR.read(instruction.getInstructionAddress());
-            bits.insert(Bit.ZERO);
-            PABHR.write(instruction.getInstructionAddress(),bits.read());
+
+        boolean taken = BranchResult.isTaken(actual);
+        PSPHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        PABHR.shiftIn(prediction.getSelector(), Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The BHR and the
+     * cache entry are resolved once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = address.toLong();
+        long history = PABHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PSPHT.setDefault(entry, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PSPHT.count(entry, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        PABHR.shiftIn(selector, Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = PABHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PSPHT = this.PSPHT;
+        PackedRegisterBank PABHR = this.PABHR;
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long selector = address.toLong();
+            long history = PABHR.readAsLong(selector);
+            long entry = getCacheEntry(address, history, BHRSize);
+            counter = PSPHT.setDefault(entry, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PSPHT.put(entry, counter);
+            PABHR.shiftIn(selector, Bit.of(taken));
+        }
+
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @return true if the branch address fits in a packed vector, longer addresses are handled by the Bit[] path
+     * @throws IllegalArgumentException if the branch address is not branchInstructionSize bits long
+     */
+    private boolean fits(BranchInstruction instruction) {
+        checkAddress(instruction);
+        return instruction.getInstructionAddressLength() <= BitVector.MAX_LENGTH;
+    }
+
+    private boolean fits(BranchInstruction[] instructions, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i])) return false;
+        return true;
+    }
+
+    /**
+     * every path takes only branch addresses of branchInstructionSize bits, the BHR selectors and the cache entries
+     * of other widths would not be the same in the Bit[] and the packed paths
+     */
+    private void checkAddress(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() != branchInstructionSize)
+            throw new IllegalArgumentException("branch address must be " + branchInstructionSize + " bits long");
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the cache entry, the same as the Bit[] version. the hash of the address and the
+     * history in gshare mode, otherwise the hash of the address concatenated with the history
+     */
+    private long getCacheEntry(BitVector address, long history, int BHRSize) {
+        if (hashMode == HashMode.GSHARE) {
+            return CombinationalLogic.hash(address.toLong(), address.length(), history, BHRSize, KSize + BHRSize,
+                    hashMode);
         }
+        long hash = CombinationalLogic.hash(address.toLong(), address.length(), history, BHRSize, KSize, hashMode);
+        return (hash << BHRSize) | history;
     }
 
 
+    @Override
+    public long getOccupancy() {
+        return PSPHT.size();
+    }
+
+    /**
+     * Save the count and hash modes, the BHR bank, the SC register and the PSPHT into the
+     * checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        out.writeMode(hashMode);
+        PABHR.save(out);
+        SC.save(out);
+        PSPHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        in.expect(hashMode, "hash mode");
+        PABHR.restore(in);
+        SC.restore(in);
+        PSPHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return "PAs predictor snapshot: \n" + PABHR.monitor() + SC.monitor() + PSPHT.monitor();
     }
 
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * BHR bank and the PSPHT separately
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("PAs predictor snapshot: \n");
+        PABHR.monitor(out, filter, offset, limit);
+        out.append(SC.monitor());
+        PSPHT.monitor(out, filter, offset, limit);
+    }
+
     private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
+        // gshare xors the BHR into the address hash over the whole entry instead of concatenating it
+        if (hashMode == HashMode.GSHARE) {
+            return CombinationalLogic.hash(branchAddress, BHRValue, KSize + BHRValue.length, hashMode);
+        }
+
         // hash the branch address
-        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, KSize, hashMode);
+        Bit[] hashKSize = CombinationalLogic.hash(branchAddress, BHRValue, KSize, hashMode);
 
         // Concatenate the Hash bits with the BHR bits
         Bit[] cacheEntry = new Bit[hashKSize.length + BHRValue.length];
@@ -0,0 +1,204 @@
+package hardwar.branch.prediction.judged.Perceptron;
+
+import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.shared.devices.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+a perceptron predictor, one global history and a table of 2^K perceptrons
+
+the perceptron of a branch is selected with the hashed branch address, its output is the bias plus the dot
+product of its weights and the history (+1 for taken, -1 for not taken). the branch is predicted as taken if
+the output is not negative, and the perceptron is trained on a misprediction or if the output is not larger
+than the threshold. the storage grows linearly with the history length, so much longer histories than a
+2^BHRSize PHT can be used.
+
+the history is kept twice in a short array of 2 * historyLength inputs, so the last historyLength inputs are
+always a contiguous window and a branch only writes two inputs.
+ */
+public class Perceptron implements BranchPredictor {
+    private final int historyLength;
+    private final int KSize;
+    private final int branchInstructionSize;
+    private final int threshold; // the output which must be reached before a correct perceptron stops training
+    private final WeightTable table;
+    private final short[] history; // the inputs twice, the window of the last historyLength inputs starts at head
+    private int head; // index of the last input in the history
+
+    public Perceptron() {
+        this(32, 8, 8, 8);
+    }
+
+    /**
+     * @param historyLength         the number of history bits which are the inputs of a perceptron
+     * @param KSize                 the number of bits of the table entry, the table has 2^KSize perceptrons
+     * @param branchInstructionSize the number of bits of the branch address which are hashed
+     * @param weightSize            the number of bits of a weight
+     */
+    public Perceptron(int historyLength, int KSize, int branchInstructionSize, int weightSize) {
+        if (historyLength < 1 || historyLength > 1 << 10)
+            throw new IllegalArgumentException("perceptron history length must be in [1, 1024]");
+        if (KSize < 0 || KSize > 20)
+            throw new IllegalArgumentException("perceptron table entry size must be in [0, 20]");
+        if (branchInstructionSize < 0 || branchInstructionSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("perceptron branch instruction size must be in [0, 64]");
+
+        this.historyLength = historyLength;
+        this.KSize = KSize;
+        this.branchInstructionSize = branchInstructionSize;
+        // the threshold of the original perceptron predictor, 1.93 * h + 14
+        this.threshold = (int) (1.93 * historyLength + 14);
+        this.table = new WeightTable(1 << KSize, historyLength, weightSize);
+        this.history = new short[2 * historyLength];
+        clearHistory();
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        return BranchResult.of(table.output(getCacheEntry(instruction), history, head) >= 0);
+    }
+
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        predictAndUpdate(instruction, actual);
+    }
+
+    /**
+     * Predict the branch with a token which holds the perceptron and its output, see BranchPredictor
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int entry = getCacheEntry(instruction);
+        int output = table.output(entry, history, head);
+        return new Prediction(instruction, BranchResult.of(output >= 0), 0, entry, output);
+    }
+
+    /**
+     * Train the perceptron of the token and shift the actual result into the history. The perceptron is trained
+     * with the history of the update, which is the history of the prediction if no other branch is updated
+     * in between.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        update((int) prediction.getEntry(), prediction.getCounter(), BranchResult.isTaken(actual));
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int entry = getCacheEntry(instruction);
+        int output = table.output(entry, history, head);
+        update(entry, output, BranchResult.isTaken(actual));
+        return BranchResult.of(output >= 0);
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            int entry = getCacheEntry(instructions[i]);
+            int output = table.output(entry, history, head);
+            predictions[i] = output >= 0;
+            if (predictions[i] == taken) correct++;
+            update(entry, output, taken);
+        }
+        return correct;
+    }
+
+    /**
+     * train the perceptron if it is wrong or not confident and shift the result into the history
+     */
+    private void update(int entry, int output, boolean taken) {
+        if ((output >= 0) != taken || Math.abs(output) <= threshold) table.train(entry, history, head, taken);
+        shiftIn(taken);
+    }
+
+    /**
+     * write the result before the window and at the same index of the second copy, so the window moves back
+     * by one input
+     */
+    private void shiftIn(boolean taken) {
+        head = head == 0 ? historyLength - 1 : head - 1;
+        short input = (short) (taken ? 1 : -1);
+        history[head] = input;
+        history[head + historyLength] = input;
+    }
+
+    /**
+     * @return the number of the perceptron, the folded first branchInstructionSize bits of the branch address,
+     * a shorter address is hashed as a whole
+     */
+    private int getCacheEntry(BranchInstruction instruction) {
+        BitVector address = instruction.getPackedInstructionAddress();
+        int size = Math.min(address.length(), branchInstructionSize);
+        long bits = BitVector.slice(address.toLong(), address.length(), 0, size);
+        return (int) CombinationalLogic.hash(bits, size, 0, 0, KSize, HashMode.XOR);
+    }
+
+    private void clearHistory() {
+        Arrays.fill(history, (short) -1);
+        head = 0;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public long getOccupancy() {
+        return table.size();
+    }
+
+    /**
+     * Save the history in the same format as a SIPORegister and then the weight table into the checkpoint,
+     * see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        getGHR().save(out);
+        table.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        ShiftRegister register = new SIPORegister("GHR", historyLength, null);
+        register.restore(in);
+        table.restore(in);
+        Bit[] bits = register.read();
+        clearHistory();
+        for (int age = historyLength - 1; age >= 0; age--) shiftIn(bits[age].getValue());
+    }
+
+    /**
+     * @return snapshot of the history and the weights
+     */
+    @Override
+    public String monitor() {
+        return "Perceptron predictor snapshot: \n" + getGHR().monitor() + table.monitor();
+    }
+
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to the
+     * weights
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("Perceptron predictor snapshot: \n").append(getGHR().monitor());
+        table.monitor(out, filter, offset, limit);
+    }
+
+    /**
+     * @return a copy of the history as a register, the last result is the first bit
+     */
+    private ShiftRegister getGHR() {
+        Bit[] bits = new Bit[historyLength];
+        for (int age = 0; age < historyLength; age++) bits[age] = Bit.of(history[head + age] > 0);
+        return new SIPORegister("GHR", historyLength, bits);
+    }
+}
@@ -4,29 +4,101 @@ package hardwar.branch.prediction.judged.SAg;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class SAg implements BranchPredictor {
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
     private final int KSize;
+    private final HashMode hashMode;
     private final ShiftRegister SC; // saturating counter register
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PHT; // page history table
+    private final PackedRegisterBank PSBHR; // per set branch history register
+    private final PackedCache PHT; // page history table
 
     public SAg() {
         this(4, 2, 8, 4);
     }
 
     public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize, StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, HashMode.XOR, storageMode);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     */
+    public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode,
+                storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     * @param storageMode           the storage of the PHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public SAg(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
         // TODO: complete the constructor
         this.branchInstructionSize = branchInstructionSize;
         this.KSize = KSize;
+        this.hashMode = hashMode;
 
         // Initialize the PABHR with the given bhr and Ksize
-        PSBHR = new RegisterBank(KSize, BHRSize);
+        PSBHR = DeviceFactory.registerBank(storageMode, KSize, BHRSize, budget);
 
         // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
-        PHT = new PageHistoryTable(1 << BHRSize, SCSize);
+        PHT = DeviceFactory.pageHistoryTable(storageMode, 1 << BHRSize, SCSize, budget);
 
         // Initialize the SC register
         SC = new SIPORegister("SC", SCSize, null);
@@ -34,6 +106,7 @@ public class SAg implements BranchPredictor {
 
     @Override
     public BranchResult predict(BranchInstruction instruction) {
+        checkAddress(instruction);
         PHT.putIfAbsent(PSBHR.read(getRBAddressLine(instruction.getInstructionAddress())).read() , getDefaultBlock());
         // TODO : complete Task 1
         SC.load(PHT.get(PSBHR.read(getRBAddressLine(instruction.getInstructionAddress())).read()));
@@ -45,55 +118,149 @@ public class SAg implements BranchPredictor {
 
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        checkAddress(branchInstruction);
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PHT.put(PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress())).read(), SC.read());
 
-        if(actual== BranchResult.TAKEN){
-            ShiftRegister bits =  PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress()));
-            bits.insert(Bit.ONE);
-            PSBHR.write(getRBAddressLine(branchInstruction.getInstructionAddress()),bits.read());
-        }
-        else{
-            ShiftRegister bits =  PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress()));
-            bits.insert(Bit.ZERO);
-            PSBHR.write(getRBAddressLine(branchInstruction.getInstructionAddress()),bits.read());
-        }
+        // shift the branch result into its history register in place
+        PSBHR.shiftIn(getRBAddressLine(branchInstruction.getInstructionAddress()), Bit.of(BranchResult.isTaken(actual)));
 
 
         // TODO: complete Task 2
     }
 
-    private Bit[] getRBAddressLine(Bit[] branchAddress) {
-        // hash the branch address
-        return hash(branchAddress);
+    /**
+     * Predict the branch with a token which holds the BHR selector, the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction)) return BranchPredictor.super.lookup(instruction);
+
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = getRBAddressLine(address);
+        long history = PSBHR.readAsLong(selector);
+        int counter = PHT.setDefault(history, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, selector, history, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the selected BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
+        }
+
+        boolean taken = BranchResult.isTaken(actual);
+        PHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        PSBHR.shiftIn(prediction.getSelector(), Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The BHR and the
+     * cache entry are resolved once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = getRBAddressLine(address);
+        long history = PSBHR.readAsLong(selector);
+        int counter = PHT.setDefault(history, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PHT.count(history, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        PSBHR.shiftIn(selector, Bit.of(taken));
+        return prediction;
     }
 
     /**
-     * hash N bits to a K bit value
-     *
-     * @param bits program counter
-     * @return hash value of fist M bits of `bits` in K bits
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
      */
-    private Bit[] hash(Bit[] bits) {
-        Bit[] hash = new Bit[KSize];
-
-        // XOR the first M bits of the PC to produce the hash
-        for (int i = 0; i < branchInstructionSize; i++) {
-            int j = i % KSize;
-            if (hash[j] == null) {
-                hash[j] = bits[i];
-            } else {
-                Bit xorProduce = hash[j].getValue() ^ bits[i].getValue() ? Bit.ONE : Bit.ZERO;
-                hash[j] = xorProduce;
-
-            }
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PHT = this.PHT;
+        PackedRegisterBank PSBHR = this.PSBHR;
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long selector = getRBAddressLine(address);
+            long history = PSBHR.readAsLong(selector);
+            counter = PHT.setDefault(history, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PHT.put(history, counter);
+            PSBHR.shiftIn(selector, Bit.of(taken));
         }
-        return hash;
+
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @return true if the branch address fits in a packed vector, longer addresses are handled by the Bit[] path
+     * @throws IllegalArgumentException if the branch address is not branchInstructionSize bits long
+     */
+    private boolean fits(BranchInstruction instruction) {
+        checkAddress(instruction);
+        return instruction.getInstructionAddressLength() <= BitVector.MAX_LENGTH;
+    }
+
+    private boolean fits(BranchInstruction[] instructions, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i])) return false;
+        return true;
+    }
+
+    /**
+     * every path takes only branch addresses of branchInstructionSize bits, the BHR selectors and the cache entries
+     * of other widths would not be the same in the Bit[] and the packed paths
+     */
+    private void checkAddress(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() != branchInstructionSize)
+            throw new IllegalArgumentException("branch address must be " + branchInstructionSize + " bits long");
+    }
+
+    /**
+     * @param address the packed branch address
+     * @return the number of the BHR selector, the same as the Bit[] version
+     */
+    private long getRBAddressLine(BitVector address) {
+        return CombinationalLogic.hash(address.toLong(), address.length(), 0, 0, KSize, hashMode);
+    }
+
+    private Bit[] getRBAddressLine(Bit[] branchAddress) {
+        // hash the branch address, there is no history before selecting the BHR so gshare mode is a plain xor
+        return CombinationalLogic.hash(branchAddress, KSize, hashMode);
     }
 
     /**
@@ -105,6 +272,33 @@ public class SAg implements BranchPredictor {
         return defaultBlock;
     }
 
+    @Override
+    public long getOccupancy() {
+        return PHT.size();
+    }
+
+    /**
+     * Save the count and hash modes, the BHR bank, the SC register and the PHT into the checkpoint, see
+     * Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        out.writeMode(hashMode);
+        PSBHR.save(out);
+        SC.save(out);
+        PHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        in.expect(hashMode, "hash mode");
+        PSBHR.restore(in);
+        SC.restore(in);
+        PHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return null;
@@ -4,27 +4,100 @@ package hardwar.branch.prediction.judged.SAp;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class SAp implements BranchPredictor {
 
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
     private final int KSize;
+    private final HashMode hashMode;
     private final ShiftRegister SC;
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PAPHT; // per address predication history table
+    private final PackedRegisterBank PSBHR; // per set branch history register
+    private final PackedCache PAPHT; // per address predication history table
 
     public SAp() {
         this(4, 2, 8, 4);
     }
 
     public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize, StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, HashMode.XOR, storageMode);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     */
+    public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode,
+                storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits which select the BHR from the register bank
+     * @param hashMode              the hash function of the branch address which selects the BHR
+     * @param storageMode           the storage of the PAPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public SAp(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
 
         this.branchInstructionSize = branchInstructionSize;
         
         this.KSize = KSize;
 
-        this.PSBHR = new RegisterBank(KSize, BHRSize);
+        this.hashMode = hashMode;
+
+        this.PSBHR = DeviceFactory.registerBank(storageMode, KSize, BHRSize, budget);
 
 
         Bit[] defaultBlock = new Bit[SCSize];
@@ -34,12 +107,14 @@ public class SAp implements BranchPredictor {
         // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
         int PHT_col =(1 << BHRSize);
 
-        this.PAPHT = new PerAddressPredictionHistoryTable(this.branchInstructionSize,PHT_col,SCSize);
+        this.PAPHT = DeviceFactory.perAddressPredictionHistoryTable(storageMode, this.branchInstructionSize, PHT_col, SCSize,
+                budget);
 
     }
 
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
+        checkAddress(branchInstruction);
               PAPHT.putIfAbsent(getCacheEntry(branchInstruction.getInstructionAddress(), PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress())).read()), getDefaultBlock());
 
         SC.load( PAPHT.get(getCacheEntry(branchInstruction.getInstructionAddress(), PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress())).read() )));
@@ -50,30 +125,161 @@ public class SAp implements BranchPredictor {
 
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
+        checkAddress(branchInstruction);
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
         PAPHT.put(getCacheEntry(branchInstruction.getInstructionAddress(), PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress())).read()), SC.read());
     
-        if(actual== BranchResult.TAKEN){
-            ShiftRegister bits =  PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress()));
-            bits.insert(Bit.ONE);
-            PSBHR.write(getRBAddressLine(branchInstruction.getInstructionAddress()),bits.read());
+        // shift the branch result into its history register in place
+        PSBHR.shiftIn(getRBAddressLine(branchInstruction.getInstructionAddress()), Bit.of(BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * Predict the branch with a token which holds the BHR selector, the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction, BHRSize)) return BranchPredictor.super.lookup(instruction);
+
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = getRBAddressLine(address);
+        long history = PSBHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PAPHT.setDefault(entry, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, selector, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the selected BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
         }
-        else{
-            ShiftRegister bits =  PSBHR.read(getRBAddressLine(branchInstruction.getInstructionAddress()));
-            bits.insert(Bit.ZERO);
-            PSBHR.write(getRBAddressLine(branchInstruction.getInstructionAddress()),bits.read());
+
+        boolean taken = BranchResult.isTaken(actual);
+        PAPHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        PSBHR.shiftIn(prediction.getSelector(), Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The BHR and the
+     * cache entry are resolved once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction, BHRSize))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = getRBAddressLine(address);
+        long history = PSBHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PAPHT.setDefault(entry, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PAPHT.count(entry, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        PSBHR.shiftIn(selector, Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length, BHRSize))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PAPHT = this.PAPHT;
+        PackedRegisterBank PSBHR = this.PSBHR;
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long selector = getRBAddressLine(address);
+            long history = PSBHR.readAsLong(selector);
+            long entry = getCacheEntry(address, history, BHRSize);
+            counter = PAPHT.setDefault(entry, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PAPHT.put(entry, counter);
+            PSBHR.shiftIn(selector, Bit.of(taken));
         }
+
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @param address the packed branch address
+     * @return the number of the BHR selector, the same as the Bit[] version
+     */
+    private long getRBAddressLine(BitVector address) {
+        return CombinationalLogic.hash(address.toLong(), address.length(), 0, 0, KSize, hashMode);
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the cache entry, the same as the Bit[] version
+     */
+    private long getCacheEntry(BitVector address, long history, int BHRSize) {
+        return (address.toLong() << BHRSize) | history;
+    }
+
+    /**
+     * @return true if the branch address and the BHR together fit in the long of the packed cache entry, longer
+     * entries are handled by the Bit[] path
+     * @throws IllegalArgumentException if the branch address is not branchInstructionSize bits long
+     */
+    private boolean fits(BranchInstruction instruction, int BHRSize) {
+        checkAddress(instruction);
+        return instruction.getInstructionAddressLength() + BHRSize <= BitVector.MAX_LENGTH;
+    }
+
+    private boolean fits(BranchInstruction[] instructions, int offset, int length, int BHRSize) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i], BHRSize)) return false;
+        return true;
+    }
+
+    /**
+     * every path takes only branch addresses of branchInstructionSize bits, the BHR selectors and the cache entries
+     * of other widths would not be the same in the Bit[] and the packed paths
+     */
+    private void checkAddress(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() != branchInstructionSize)
+            throw new IllegalArgumentException("branch address must be " + branchInstructionSize + " bits long");
     }
 
 
     private Bit[] getRBAddressLine(Bit[] branchAddress) {
-        // hash the branch address
-        return hash(branchAddress);
+        // hash the branch address, there is no history before selecting the BHR so gshare mode is a plain xor
+        return CombinationalLogic.hash(branchAddress, KSize, hashMode);
     }
 
     private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
@@ -85,29 +291,6 @@ public class SAp implements BranchPredictor {
     }
 
 
-    /**
-     * hash N bits to a K bit value
-     *
-     * @param bits program counter
-     * @return hash value of fist M bits of `bits` in K bits
-     */
-    private Bit[] hash(Bit[] bits) {
-        Bit[] hash = new Bit[KSize];
-
-        // XOR the first M bits of the PC to produce the hash
-        for (int i = 0; i < branchInstructionSize; i++) {
-            int j = i % KSize;
-            if (hash[j] == null) {
-                hash[j] = bits[i];
-            } else {
-                Bit xorProduce = hash[j].getValue() ^ bits[i].getValue() ? Bit.ONE : Bit.ZERO;
-                hash[j] = xorProduce;
-
-            }
-        }
-        return hash;
-    }
-
     /**
      * @return a zero series of bits as default value of cache block
      */
@@ -117,6 +300,33 @@ public class SAp implements BranchPredictor {
         return defaultBlock;
     }
 
+    @Override
+    public long getOccupancy() {
+        return PAPHT.size();
+    }
+
+    /**
+     * Save the count and hash modes, the BHR bank, the SC register and the PAPHT into the
+     * checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        out.writeMode(hashMode);
+        PSBHR.save(out);
+        SC.save(out);
+        PAPHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        in.expect(hashMode, "hash mode");
+        PSBHR.restore(in);
+        SC.restore(in);
+        PAPHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return null;
@@ -3,15 +3,18 @@ package hardwar.branch.prediction.judged.SAs;
 import hardwar.branch.prediction.shared.*;
 import hardwar.branch.prediction.shared.devices.*;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 public class SAs implements BranchPredictor {
 
+    private final CountMode countMode; // the counter type of the PHT blocks
+    private final boolean concurrent; // the tables are shared between threads, see StorageMode.CONCURRENT
     private final int branchInstructionSize;
     private final int KSize;
     private final ShiftRegister SC;
-    private final RegisterBank PSBHR; // per set branch history register
-    private final Cache<Bit[], Bit[]> PSPHT; // per set predication history table
+    private final PackedRegisterBank PSBHR; // per set branch history register
+    private final PackedCache PSPHT; // per set predication history table
     private final HashMode hashMode;
 
     public SAs() {
@@ -19,12 +22,57 @@ public class SAs implements BranchPredictor {
     }
 
     public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, StorageMode.MAP);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash
+     * @param hashMode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT and the BHRs, DENSE keeps them in primitive arrays
+     */
+    public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode, storageMode, CountMode.SATURATING);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash
+     * @param hashMode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     */
+    public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode) {
+        this(BHRSize, SCSize, branchInstructionSize, KSize, hashMode,
+                storageMode, countMode, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param BHRSize               the size of the BHR registers
+     * @param SCSize                the size of the register which hold the saturating counter value
+     * @param branchInstructionSize the number of bits which is used for saving a branch instruction
+     * @param KSize                 the number of bits of the branch address hash
+     * @param hashMode              the hash function of the branch address, GSHARE also xors the BHR into it
+     * @param storageMode           the storage of the PSPHT and the BHRs, DENSE keeps them in primitive arrays
+     * @param countMode             the counter type of the PHT blocks
+     * @param budget                the geometry of the SET_ASSOCIATIVE tables and register banks
+     */
+    public SAs(int BHRSize, int SCSize, int branchInstructionSize, int KSize, HashMode hashMode,
+               StorageMode storageMode, CountMode countMode, SetAssociativeBudget budget) {
+        this.countMode = countMode;
+        this.concurrent = storageMode == StorageMode.CONCURRENT;
 
         this.branchInstructionSize = branchInstructionSize;
         
         this.KSize = KSize;
 
-        this.PSBHR = new RegisterBank(KSize, BHRSize);
+        this.PSBHR = DeviceFactory.registerBank(storageMode, KSize, BHRSize, budget);
 
 
         Bit[] defaultBlock = new Bit[SCSize];
@@ -34,17 +82,17 @@ public class SAs implements BranchPredictor {
         // Initialize the PHT with a size of 2^size and each entry having a saturating counter of size "SCSize"
         int PHT_col =(1 << BHRSize);
 
-        this.PSPHT = new PerAddressPredictionHistoryTable(KSize,PHT_col,SCSize);
+        this.PSPHT = DeviceFactory.perAddressPredictionHistoryTable(storageMode, KSize, PHT_col, SCSize, budget);
         
-        this.hashMode = HashMode.XOR;
+        this.hashMode = hashMode;
 
     }
 
     @Override
     public BranchResult predict(BranchInstruction branchInstruction) {
-        PSPHT.putIfAbsent(getCacheEntry(getAddressLine(branchInstruction.getInstructionAddress()), PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress())).read()), getDefaultBlock());
+        PSPHT.putIfAbsent(getCacheEntry(branchInstruction.getInstructionAddress(), PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress())).read()), getDefaultBlock());
 
-        SC.load( PSPHT.get(getCacheEntry(getAddressLine(branchInstruction.getInstructionAddress()), PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress())).read() )));
+        SC.load( PSPHT.get(getCacheEntry(branchInstruction.getInstructionAddress(), PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress())).read() )));
         if (SC.read()[0] == Bit.ONE)
             return BranchResult.TAKEN;
         return BranchResult.NOT_TAKEN;
@@ -53,23 +101,147 @@ public class SAs implements BranchPredictor {
     @Override
     public void update(BranchInstruction branchInstruction, BranchResult actual) {
         if(actual== BranchResult.TAKEN){
-            SC.load(CombinationalLogic.count(SC.read(), true, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), true, countMode));
         }
         else{
-            SC.load(CombinationalLogic.count(SC.read(), false, CountMode.SATURATING));
+            SC.load(CombinationalLogic.count(SC.read(), false, countMode));
         }
-        PSPHT.put(getCacheEntry(getAddressLine(branchInstruction.getInstructionAddress()), PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress())).read()), SC.read());
+        PSPHT.put(getCacheEntry(branchInstruction.getInstructionAddress(), PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress())).read()), SC.read());
     
-        if(actual== BranchResult.TAKEN){
-            ShiftRegister bits =  PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress()));
-            bits.insert(Bit.ONE);
-            PSBHR.write(getAddressLine(branchInstruction.getInstructionAddress()),bits.read());
+        // shift the branch result into its history register in place
+        PSBHR.shiftIn(getAddressLine(branchInstruction.getInstructionAddress()), Bit.of(BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * Predict the branch with a token which holds the BHR selector, the cache entry and the counter, see
+     * BranchPredictor. The SC register is not used, so the update does not depend on the last prediction.
+     */
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction)) return BranchPredictor.super.lookup(instruction);
+
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = getAddressLine(address);
+        long history = PSBHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PSPHT.setDefault(entry, 0);
+        BranchResult result = BranchResult.of(counter >>> (SCSize - 1) == 1);
+        return new Prediction(instruction, result, selector, entry, counter);
+    }
+
+    /**
+     * Count the counter of the token entry and shift the actual result into the selected BHR. The counter of the
+     * token is only used if the entry is cleared after the prediction.
+     */
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        int SCSize = SC.getLength();
+        // a token without an entry is made by the lookup of the Bit[] path
+        if (SCSize < 1 || SCSize > 31 || prediction.getEntry() < 0) {
+            BranchPredictor.super.update(prediction, actual);
+            return;
         }
-        else{
-            ShiftRegister bits =  PSBHR.read(getAddressLine(branchInstruction.getInstructionAddress()));
-            bits.insert(Bit.ZERO);
-            PSBHR.write(getAddressLine(branchInstruction.getInstructionAddress()),bits.read());
+
+        boolean taken = BranchResult.isTaken(actual);
+        PSPHT.count(prediction.getEntry(), prediction.getCounter(), SCSize, taken, countMode);
+        PSBHR.shiftIn(prediction.getSelector(), Bit.of(taken));
+    }
+
+    /**
+     * Predict the branch and update the predictor with the actual result, see BranchPredictor. The BHR and the
+     * cache entry are resolved once and used for both the prediction and the update.
+     */
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (SCSize < 1 || SCSize > 31 || !fits(instruction))
+            return BranchPredictor.super.predictAndUpdate(instruction, actual);
+
+        boolean taken = BranchResult.isTaken(actual);
+        BitVector address = instruction.getPackedInstructionAddress();
+        long selector = getAddressLine(address);
+        long history = PSBHR.readAsLong(selector);
+        long entry = getCacheEntry(address, history, BHRSize);
+        int counter = PSPHT.setDefault(entry, 0);
+        BranchResult prediction = BranchResult.of(counter >>> (SCSize - 1) == 1);
+
+        counter = PSPHT.count(entry, counter, SCSize, taken, countMode);
+        SC.load(BitVector.of(counter, SCSize));
+        PSBHR.shiftIn(selector, Bit.of(taken));
+        return prediction;
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The table and the registers are kept in
+     * local variables during the batch and the registers are written back at the end. A CONCURRENT predictor
+     * runs the batch branch by branch with the fused path, so the updates of other threads are not lost.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int BHRSize = PSBHR.getRegisterSize();
+        int SCSize = SC.getLength();
+        if (concurrent || SCSize < 1 || SCSize > 31 || !fits(instructions, offset, length))
+            return BranchPredictor.super.predictAndUpdate(instructions, actuals, predictions, offset, length);
+
+        PackedCache PSPHT = this.PSPHT;
+        PackedRegisterBank PSBHR = this.PSBHR;
+        int counter = SC.readVector().toNumber();
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            BitVector address = instructions[i].getPackedInstructionAddress();
+            long selector = getAddressLine(address);
+            long history = PSBHR.readAsLong(selector);
+            long entry = getCacheEntry(address, history, BHRSize);
+            counter = PSPHT.setDefault(entry, 0);
+            predictions[i] = counter >>> (SCSize - 1) == 1;
+            if (predictions[i] == taken) correct++;
+            counter = CombinationalLogic.count(counter, SCSize, taken, countMode);
+            PSPHT.put(entry, counter);
+            PSBHR.shiftIn(selector, Bit.of(taken));
         }
+
+        SC.load(BitVector.of(counter, SCSize));
+        return correct;
+    }
+
+    /**
+     * @return true if the branch address fits in a packed vector, longer addresses are handled by the Bit[] path
+     */
+    private static boolean fits(BranchInstruction instruction) {
+        return instruction.getInstructionAddressLength() <= BitVector.MAX_LENGTH;
+    }
+
+    private static boolean fits(BranchInstruction[] instructions, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) if (!fits(instructions[i])) return false;
+        return true;
+    }
+
+    /**
+     * @param address the packed branch address
+     * @return the number of the BHR selector, the same as the Bit[] version
+     */
+    private long getAddressLine(BitVector address) {
+        return CombinationalLogic.hash(address.toLong(), address.length(), 0, 0, KSize, hashMode);
+    }
+
+    /**
+     * @param address the packed branch address
+     * @param history the number of the BHR
+     * @return the number of the cache entry, the same as the Bit[] version. the hash of the address and the
+     * history in gshare mode, otherwise the hash of the address concatenated with the history
+     */
+    private long getCacheEntry(BitVector address, long history, int BHRSize) {
+        if (hashMode == HashMode.GSHARE) {
+            return CombinationalLogic.hash(address.toLong(), address.length(), history, BHRSize, KSize + BHRSize,
+                    hashMode);
+        }
+        long hash = CombinationalLogic.hash(address.toLong(), address.length(), history, BHRSize, KSize, hashMode);
+        return (hash << BHRSize) | history;
     }
 
 
@@ -79,10 +251,18 @@ public class SAs implements BranchPredictor {
     }
 
     private Bit[] getCacheEntry(Bit[] branchAddress, Bit[] BHRValue) {
-        // Concatenate the branch address bits with the BHR bits
-        Bit[] cacheEntry = new Bit[branchAddress.length + BHRValue.length];
-        System.arraycopy(branchAddress, 0, cacheEntry, 0, KSize);
-        System.arraycopy(BHRValue, 0, cacheEntry, branchAddress.length, BHRValue.length);
+        // gshare xors the BHR into the address hash over the whole entry instead of concatenating it
+        if (hashMode == HashMode.GSHARE) {
+            return CombinationalLogic.hash(branchAddress, BHRValue, KSize + BHRValue.length, hashMode);
+        }
+
+        // hash the branch address
+        Bit[] addressLine = CombinationalLogic.hash(branchAddress, BHRValue, KSize, hashMode);
+
+        // Concatenate the Hash bits with the BHR bits
+        Bit[] cacheEntry = new Bit[addressLine.length + BHRValue.length];
+        System.arraycopy(addressLine, 0, cacheEntry, 0, KSize);
+        System.arraycopy(BHRValue, 0, cacheEntry, addressLine.length, BHRValue.length);
         return cacheEntry;
     }
 
@@ -95,6 +275,33 @@ public class SAs implements BranchPredictor {
         return defaultBlock;
     }
 
+    @Override
+    public long getOccupancy() {
+        return PSPHT.size();
+    }
+
+    /**
+     * Save the count and hash modes, the BHR bank, the SC register and the PSPHT into the
+     * checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeMode(countMode);
+        out.writeMode(hashMode);
+        PSBHR.save(out);
+        SC.save(out);
+        PSPHT.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(countMode, "count mode");
+        in.expect(hashMode, "hash mode");
+        PSBHR.restore(in);
+        SC.restore(in);
+        PSPHT.restore(in);
+    }
+
     @Override
     public String monitor() {
         return null;
@@ -0,0 +1,392 @@
+package hardwar.branch.prediction.judged.TAGE;
+
+import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.shared.devices.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+a TAGE predictor, a bimodal base table and N tagged tables with geometric history lengths
+
+the tagged table i is indexed and tagged with the branch address and the folds of the last L(i) bits of
+the global history, L(i) grows geometrically from minHistory to maxHistory. the prediction is read from
+the matching table with the longest history (the provider), a newly allocated provider is replaced with
+the next matching table (the alternate) if the alternate has been more reliable so far.
+
+a tagged entry is packed into an int: the tag, a 2 bit usefulness counter and a 3 bit counter
+(tag << 5 | u << 3 | counter), an empty entry is -1. on a misprediction an entry is allocated in a longer
+table whose entry is not useful, otherwise the usefulness of those entries is decreased. the usefulness
+counters are halved one entry at a time, so the cost of a branch does not depend on the table sizes.
+
+the predictor is not thread safe, the entries of the last prediction are kept in the predictor.
+ */
+public class TAGE implements BranchPredictor {
+    private static final int BASE_COUNTER_SIZE = 2;
+    private static final int COUNTER_SIZE = 3;
+    private static final int USEFUL_SIZE = 2;
+    private static final int AGING_PERIOD = 1 << 18; // number of branches which ages every usefulness counter once
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final int branchInstructionSize;
+    private final int baseSize; // number of bits of the base table entry
+    private final int tableSize; // number of bits of a tagged table entry
+    private final int tagSize; // number of bits of a tag
+    private final int[] historyLengths; // history length of each tagged table
+    private final FoldedHistoryRegister GHR; // global history register
+    private final int[] indexFolds; // the fold of the GHR which is used in the entry of each table
+    private final int[] tagFolds; // the folds of the GHR which are used in the tag of each table
+    private final int[] tagFolds2; // the second, one bit shorter fold of the tag of each table
+    private final int[] base; // counter of each base entry, -1 if the entry is empty
+    private final int[][] tables; // packed entries of each tagged table, -1 if the entry is empty
+    private final PackedCache baseTable; // the base table as a page history table
+    private final PackedCache[] taggedTables; // the tagged tables as page history tables
+    private final int agingInterval; // number of branches between the aging of two entries
+
+    // the entries of the last prediction
+    private final int[] entries;
+    private final int[] tags;
+    private int baseEntry;
+    private int provider; // the table of the provider, -1 if no table matches
+    private int alternate; // the table of the alternate, -1 if only the provider matches
+    private boolean providerPrediction;
+    private boolean alternatePrediction;
+    private boolean newProvider; // the provider entry is weak and not useful
+
+    private int useAlternate; // 4 bit signed counter, the alternate is used for new providers if it is not negative
+    private long aging; // number of branches since the predictor is created
+    private int agingEntry; // the next tagged entry which is aged
+    private long seed; // state of the random generator of the allocation
+
+    public TAGE() {
+        this(6, 4, 128, 12, 10, 9, 8);
+    }
+
+    /**
+     * @param nTables               number of tagged tables
+     * @param minHistory            history length of the first tagged table
+     * @param maxHistory            history length of the last tagged table
+     * @param baseSize              number of bits of the base table entry, the base table has 2^baseSize counters
+     * @param tableSize             number of bits of a tagged table entry, each tagged table has 2^tableSize entries
+     * @param tagSize               number of bits of a tag
+     * @param branchInstructionSize the number of bits of the branch address which are hashed
+     */
+    public TAGE(int nTables, int minHistory, int maxHistory, int baseSize, int tableSize, int tagSize,
+                int branchInstructionSize) {
+        if (nTables < 1 || nTables > 32)
+            throw new IllegalArgumentException("TAGE number of tables must be in [1, 32]");
+        if (minHistory < 1 || maxHistory < minHistory || maxHistory > 1 << 16)
+            throw new IllegalArgumentException("TAGE history lengths must be in [1, 2^16] and increasing");
+        if (baseSize < 0 || baseSize > 26)
+            throw new IllegalArgumentException("TAGE base entry size must be in [0, 26]");
+        if (tableSize < 1 || tableSize > 24)
+            throw new IllegalArgumentException("TAGE table entry size must be in [1, 24]");
+        if (tagSize < 1 || tagSize > 31 - COUNTER_SIZE - USEFUL_SIZE)
+            throw new IllegalArgumentException("TAGE tag size must be in [1, 26]");
+        if (branchInstructionSize < 0 || branchInstructionSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("TAGE branch instruction size must be in [0, 64]");
+
+        this.branchInstructionSize = branchInstructionSize;
+        this.baseSize = baseSize;
+        this.tableSize = tableSize;
+        this.tagSize = tagSize;
+        this.historyLengths = historyLengths(nTables, minHistory, maxHistory);
+
+        this.GHR = new FoldedHistoryRegister("GHR", maxHistory);
+        this.indexFolds = new int[nTables];
+        this.tagFolds = new int[nTables];
+        this.tagFolds2 = new int[nTables];
+        for (int i = 0; i < nTables; i++) {
+            indexFolds[i] = GHR.addFold(historyLengths[i], tableSize);
+            tagFolds[i] = GHR.addFold(historyLengths[i], tagSize);
+            tagFolds2[i] = GHR.addFold(historyLengths[i], Math.max(tagSize - 1, 1));
+        }
+
+        this.base = new int[1 << baseSize];
+        this.tables = new int[nTables][1 << tableSize];
+        Arrays.fill(base, -1);
+        this.baseTable = new DensePageHistoryTable(base, BASE_COUNTER_SIZE);
+        this.taggedTables = new PackedCache[nTables];
+        for (int i = 0; i < nTables; i++) {
+            Arrays.fill(tables[i], -1);
+            taggedTables[i] = new DensePageHistoryTable(tables[i], tagSize + USEFUL_SIZE + COUNTER_SIZE);
+        }
+        this.agingInterval = Integer.highestOneBit(Math.max(AGING_PERIOD / (nTables << tableSize), 1));
+
+        this.entries = new int[nTables];
+        this.tags = new int[nTables];
+        this.seed = SEED;
+    }
+
+    /**
+     * @return the history length of each table, L(i) = minHistory * (maxHistory / minHistory) ^ (i / (n - 1))
+     */
+    private static int[] historyLengths(int nTables, int minHistory, int maxHistory) {
+        int[] lengths = new int[nTables];
+        for (int i = 0; i < nTables; i++) {
+            double ratio = nTables == 1 ? 0 : (double) i / (nTables - 1);
+            lengths[i] = (int) Math.round(minHistory * Math.pow((double) maxHistory / minHistory, ratio));
+        }
+        return lengths;
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        return BranchResult.of(lookup(getAddress(instruction)));
+    }
+
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        predictAndUpdate(instruction, actual);
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        boolean prediction = lookup(getAddress(instruction));
+        update(prediction, BranchResult.isTaken(actual));
+        return BranchResult.of(prediction);
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            predictions[i] = lookup(getAddress(instructions[i]));
+            if (predictions[i] == taken) correct++;
+            update(predictions[i], taken);
+        }
+        return correct;
+    }
+
+    /**
+     * find the provider and the alternate of the branch and keep their entries for the update
+     *
+     * @param address the hashed bits of the branch address
+     * @return the prediction, true if the branch is predicted as taken
+     */
+    private boolean lookup(long address) {
+        long entryBits = CombinationalLogic.hash(address, branchInstructionSize, 0, 0, tableSize, HashMode.XOR);
+        long tagBits = CombinationalLogic.hash(address, branchInstructionSize, 0, 0, tagSize, HashMode.XOR);
+        int entryMask = (1 << tableSize) - 1;
+        int tagMask = (1 << tagSize) - 1;
+
+        provider = -1;
+        alternate = -1;
+        for (int i = tables.length - 1; i >= 0; i--) {
+            // the table number is also hashed into the entry, so the tables with the same history folds differ
+            entries[i] = (int) (entryBits ^ GHR.fold(indexFolds[i]) ^ (entryBits >>> (i % tableSize + 1)))
+                    & entryMask;
+            tags[i] = (int) (tagBits ^ GHR.fold(tagFolds[i]) ^ ((long) GHR.fold(tagFolds2[i]) << 1)) & tagMask;
+            int entry = tables[i][entries[i]];
+            if (entry < 0 || entry >>> (USEFUL_SIZE + COUNTER_SIZE) != tags[i]) continue;
+            if (provider < 0) provider = i;
+            else if (alternate < 0) alternate = i;
+        }
+
+        baseEntry = (int) CombinationalLogic.hash(address, branchInstructionSize, 0, 0, baseSize, HashMode.XOR);
+        boolean basePrediction = Math.max(base[baseEntry], 0) >>> (BASE_COUNTER_SIZE - 1) == 1;
+        alternatePrediction = alternate < 0 ? basePrediction : isTaken(tables[alternate][entries[alternate]]);
+        if (provider < 0) return basePrediction;
+
+        int entry = tables[provider][entries[provider]];
+        int counter = counter(entry);
+        providerPrediction = isTaken(entry);
+        newProvider = useful(entry) == 0 && (counter == 3 || counter == 4);
+        return newProvider && useAlternate >= 0 ? alternatePrediction : providerPrediction;
+    }
+
+    /**
+     * update the tables of the last lookup with the actual result and shift the result into the GHR
+     *
+     * @param prediction the prediction of the last lookup
+     * @param taken      the actual result
+     */
+    private void update(boolean prediction, boolean taken) {
+        if (provider >= 0 && newProvider && providerPrediction != alternatePrediction) {
+            useAlternate = Math.max(-8, Math.min(7, useAlternate + (alternatePrediction == taken ? 1 : -1)));
+        }
+
+        if (prediction != taken && provider < tables.length - 1) allocate(taken);
+
+        if (provider >= 0) {
+            int entry = tables[provider][entries[provider]];
+            int useful = useful(entry);
+            if (providerPrediction != alternatePrediction) {
+                useful = Math.max(0, Math.min(3, useful + (providerPrediction == taken ? 1 : -1)));
+            }
+            // a new provider is not trusted yet, so the alternate also learns the branch
+            if (useful == 0) {
+                if (alternate >= 0) count(alternate, taken);
+                else countBase(taken);
+            }
+            tables[provider][entries[provider]] = pack(tags[provider], useful, step(counter(entry), taken));
+        } else {
+            countBase(taken);
+        }
+
+        age();
+        GHR.insert(taken);
+    }
+
+    /**
+     * allocate an entry of the branch in a table which is longer than the provider and whose entry is not
+     * useful. one table is skipped at random, so two branches do not keep replacing each other
+     */
+    private void allocate(boolean taken) {
+        int from = provider + 1;
+        if (from < tables.length - 1 && (random() & 1) == 0) from++;
+        for (int i = from; i < tables.length; i++) {
+            int entry = tables[i][entries[i]];
+            if (entry < 0 || useful(entry) == 0) {
+                tables[i][entries[i]] = pack(tags[i], 0, taken ? 4 : 3);
+                return;
+            }
+        }
+
+        for (int i = provider + 1; i < tables.length; i++) {
+            int entry = tables[i][entries[i]];
+            if (entry >= 0 && useful(entry) > 0) tables[i][entries[i]] = entry - (1 << COUNTER_SIZE);
+        }
+    }
+
+    /**
+     * halve the usefulness of the next tagged entry every agingInterval branches
+     */
+    private void age() {
+        if ((++aging & (agingInterval - 1)) != 0) return;
+        int[] table = tables[agingEntry >>> tableSize];
+        int row = agingEntry & ((1 << tableSize) - 1);
+        int entry = table[row];
+        if (entry >= 0) table[row] = pack(entry >>> (USEFUL_SIZE + COUNTER_SIZE), useful(entry) >>> 1, counter(entry));
+        agingEntry = (agingEntry + 1) % (tables.length << tableSize);
+    }
+
+    private void count(int table, boolean taken) {
+        int entry = tables[table][entries[table]];
+        tables[table][entries[table]] = pack(entry >>> (USEFUL_SIZE + COUNTER_SIZE), useful(entry),
+                step(counter(entry), taken));
+    }
+
+    private void countBase(boolean taken) {
+        base[baseEntry] = CombinationalLogic.count(Math.max(base[baseEntry], 0), BASE_COUNTER_SIZE, taken,
+                CountMode.SATURATING);
+    }
+
+    private static int step(int counter, boolean taken) {
+        return CombinationalLogic.count(counter, COUNTER_SIZE, taken, CountMode.SATURATING);
+    }
+
+    private static int pack(int tag, int useful, int counter) {
+        return tag << (USEFUL_SIZE + COUNTER_SIZE) | useful << COUNTER_SIZE | counter;
+    }
+
+    private static int counter(int entry) {
+        return entry & ((1 << COUNTER_SIZE) - 1);
+    }
+
+    private static int useful(int entry) {
+        return entry >>> COUNTER_SIZE & ((1 << USEFUL_SIZE) - 1);
+    }
+
+    private static boolean isTaken(int entry) {
+        return counter(entry) >>> (COUNTER_SIZE - 1) == 1;
+    }
+
+    private int random() {
+        // xorshift64
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) seed;
+    }
+
+    /**
+     * @return the first branchInstructionSize bits of the branch address, a shorter address as a whole
+     */
+    private long getAddress(BranchInstruction instruction) {
+        BitVector address = instruction.getPackedInstructionAddress();
+        return BitVector.slice(address.toLong(), address.length(), 0,
+                Math.min(address.length(), branchInstructionSize));
+    }
+
+    /**
+     * @return the history length of each tagged table
+     */
+    public int[] getHistoryLengths() {
+        return historyLengths.clone();
+    }
+
+    @Override
+    public long getOccupancy() {
+        long size = baseTable.size();
+        for (PackedCache table : taggedTables) size += table.size();
+        return size;
+    }
+
+    /**
+     * Save the GHR, the state of the allocation and the aging and then the base and the tagged tables into the
+     * checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(tables.length);
+        for (int length : historyLengths) out.writeInt(length);
+        GHR.save(out);
+        out.writeInt(useAlternate);
+        out.writeLong(aging);
+        out.writeInt(agingEntry);
+        out.writeLong(seed);
+        baseTable.save(out);
+        for (PackedCache table : taggedTables) table.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(tables.length, "TAGE tables");
+        for (int length : historyLengths) in.expect(length, "TAGE history length");
+        GHR.restore(in);
+        useAlternate = in.readInt();
+        aging = in.readLong();
+        agingEntry = in.readInt();
+        seed = in.readLong();
+        if (useAlternate < -8 || useAlternate > 7) throw in.error("invalid TAGE alternate counter");
+        if (agingEntry < 0 || agingEntry >= tables.length << tableSize) throw in.error("invalid TAGE aging entry");
+        baseTable.restore(in);
+        for (PackedCache table : taggedTables) table.restore(in);
+    }
+
+    /**
+     * @return snapshot of the GHR and the tables, a tagged block is the tag, the usefulness and the counter
+     */
+    @Override
+    public String monitor() {
+        StringBuilder sb = new StringBuilder("TAGE predictor snapshot: \n").append(GHR.monitor());
+        sb.append("Base\n").append(baseTable.monitor());
+        for (int i = 0; i < taggedTables.length; i++) {
+            sb.append("\nT").append(i + 1).append(" (history ").append(historyLengths[i]).append(")\n");
+            sb.append(taggedTables[i].monitor());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to
+     * each table
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("TAGE predictor snapshot: \n").append(GHR.monitor());
+        out.append("Base\n");
+        baseTable.monitor(out, filter, offset, limit);
+        for (int i = 0; i < taggedTables.length; i++) {
+            out.append("\nT").append(String.valueOf(i + 1)).append(" (history ")
+                    .append(String.valueOf(historyLengths[i])).append(")\n");
+            taggedTables[i].monitor(out, filter, offset, limit);
+        }
+    }
+}
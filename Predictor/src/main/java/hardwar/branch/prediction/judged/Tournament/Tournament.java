@@ -0,0 +1,232 @@
+package hardwar.branch.prediction.judged.Tournament;
+
+import hardwar.branch.prediction.shared.*;
+import hardwar.branch.prediction.shared.devices.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+a tournament predictor, two component predictors and a chooser table of 2^K saturating counters
+
+both components predict every branch and the chooser counter of the branch address selects one of them,
+the second component is selected if the MSB of the counter is one. the chooser counter is only counted
+when the components disagree, towards the component which was right. each component is looked up and
+updated once per branch with its own predictAndUpdate, so the components keep their fused and batch paths.
+
+predict and update must be paired, the component predictions of the last predict are kept for the update.
+ */
+public class Tournament implements BranchPredictor {
+    private final BranchPredictor first;
+    private final BranchPredictor second;
+    private final int SCSize;
+    private final int branchInstructionSize;
+    private final int KSize;
+    private final int[] chooser; // counter of each chooser entry, -1 if the entry is empty
+    private final PackedCache table; // the chooser as a page history table
+    private Prediction firstPending; // the token of the first component of the last predict
+    private Prediction secondPending; // the token of the second component of the last predict
+    private boolean[] firstPredictions = new boolean[0]; // the predictions of the components in a batch
+    private boolean[] secondPredictions = new boolean[0];
+
+    /**
+     * @param first  the component which is selected by the lower half of the chooser counters
+     * @param second the component which is selected by the upper half of the chooser counters
+     */
+    public Tournament(BranchPredictor first, BranchPredictor second) {
+        this(first, second, 2, 8, 8);
+    }
+
+    /**
+     * @param first                 the component which is selected by the lower half of the chooser counters
+     * @param second                the component which is selected by the upper half of the chooser counters
+     * @param SCSize                the size of the chooser counters
+     * @param branchInstructionSize the number of bits of the branch address which are hashed
+     * @param KSize                 the number of bits of the chooser entry, the chooser has 2^KSize counters
+     */
+    public Tournament(BranchPredictor first, BranchPredictor second, int SCSize, int branchInstructionSize,
+                      int KSize) {
+        if (first == null || second == null)
+            throw new IllegalArgumentException("tournament components must not be null");
+        if (SCSize < 1 || SCSize > 31)
+            throw new IllegalArgumentException("tournament counter size must be in [1, 31]");
+        if (branchInstructionSize < 0 || branchInstructionSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("tournament branch instruction size must be in [0, 64]");
+        if (KSize < 0 || KSize > 30)
+            throw new IllegalArgumentException("tournament chooser entry size must be in [0, 30]");
+
+        this.first = first;
+        this.second = second;
+        this.SCSize = SCSize;
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
+        this.chooser = new int[1 << KSize];
+        Arrays.fill(chooser, -1);
+        this.table = new DensePageHistoryTable(chooser, SCSize);
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        firstPending = first.lookup(instruction);
+        secondPending = second.lookup(instruction);
+        boolean useSecond = chooseSecond(getCacheEntry(instruction));
+        return (useSecond ? secondPending : firstPending).getResult();
+    }
+
+    /**
+     * Update the components with the tokens of the last predict and then the chooser, an update which is not
+     * paired with a predict is the same as predictAndUpdate
+     */
+    @Override
+    public void update(BranchInstruction instruction, BranchResult actual) {
+        if (firstPending == null || firstPending.getInstruction() != instruction) {
+            predictAndUpdate(instruction, actual);
+            return;
+        }
+
+        first.update(firstPending, actual);
+        second.update(secondPending, actual);
+        choose(getCacheEntry(instruction), BranchResult.isTaken(firstPending.getResult()),
+                BranchResult.isTaken(secondPending.getResult()), BranchResult.isTaken(actual));
+        clearPending();
+    }
+
+    /**
+     * drop the tokens of the last predict, so a later update does not pair with them
+     */
+    private void clearPending() {
+        firstPending = null;
+        secondPending = null;
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        clearPending();
+        boolean firstPrediction = BranchResult.isTaken(first.predictAndUpdate(instruction, actual));
+        boolean secondPrediction = BranchResult.isTaken(second.predictAndUpdate(instruction, actual));
+        return BranchResult.of(choose(getCacheEntry(instruction), firstPrediction, secondPrediction,
+                BranchResult.isTaken(actual)));
+    }
+
+    /**
+     * Predict and update a batch of branches, see BranchPredictor. The components do not depend on each other or
+     * on the chooser, so each component predicts the whole batch with its own batch function and then the chooser
+     * selects and learns branch by branch.
+     */
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        clearPending();
+        if (firstPredictions.length < offset + length) {
+            firstPredictions = new boolean[offset + length];
+            secondPredictions = new boolean[offset + length];
+        }
+        first.predictAndUpdate(instructions, actuals, firstPredictions, offset, length);
+        second.predictAndUpdate(instructions, actuals, secondPredictions, offset, length);
+
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            boolean taken = BranchResult.isTaken(actuals[i]);
+            predictions[i] = choose(getCacheEntry(instructions[i]), firstPredictions[i], secondPredictions[i],
+                    taken);
+            if (predictions[i] == taken) correct++;
+        }
+        return correct;
+    }
+
+    /**
+     * select the prediction of a component and count the chooser counter towards the component which was right
+     *
+     * @return the selected prediction
+     */
+    private boolean choose(int entry, boolean firstPrediction, boolean secondPrediction, boolean taken) {
+        int counter = Math.max(chooser[entry], 0);
+        boolean useSecond = counter >>> (SCSize - 1) == 1;
+        if (firstPrediction != secondPrediction) {
+            chooser[entry] = CombinationalLogic.count(counter, SCSize, secondPrediction == taken,
+                    CountMode.SATURATING);
+        } else {
+            chooser[entry] = counter;
+        }
+        return useSecond ? secondPrediction : firstPrediction;
+    }
+
+    private boolean chooseSecond(int entry) {
+        return Math.max(chooser[entry], 0) >>> (SCSize - 1) == 1;
+    }
+
+    /**
+     * @return the number of the chooser entry, the folded first branchInstructionSize bits of the branch address,
+     * a shorter address is hashed as a whole
+     */
+    private int getCacheEntry(BranchInstruction instruction) {
+        BitVector address = instruction.getPackedInstructionAddress();
+        int size = Math.min(address.length(), branchInstructionSize);
+        long bits = BitVector.slice(address.toLong(), address.length(), 0, size);
+        return (int) CombinationalLogic.hash(bits, size, 0, 0, KSize, HashMode.XOR);
+    }
+
+    public BranchPredictor getFirst() {
+        return first;
+    }
+
+    public BranchPredictor getSecond() {
+        return second;
+    }
+
+    /**
+     * @return the non-empty chooser entries plus the occupancy of the components which report it
+     */
+    @Override
+    public long getOccupancy() {
+        return table.size() + Math.max(first.getOccupancy(), 0) + Math.max(second.getOccupancy(), 0);
+    }
+
+    /**
+     * Save the first and the second component and then the chooser into the checkpoint, see Checkpointable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        first.save(out);
+        second.save(out);
+        table.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        first.restore(in);
+        second.restore(in);
+        table.restore(in);
+        clearPending();
+    }
+
+    /**
+     * @return snapshot of the components and the chooser
+     */
+    @Override
+    public String monitor() {
+        return "Tournament predictor snapshot: \n" + snapshot(first) + snapshot(second) + "Chooser\n"
+                + table.monitor();
+    }
+
+    /**
+     * @return the snapshot of a component, empty if the component does not have one
+     */
+    private static String snapshot(BranchPredictor component) {
+        String snapshot = component.monitor();
+        return snapshot == null ? "" : snapshot;
+    }
+
+    /**
+     * Write the snapshot in the same layout as monitor(), the filter, the offset and the limit are applied to
+     * each component and to the chooser
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        out.append("Tournament predictor snapshot: \n");
+        first.monitor(out, filter, offset, limit);
+        second.monitor(out, filter, offset, limit);
+        out.append("Chooser\n");
+        table.monitor(out, filter, offset, limit);
+    }
+}
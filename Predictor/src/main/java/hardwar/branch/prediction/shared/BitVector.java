@@ -0,0 +1,224 @@
+package hardwar.branch.prediction.shared;
+
+/*
+ * our packed bit vector model
+ * read below assumptions about pre-defined BitVector
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the vector is immutable. every operation returns a new vector, therefore the vector
+ * can be shared between devices without copying it.
+ *
+ * 2) the bits are saved in a single long, so the length of the vector is at most 64 bits.
+ *
+ * 3) as in Bit.toNumber, the most significant bit is the first bit of the vector (index 0)
+ * -------------------------------------------------------
+ */
+
+public final class BitVector implements Comparable<BitVector> {
+    public static final int MAX_LENGTH = 64;
+
+    private final long bits; // the value of the vector, bit 0 of the vector is the most significant bit
+    private final int length; // number of bits in the vector
+
+    private BitVector(long bits, int length) {
+        this.bits = bits;
+        this.length = length;
+    }
+
+    /**
+     * @param value  the number which is saved in the vector
+     * @param length number of bits of the vector
+     * @return a vector holding the `length` least significant bits of the value
+     * @throws IllegalArgumentException if the length is not in [0, 64]
+     */
+    public static BitVector of(long value, int length) {
+        checkLength(length);
+        return new BitVector(value & mask(length), length);
+    }
+
+    /**
+     * @param array the bits, the most significant bit is the first bit of the array
+     * @return packed vector of the array
+     * @throws IllegalArgumentException if the array is longer than 64 bits
+     */
+    public static BitVector of(Bit[] array) {
+        checkLength(array.length);
+        return new BitVector(toLong(array, 0, array.length), array.length);
+    }
+
+    /**
+     * @param length number of bits of the vector
+     * @return a zero filled vector
+     */
+    public static BitVector zeros(int length) {
+        return of(0, length);
+    }
+
+    /**
+     * @return the value of the vector as an unsigned number
+     */
+    public long toLong() {
+        return bits;
+    }
+
+    /**
+     * @return the value of the vector as an integer, the same as Bit.toNumber for vectors shorter than 32 bits
+     */
+    public int toNumber() {
+        return (int) bits;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @param index the bit index, 0 is the most significant bit
+     * @return the bit at the index
+     */
+    public Bit get(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("bit index out of range: " + index);
+        return Bit.of(((bits >>> (length - 1 - index)) & 1) == 1);
+    }
+
+    /**
+     * @param from the first bit of the slice (inclusive)
+     * @param to   the last bit of the slice (exclusive)
+     * @return the sub vector, the same as Arrays.copyOfRange on the bit array
+     */
+    public BitVector slice(int from, int to) {
+        if (from < 0 || to > length || from > to) throw new IndexOutOfBoundsException("invalid slice range");
+        return new BitVector(slice(bits, length, from, to), to - from);
+    }
+
+    /**
+     * @param other the vector which is placed after this vector
+     * @return a vector which holds this vector as most significant bits and the other as least significant ones
+     */
+    public BitVector concat(BitVector other) {
+        checkLength(length + other.length);
+        return new BitVector(concat(bits, other.bits, other.length), length + other.length);
+    }
+
+    /**
+     * insert a bit at the beginning of the vector and drop the last bit, the same as SIPORegister.insert
+     *
+     * @param bit the new first bit
+     * @return the shifted vector
+     */
+    public BitVector shiftIn(Bit bit) {
+        return new BitVector(shiftIn(bits, length, bit.getValue()), length);
+    }
+
+    /**
+     * @return the bits of the vector as an array
+     */
+    public Bit[] toArray() {
+        Bit[] array = new Bit[length];
+        for (int i = 0; i < length; i++) array[i] = Bit.of(((bits >>> (length - 1 - i)) & 1) == 1);
+        return array;
+    }
+
+    /**
+     * write the bits of the vector into an existing array
+     *
+     * @param array  the destination array
+     * @param offset the index of the first bit in the array
+     */
+    public void copyInto(Bit[] array, int offset) {
+        for (int i = 0; i < length; i++) array[offset + i] = Bit.of(((bits >>> (length - 1 - i)) & 1) == 1);
+    }
+
+    /**
+     * vectors are compared as unsigned numbers first and then by their length. for vectors of the same length
+     * the order is the same as the order of Bit.arrayToString values.
+     */
+    @Override
+    public int compareTo(BitVector other) {
+        int result = Long.compareUnsigned(bits, other.bits);
+        return result != 0 ? result : Integer.compare(length, other.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BitVector)) return false;
+        BitVector other = (BitVector) o;
+        return bits == other.bits && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(bits) + length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = length - 1; i >= 0; i--) sb.append((bits >>> i & 1) == 1 ? '1' : '0');
+        return sb.toString();
+    }
+
+    /*
+     * word level helpers which are used by the packed devices. they work on raw longs and do not allocate.
+     */
+
+    /**
+     * @param length number of bits
+     * @return a long which its `length` least significant bits are one
+     */
+    public static long mask(int length) {
+        return length >= MAX_LENGTH ? -1L : (1L << length) - 1;
+    }
+
+    /**
+     * @param array  the bits, the most significant bit is the first one
+     * @param from   the first bit (inclusive)
+     * @param to     the last bit (exclusive)
+     * @return the number of the selected bits
+     */
+    public static long toLong(Bit[] array, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) result = (result << 1) | (array[i] == Bit.ONE ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * @param bits   value of the vector
+     * @param length number of bits of the vector
+     * @param bit    the new first bit
+     * @return the value of the vector after inserting the bit at the beginning
+     */
+    public static long shiftIn(long bits, int length, boolean bit) {
+        if (length == 0) return 0;
+        return (bits >>> 1) | ((bit ? 1L : 0L) << (length - 1));
+    }
+
+    /**
+     * @param bits   value of the vector
+     * @param length number of bits of the vector
+     * @param from   the first bit (inclusive)
+     * @param to     the last bit (exclusive)
+     * @return the value of the sub vector
+     */
+    public static long slice(long bits, int length, int from, int to) {
+        if (from == to) return 0;
+        return (bits >>> (length - to)) & mask(to - from);
+    }
+
+    /**
+     * @param high      value of the first vector
+     * @param low       value of the second vector
+     * @param lowLength number of bits of the second vector
+     * @return the value of the concatenated vector
+     */
+    public static long concat(long high, long low, int lowLength) {
+        if (lowLength >= MAX_LENGTH) return low;
+        return (high << lowLength) | (low & mask(lowLength));
+    }
+
+    private static void checkLength(int length) {
+        if (length < 0 || length > MAX_LENGTH)
+            throw new IllegalArgumentException("bit vector length must be in [0, 64]: " + length);
+    }
+}
@@ -2,11 +2,18 @@ package hardwar.branch.prediction.shared;
 
 
 public class BranchInstruction {
-    private final Bit[] opcode;
+    // a branch is saved as bit arrays, as packed vectors or both. the missing form is created on first use.
+    private volatile Bit[] opcode;
 
-    private final Bit[] instructionAddress;
+    private volatile Bit[] instructionAddress;
 
-    private final Bit[] jumpAddress;
+    private volatile Bit[] jumpAddress;
+
+    private volatile BitVector packedOpcode;
+
+    private volatile BitVector packedInstructionAddress;
+
+    private volatile BitVector packedJumpAddress;
 
     public BranchInstruction(Bit[] opcode, Bit[] instructionAddress, Bit[] jumpAddress) {
         this.opcode = opcode;
@@ -14,24 +21,74 @@ public class BranchInstruction {
         this.jumpAddress = jumpAddress;
     }
 
+    public BranchInstruction(BitVector opcode, BitVector instructionAddress, BitVector jumpAddress) {
+        this.packedOpcode = opcode;
+        this.packedInstructionAddress = instructionAddress;
+        this.packedJumpAddress = jumpAddress;
+    }
+
     public Bit[] getOpcode() {
-        return opcode;
+        Bit[] bits = opcode;
+        if (bits == null) opcode = bits = packedOpcode.toArray();
+        return bits;
     }
 
     public Bit[] getInstructionAddress() {
-        return instructionAddress;
+        Bit[] bits = instructionAddress;
+        if (bits == null) instructionAddress = bits = packedInstructionAddress.toArray();
+        return bits;
     }
 
     public Bit[] getJumpAddress() {
-        return jumpAddress;
+        Bit[] bits = jumpAddress;
+        if (bits == null) jumpAddress = bits = packedJumpAddress.toArray();
+        return bits;
+    }
+
+    /**
+     * @return the opcode as a packed vector
+     * @throws IllegalArgumentException if the opcode is longer than 64 bits
+     */
+    public BitVector getPackedOpcode() {
+        BitVector vector = packedOpcode;
+        if (vector == null) packedOpcode = vector = BitVector.of(opcode);
+        return vector;
+    }
+
+    /**
+     * @return the number of bits of the instruction address, without creating the missing form
+     */
+    public int getInstructionAddressLength() {
+        BitVector vector = packedInstructionAddress;
+        return vector != null ? vector.length() : instructionAddress.length;
+    }
+
+    /**
+     * @return the instruction address as a packed vector
+     * @throws IllegalArgumentException if the address is longer than 64 bits
+     */
+    public BitVector getPackedInstructionAddress() {
+        BitVector vector = packedInstructionAddress;
+        if (vector == null) packedInstructionAddress = vector = BitVector.of(instructionAddress);
+        return vector;
+    }
+
+    /**
+     * @return the jump address as a packed vector
+     * @throws IllegalArgumentException if the address is longer than 64 bits
+     */
+    public BitVector getPackedJumpAddress() {
+        BitVector vector = packedJumpAddress;
+        if (vector == null) packedJumpAddress = vector = BitVector.of(jumpAddress);
+        return vector;
     }
 
     @Override
     public String toString() {
         return "BranchInstruction{" +
-                "opcode=" + Bit.arrayToString(opcode) +
-                ", sourceAddress=" + Bit.arrayToString(instructionAddress) +
-                ", targetAddress=" + Bit.arrayToString(jumpAddress) +
+                "opcode=" + Bit.arrayToString(getOpcode()) +
+                ", sourceAddress=" + Bit.arrayToString(getInstructionAddress()) +
+                ", targetAddress=" + Bit.arrayToString(getJumpAddress()) +
                 '}';
     }
 }
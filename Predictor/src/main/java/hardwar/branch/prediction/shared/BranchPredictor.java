@@ -1,6 +1,9 @@
 package hardwar.branch.prediction.shared;
 
-public interface BranchPredictor extends Monitorable {
+import java.io.IOException;
+import java.util.BitSet;
+
+public interface BranchPredictor extends Monitorable, Checkpointable {
     /**
      * Predict if the branch is taken or not
      *
@@ -16,4 +19,102 @@ public interface BranchPredictor extends Monitorable {
      * @param result      the actual result of branch (taken or not)
      */
     void update(BranchInstruction instruction, BranchResult result);
+
+    /**
+     * Predict the branch without changing the state which the update depends on. The token is passed to
+     * update(Prediction, BranchResult) when the actual result is known, so several predictions can be in flight.
+     * The default token only holds the instruction and its update relies on predict and update being paired.
+     *
+     * @param instruction the branch instruction
+     * @return the prediction token
+     */
+    default Prediction lookup(BranchInstruction instruction) {
+        return new Prediction(instruction, predict(instruction));
+    }
+
+    /**
+     * Update the predictor with the actual result of a prediction token
+     *
+     * @param prediction the token which is returned by lookup
+     * @param actual     the actual result of branch (taken or not)
+     */
+    default void update(Prediction prediction, BranchResult actual) {
+        update(prediction.getInstruction(), actual);
+    }
+
+    /**
+     * Predict the branch and then update the predictor with its actual result, the same as calling predict and
+     * update. Predictors can override it to compute the table entry of the branch only once.
+     *
+     * @param instruction the branch instruction
+     * @param actual      the actual result of branch (taken or not)
+     * @return predicted result of branch
+     */
+    default BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        BranchResult prediction = predict(instruction);
+        update(instruction, actual);
+        return prediction;
+    }
+
+    /**
+     * Predict a batch of branches. Each branch is predicted and then the predictor is updated with its actual
+     * result before the next branch, the same as calling predict and update for every branch.
+     *
+     * @param instructions the branch instructions
+     * @param actuals      the actual results of the branches
+     * @param predictions  the predicted results are written here, true if the branch is predicted as taken
+     * @param offset       index of the first branch in the arrays
+     * @param length       number of branches
+     * @return number of correct predictions
+     */
+    default int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                 int offset, int length) {
+        int correct = 0;
+        for (int i = offset; i < offset + length; i++) {
+            BranchResult prediction = predictAndUpdate(instructions[i], actuals[i]);
+            predictions[i] = BranchResult.isTaken(prediction);
+            if (prediction == actuals[i]) correct++;
+        }
+        return correct;
+    }
+
+    /**
+     * Predict a batch of branches, the same as the boolean array version. The boolean predictions are written
+     * into an array of the thread which is reused by every call.
+     *
+     * @param instructions the branch instructions
+     * @param actuals      the actual results of the branches
+     * @param predictions  bit i is set if the branch i is predicted as taken, otherwise it is cleared
+     * @param offset       index of the first branch in the arrays
+     * @param length       number of branches
+     * @return number of correct predictions
+     */
+    default int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, BitSet predictions,
+                                 int offset, int length) {
+        boolean[] taken = PredictionBuffer.get(offset + length);
+        int correct = predictAndUpdate(instructions, actuals, taken, offset, length);
+        for (int i = offset; i < offset + length; i++) predictions.set(i, taken[i]);
+        return correct;
+    }
+
+    /**
+     * @return number of non-empty entries of the pattern history tables, -1 if the predictor does not report it
+     */
+    default long getOccupancy() {
+        return -1;
+    }
+
+    /**
+     * Save the whole state of the predictor, so a warmed up predictor can be restored instead of replaying the
+     * warm up branches. Predictors which do not support checkpoints throw UnsupportedOperationException.
+     */
+    @Override
+    default void save(CheckpointWriter out) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support checkpoints");
+    }
+
+    @Override
+    default void restore(CheckpointReader in) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support checkpoints");
+    }
 }
@@ -0,0 +1,153 @@
+package hardwar.branch.prediction.shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+reads the compact binary checkpoint format (see CheckpointWriter)
+
+a checkpoint file is memory mapped when it fits in a single mapping, so restoring a large table
+does not copy the file through a heap buffer. other channels are read through a direct buffer.
+ */
+public class CheckpointReader implements Closeable {
+    private final ReadableByteChannel channel; // null if the whole checkpoint is in the buffer
+    private final ByteBuffer buffer;
+
+    public CheckpointReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(1 << 16);
+        buffer.flip();
+    }
+
+    /**
+     * read a checkpoint which is already in memory
+     */
+    public CheckpointReader(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * restore a component from a checkpoint file
+     *
+     * @param state the component, it must be of the same class and sizes as the saved one
+     * @param path  the checkpoint file
+     * @throws IOException if the file can not be read or does not match the component
+     */
+    public static void restore(Checkpointable state, Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            CheckpointReader in = file.size() <= Integer.MAX_VALUE
+                    ? new CheckpointReader(file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()))
+                    : new CheckpointReader(file);
+            if (in.readInt() != CheckpointWriter.MAGIC) throw in.error("not a checkpoint file");
+            if (in.readByte() != CheckpointWriter.VERSION) throw in.error("unsupported checkpoint version");
+            String name = in.readName();
+            if (!name.equals(state.getClass().getName()))
+                throw in.error("checkpoint of " + name + " can not be restored into " + state.getClass().getName());
+            state.restore(in);
+        }
+    }
+
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    /**
+     * @param length number of bits
+     * @return the bits which are written by CheckpointWriter.writeBits
+     */
+    public Bit[] readBits(int length) throws IOException {
+        Bit[] bits = new Bit[length];
+        for (int from = 0; from < length; from += BitVector.MAX_LENGTH) {
+            int to = Math.min(from + BitVector.MAX_LENGTH, length);
+            long chunk = readLong();
+            for (int i = from; i < to; i++) bits[i] = Bit.of((chunk >>> (to - 1 - i) & 1) == 1);
+        }
+        return bits;
+    }
+
+    /**
+     * @param length number of bits, at most 64
+     * @return the packed bits which are written by CheckpointWriter.writeBits
+     */
+    public long readBits64(int length) throws IOException {
+        if (length > BitVector.MAX_LENGTH) throw new IllegalArgumentException("packed bits are at most 64 bits");
+        return length > 0 ? readLong() & BitVector.mask(length) : 0;
+    }
+
+    /**
+     * read a size of the component and check it against the size of the component which is restored
+     *
+     * @param expected the size of the component
+     * @param what     name of the size for the error message
+     * @throws IOException if the sizes are not the same
+     */
+    public void expect(int expected, String what) throws IOException {
+        int actual = readInt();
+        if (actual != expected)
+            throw error("checkpoint " + what + " is " + actual + " but the component " + what + " is " + expected);
+    }
+
+    /**
+     * read a mode of the component, for example its count mode, and check it against the mode of the component
+     * which is restored
+     *
+     * @param expected the mode of the component
+     * @param what     name of the mode for the error message
+     * @throws IOException if the modes are not the same
+     */
+    public void expect(Enum<?> expected, String what) throws IOException {
+        String actual = readName();
+        if (!actual.equals(expected.name()))
+            throw error("checkpoint " + what + " is " + actual + " but the component " + what + " is " + expected);
+    }
+
+    /**
+     * @return the error which is thrown for a malformed checkpoint
+     */
+    public IOException error(String message) {
+        return new IOException("malformed checkpoint: " + message);
+    }
+
+    private String readName() throws IOException {
+        require(2);
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        require(bytes.length);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        if (channel != null) {
+            buffer.compact();
+            while (buffer.position() < bytes && channel.read(buffer) >= 0) {
+                // keep reading until the value is complete or the channel ends
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() < bytes) throw error("checkpoint is truncated");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+}
@@ -0,0 +1,118 @@
+package hardwar.branch.prediction.shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+writes the state of predictors and devices in the compact binary checkpoint format
+
+a checkpoint file starts with a header: int magic (CKPT), byte version, the class name of the saved
+component as a short length and its bytes. the state of the component follows. all the numbers
+are big-endian, bits are packed into longs (64 bits per long, the first bit is the most significant
+bit of the first long) and blocks are saved as their numbers.
+ */
+public class CheckpointWriter implements Closeable {
+    static final int MAGIC = 0x434B5054;
+    static final byte VERSION = 2;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+    public CheckpointWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * save a component into a checkpoint file
+     *
+     * @param state the component, usually a predictor
+     * @param path  the checkpoint file, it is replaced if it exists
+     * @throws IOException if the file can not be written
+     */
+    public static void save(Checkpointable state, Path path) throws IOException {
+        try (CheckpointWriter out = new CheckpointWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeName(state.getClass().getName());
+            state.save(out);
+        }
+    }
+
+    public void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * write the bits packed into longs, see CheckpointReader.readBits
+     */
+    public void writeBits(Bit[] bits) throws IOException {
+        for (int from = 0; from < bits.length; from += BitVector.MAX_LENGTH) {
+            writeLong(BitVector.toLong(bits, from, Math.min(from + BitVector.MAX_LENGTH, bits.length)));
+        }
+    }
+
+    /**
+     * write a packed bit vector of at most 64 bits, the same as writeBits(BitVector.of(bits, length).toArray())
+     */
+    public void writeBits(long bits, int length) throws IOException {
+        if (length > BitVector.MAX_LENGTH) throw new IllegalArgumentException("packed bits are at most 64 bits");
+        if (length > 0) writeLong(bits);
+    }
+
+    /**
+     * write the name of a mode of the component, see CheckpointReader.expect(Enum, String)
+     */
+    public void writeMode(Enum<?> mode) throws IOException {
+        writeName(mode.name());
+    }
+
+    private void writeName(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ensure(2 + bytes.length);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    /**
+     * write the buffered bytes to the channel
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * flush the buffer and close the channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
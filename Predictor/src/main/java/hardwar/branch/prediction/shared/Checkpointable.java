@@ -0,0 +1,31 @@
+package hardwar.branch.prediction.shared;
+
+import java.io.IOException;
+
+/*
+a component whose state can be saved into a checkpoint and restored later
+
+the state is written in a compact binary format (see CheckpointWriter). the MAP, DENSE and CONCURRENT
+storage modes share the format, so a checkpoint of a DENSE predictor can be restored into a MAP one with
+the same sizes. a SET_ASSOCIATIVE table or register bank also saves its tags and replacement state, so its
+checkpoint is only restored into a SET_ASSOCIATIVE one of the same geometry. the count mode and the hash mode of a
+predictor are a part of its checkpoint. restore replaces the whole state of the component and fails if
+the sizes or the modes of the checkpoint are not the ones of the component.
+ */
+public interface Checkpointable {
+    /**
+     * write the state of the component
+     *
+     * @param out the checkpoint
+     * @throws IOException if the checkpoint can not be written
+     */
+    void save(CheckpointWriter out) throws IOException;
+
+    /**
+     * replace the state of the component with a saved state
+     *
+     * @param in the checkpoint
+     * @throws IOException if the checkpoint can not be read or does not match the component
+     */
+    void restore(CheckpointReader in) throws IOException;
+}
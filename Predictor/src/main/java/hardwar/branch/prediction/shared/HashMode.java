@@ -2,5 +2,7 @@ package hardwar.branch.prediction.shared;
 
 public enum HashMode {
     XOR, // using xor method for hashing
-    SIMPLE_CUT // using first K bit as key value
+    SIMPLE_CUT, // using first K bit as key value
+    GSHARE, // xor of the folded input and the folded branch history (gshare style), plain XOR if there is no history
+    FIBONACCI // multiplicative hashing, first K bits of the input multiplied by the golden ratio constant
 }
@@ -0,0 +1,36 @@
+package hardwar.branch.prediction.shared;
+
+/*
+selects the rows of a table which are written by a streaming monitor
+
+the key of a row is the number of its entry (for a PAPHT the selector and the entry bits together,
+see PackedCache) or the number of the register in a register bank, and the value is the number
+of the block or the register.
+ */
+@FunctionalInterface
+public interface MonitorFilter {
+    MonitorFilter ALL = (key, value) -> true;
+
+    boolean accept(long key, long value);
+
+    /**
+     * @param from the first key (inclusive)
+     * @param to   the last key (exclusive)
+     * @return a filter which only accepts the rows of the key range
+     */
+    static MonitorFilter range(long from, long to) {
+        return (key, value) -> key >= from && key < to;
+    }
+
+    /**
+     * @param defaultValue the value of a row which is never changed, 0 for the PHTs and the register banks
+     * @return a filter which only accepts the rows which are changed
+     */
+    static MonitorFilter nonDefault(long defaultValue) {
+        return (key, value) -> value != defaultValue;
+    }
+
+    default MonitorFilter and(MonitorFilter other) {
+        return (key, value) -> accept(key, value) && other.accept(key, value);
+    }
+}
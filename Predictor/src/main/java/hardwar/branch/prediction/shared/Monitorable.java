@@ -1,5 +1,39 @@
 package hardwar.branch.prediction.shared;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
 public interface Monitorable {
     String monitor();
+
+    /**
+     * Write the snapshot row by row instead of building it in a single string. Only the rows which are
+     * accepted by the filter are written, the first offset of them are skipped and at most limit of them are
+     * written. Tables write the same layout as monitor(), components without rows write monitor(), nothing is
+     * written if monitor() returns null.
+     *
+     * @param out    the output
+     * @param filter the rows which are written
+     * @param offset number of accepted rows which are skipped
+     * @param limit  maximum number of rows which are written
+     * @throws IOException if the output fails
+     */
+    default void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        String snapshot = monitor();
+        if (snapshot != null) out.append(snapshot);
+    }
+
+    /**
+     * Write the snapshot to a channel, for example a file channel, see monitor(Appendable, ...). The channel is
+     * not closed.
+     */
+    default void monitor(WritableByteChannel channel, MonitorFilter filter, long offset, long limit)
+            throws IOException {
+        Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), 1 << 16);
+        monitor(out, filter, offset, limit);
+        out.flush();
+    }
 }
@@ -0,0 +1,62 @@
+package hardwar.branch.prediction.shared;
+
+/*
+an immutable token of a prediction
+
+the token holds everything that the update of the prediction needs: the selected history
+register, the table entry and the counter which was read. predictors which use tokens do not
+keep any state between the prediction and the update, so several predictions of a predictor
+can be in flight at the same time and their updates can come in any order.
+ */
+public final class Prediction {
+    private final BranchInstruction instruction; // the predicted branch
+    private final BranchResult result; // the predicted result
+    private final long selector; // number of the selected history register, 0 for a global history
+    private final long entry; // number of the table entry
+    private final int counter; // number of the counter which is read from the entry
+
+    /**
+     * a token of a predictor which does not resolve its table entries
+     */
+    public Prediction(BranchInstruction instruction, BranchResult result) {
+        this(instruction, result, 0, -1, -1);
+    }
+
+    public Prediction(BranchInstruction instruction, BranchResult result, long selector, long entry, int counter) {
+        this.instruction = instruction;
+        this.result = result;
+        this.selector = selector;
+        this.entry = entry;
+        this.counter = counter;
+    }
+
+    public BranchInstruction getInstruction() {
+        return instruction;
+    }
+
+    public BranchResult getResult() {
+        return result;
+    }
+
+    public long getSelector() {
+        return selector;
+    }
+
+    public long getEntry() {
+        return entry;
+    }
+
+    public int getCounter() {
+        return counter;
+    }
+
+    @Override
+    public String toString() {
+        return "Prediction{" +
+                "result=" + result +
+                ", selector=" + selector +
+                ", entry=" + entry +
+                ", counter=" + counter +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package hardwar.branch.prediction.shared;
+
+/*
+a reused prediction array of each thread for the BitSet batch of BranchPredictor
+
+the boolean batch writes the prediction of branch i at index i, so the array must reach offset + length.
+it only grows, so a thread which replays batches of the same size allocates it once.
+ */
+final class PredictionBuffer {
+    private static final ThreadLocal<boolean[]> BUFFER = ThreadLocal.withInitial(() -> new boolean[0]);
+
+    private PredictionBuffer() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * @param size the number of predictions which are needed
+     * @return the array of the thread, at least `size` long. its content is not cleared
+     */
+    static boolean[] get(int size) {
+        boolean[] buffer = BUFFER.get();
+        if (buffer.length < size) {
+            buffer = new boolean[Math.max(size, 2 * buffer.length)];
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+}
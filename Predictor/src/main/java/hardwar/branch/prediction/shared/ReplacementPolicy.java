@@ -0,0 +1,7 @@
+package hardwar.branch.prediction.shared;
+
+public enum ReplacementPolicy {
+    LRU, // the least recently used way of the set is replaced
+    PSEUDO_LRU, // a binary tree of one bit per node points to the way which is replaced, as in hardware caches
+    RANDOM // a pseudo random way of the set is replaced, the sequence is the same in every run
+}
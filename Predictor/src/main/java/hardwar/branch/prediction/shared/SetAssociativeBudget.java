@@ -0,0 +1,49 @@
+package hardwar.branch.prediction.shared;
+
+/*
+the geometry of the SET_ASSOCIATIVE tables and register banks of a predictor
+
+every table and every register bank of the predictor has at most `entries` entries in sets of `ways`
+ways, or one entry for each address if there are less addresses. the other storage modes ignore it.
+ */
+public final class SetAssociativeBudget {
+    public static final SetAssociativeBudget DEFAULT = new SetAssociativeBudget(1 << 12, 4, ReplacementPolicy.LRU);
+
+    private final int entries; // maximum number of entries of a table or a bank
+    private final int ways; // number of ways of each set
+    private final ReplacementPolicy policy; // the way which is replaced when a set is full
+
+    /**
+     * @param entries maximum number of entries of a table or a bank, a power of two up to 2^28
+     * @param ways    number of ways of each set, a power of two up to 64 which is not more than entries
+     * @param policy  the way which is replaced when a set is full
+     * @throws IllegalArgumentException if the sizes are not supported
+     */
+    public SetAssociativeBudget(int entries, int ways, ReplacementPolicy policy) {
+        if (entries <= 0 || entries > 1 << 28 || Integer.bitCount(entries) != 1)
+            throw new IllegalArgumentException("set associative budget must be a power of two up to 2^28 entries");
+        if (ways <= 0 || ways > Math.min(entries, 64) || Integer.bitCount(ways) != 1)
+            throw new IllegalArgumentException("set associative ways must be a power of two up to 64 and the budget");
+        if (policy == null) throw new IllegalArgumentException("set associative policy is missing");
+        this.entries = entries;
+        this.ways = ways;
+        this.policy = policy;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getWays() {
+        return ways;
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return entries + "x" + ways + " " + policy;
+    }
+}
@@ -0,0 +1,12 @@
+package hardwar.branch.prediction.shared;
+
+public enum StorageMode {
+    MAP, // blocks are saved in sorted maps keyed by the bit string of the entry
+    DENSE, // blocks are saved in primitive arrays indexed by the number of the entry
+    // blocks and registers are saved in atomic arrays and counted with CAS. lookup / update(Prediction) and
+    // predictAndUpdate can be shared between threads, predict / update can not as they are paired
+    CONCURRENT,
+    // blocks and registers are saved in bounded set associative stores with tags, old entries are evicted. the
+    // geometry and the replacement policy are given by a SetAssociativeBudget
+    SET_ASSOCIATIVE
+}
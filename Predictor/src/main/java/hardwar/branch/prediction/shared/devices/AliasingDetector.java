@@ -0,0 +1,214 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our aliasing detector model
+ * read below assumptions about pre-defined aliasing detector
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) a row is a table entry number, the same number which is used by the number functions of PackedCache.
+ * for a PAPHT it is the selector and the block selector together
+ *
+ * 2) every access of a row is recorded with the address of its branch and whether its prediction is correct.
+ * an access is aliased if the row is last accessed by another branch. an aliased access with a correct
+ * prediction is counted as constructive and an aliased access with a wrong prediction as destructive
+ *
+ * 3) each row keeps its last branch and a 64 bit sketch of the branches which access it, so the number of
+ * branches of a row is estimated (linear counting) without keeping a set of addresses
+ *
+ * 4) the rows are saved in primitive arrays with a fixed capacity. accesses of new rows after the capacity
+ * is full are only counted as untracked, so the memory does not depend on the trace
+ *
+ * 5) the detector is not thread safe
+ * -------------------------------------------------------
+ */
+
+
+import java.util.Arrays;
+
+public class AliasingDetector {
+    private static final int SKETCH_BITS = 64;
+
+    private final long[] rows; // entry number + 1 of each slot, 0 for an empty slot
+    private final long[] lastBranch; // address of the branch which accessed the row last
+    private final long[] sketch; // one bit for each hashed branch address which accessed the row
+    private final int capacity; // maximum number of tracked rows
+    private int size; // number of tracked rows
+    private long accesses;
+    private long aliased;
+    private long constructive;
+    private long destructive;
+    private long untracked; // accesses of rows which can not be tracked, the detector is full
+
+    /**
+     * @param capacity maximum number of rows which are tracked
+     */
+    public AliasingDetector(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 28)
+            throw new IllegalArgumentException("aliasing detector capacity must be in [1, 2^28]");
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1; // keep the load factor at most one half
+        this.capacity = capacity;
+        this.rows = new long[slots];
+        this.lastBranch = new long[slots];
+        this.sketch = new long[slots];
+    }
+
+    /**
+     * record an access of a row
+     *
+     * @param entry   the entry number of the row
+     * @param address the packed address of the branch
+     * @param correct the prediction which is read from the row is correct
+     */
+    public void record(long entry, long address, boolean correct) {
+        accesses++;
+        int slot = find(entry);
+        if (slot < 0) {
+            untracked++;
+            return;
+        }
+
+        long bit = 1L << (mix(address) >>> (Long.SIZE - 6));
+        if (rows[slot] == 0) {
+            rows[slot] = entry + 1;
+            size++;
+        } else if (lastBranch[slot] != address) {
+            aliased++;
+            if (correct) constructive++;
+            else destructive++;
+        }
+        lastBranch[slot] = address;
+        sketch[slot] |= bit;
+    }
+
+    /**
+     * @return the slot of the row, an empty slot if the row is new or -1 if the detector is full
+     */
+    private int find(long entry) {
+        int mask = rows.length - 1;
+        int slot = (int) mix(entry) & mask;
+        while (rows[slot] != 0) {
+            if (rows[slot] == entry + 1) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return size < capacity ? slot : -1;
+    }
+
+    /**
+     * @return a 64 bit mix of the value (the finalizer of MurmurHash3)
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * @param entry the entry number of the row
+     * @return estimated number of different branches which accessed the row, 0 if the row is not tracked
+     */
+    public double getBranches(long entry) {
+        int mask = rows.length - 1;
+        for (int slot = (int) mix(entry) & mask; rows[slot] != 0; slot = (slot + 1) & mask) {
+            if (rows[slot] == entry + 1) return estimate(sketch[slot]);
+        }
+        return 0;
+    }
+
+    /**
+     * linear counting of a sketch, a full sketch is reported as 64 * ln(64)
+     */
+    private static double estimate(long sketch) {
+        int zeros = SKETCH_BITS - Long.bitCount(sketch);
+        return SKETCH_BITS * Math.log((double) SKETCH_BITS / Math.max(zeros, 1));
+    }
+
+    /**
+     * @return number of tracked rows which are accessed by more than one branch
+     */
+    public long getSharedRows() {
+        long shared = 0;
+        for (int slot = 0; slot < rows.length; slot++) {
+            if (rows[slot] != 0 && Long.bitCount(sketch[slot]) > 1) shared++;
+        }
+        return shared;
+    }
+
+    /**
+     * @return number of tracked rows by their estimated number of branches, element i counts the rows
+     * with [2^i, 2^(i+1)) branches
+     */
+    public long[] getSharingHistogram() {
+        long[] histogram = new long[8];
+        for (int slot = 0; slot < rows.length; slot++) {
+            if (rows[slot] == 0) continue;
+            long branches = Math.max(Math.round(estimate(sketch[slot])), 1);
+            histogram[Math.min(63 - Long.numberOfLeadingZeros(branches), histogram.length - 1)]++;
+        }
+        return histogram;
+    }
+
+    public long getAccesses() {
+        return accesses;
+    }
+
+    /**
+     * @return number of accesses of a row which is last accessed by another branch
+     */
+    public long getAliasedAccesses() {
+        return aliased;
+    }
+
+    /**
+     * @return number of aliased accesses with a correct prediction
+     */
+    public long getConstructive() {
+        return constructive;
+    }
+
+    /**
+     * @return number of aliased accesses with a wrong prediction
+     */
+    public long getDestructive() {
+        return destructive;
+    }
+
+    public long getUntrackedAccesses() {
+        return untracked;
+    }
+
+    /**
+     * @return number of tracked rows
+     */
+    public int getRows() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(rows, 0);
+        Arrays.fill(lastBranch, 0);
+        Arrays.fill(sketch, 0);
+        size = 0;
+        accesses = aliased = constructive = destructive = untracked = 0;
+    }
+
+    /**
+     * @return a summary of the aliasing of the tracked rows
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("accesses: %d, aliased: %d (%.2f%%), constructive: %d, destructive: %d%n",
+                accesses, aliased, accesses == 0 ? 0 : 100.0 * aliased / accesses, constructive, destructive));
+        sb.append(String.format("rows: %d, shared rows: %d, untracked accesses: %d%n", size, getSharedRows(),
+                untracked));
+        long[] histogram = getSharingHistogram();
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) continue;
+            String range = i == 0 ? "1" : i == histogram.length - 1 ? (1 << i) + "+" : (1 << i) + "-" + ((2 << i) - 1);
+            sb.append(String.format("rows with %s branches: %d%n", range, histogram[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our atomic serial-in, parallel-out register Model
+ * read below assumption about pre-defined Register
+ * ------------------------------------------------------
+ * ASSUMPTIONS
+ * 1) the register behaves exactly like the PackedShiftRegister, only the register is thread safe
+ *
+ * 2) the content of the register is saved in an atomic long, insert is a compare and set loop, so
+ * concurrent inserts are never lost. the register size is at most 64 bits.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AtomicShiftRegister implements ShiftRegister {
+    private final int size;
+    public final String name;
+    private final AtomicLong register = new AtomicLong(); // the first bit of the register is the most significant bit
+
+    /**
+     * Creates a new register with the specified size and default value.
+     * If default_value is null, the register is zero-filled by default.
+     *
+     * @param name         the register name
+     * @param size         the size of the register
+     * @param defaultValue the default value to initialize the register with
+     * @throws IllegalArgumentException if the size is bigger than 64 bits
+     */
+    public AtomicShiftRegister(String name, int size, Bit[] defaultValue) {
+        if (size < 0 || size > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("atomic register size must be in [0, 64]");
+        this.name = name;
+        this.size = size;
+        if (defaultValue != null) load(defaultValue);
+    }
+
+    @Override
+    public Bit[] read() {
+        return readVector().toArray();
+    }
+
+    @Override
+    public BitVector readVector() {
+        return BitVector.of(register.get(), size);
+    }
+
+    /**
+     * @return the register content as a number
+     */
+    public long readAsLong() {
+        return register.get();
+    }
+
+    @Override
+    public void load(Bit[] bits) {
+        register.set(BitVector.toLong(bits, 0, size));
+    }
+
+    @Override
+    public void load(BitVector bits) {
+        if (bits.length() < size) throw new IllegalArgumentException("not enough bits to load the register");
+        register.set(BitVector.slice(bits.toLong(), bits.length(), 0, size));
+    }
+
+    @Override
+    public void insert(Bit bit) {
+        long current;
+        do {
+            current = register.get();
+        } while (!register.compareAndSet(current, BitVector.shiftIn(current, size, bit.getValue())));
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        register.set(0);
+    }
+
+    /**
+     * Returns the contents of the register as a binary string, in the same layout as SIPORegister.
+     *
+     * @return the binary string representation of the register
+     */
+    @Override
+    public String monitor() {
+        long bits = register.get();
+        StringBuilder sb = new StringBuilder();
+        int registerWidth = size * 4;
+        int labelWidth = name.length();
+        int lastBarIndex = registerWidth + labelWidth;
+        String line = String.join("", Collections.nCopies(lastBarIndex + 2, "-"));
+        sb.append("+").append(line).append("+\n");
+        sb.append("|").append(name).append(" ");
+        for (int i = size - 1; i >= 0; i--) {
+            sb.append(" | ").append((bits >>> i & 1) == 1 ? "1" : "0");
+        }
+        sb.append(" |\n");
+        sb.append("+").append(line).append("+\n");
+        return sb.toString();
+    }
+}
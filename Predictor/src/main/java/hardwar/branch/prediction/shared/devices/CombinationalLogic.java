@@ -2,72 +2,140 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
 import hardwar.branch.prediction.shared.CountMode;
 import hardwar.branch.prediction.shared.HashMode;
 
-import java.util.Arrays;
-
 public final class CombinationalLogic {
     private CombinationalLogic() {
         // make the constructor private to avoid instantiating.
     }
 
+    /**
+     * count the counter which is saved in a bit array
+     *
+     * @param input the comb logic input
+     * @param up    the counter direction
+     * @param mode  the counter type
+     * @return the counted value with the same length of input
+     * @throws IllegalArgumentException if the counter is longer than 31 bits
+     */
     public static Bit[] count(Bit[] input, boolean up, CountMode mode) {
+        checkWidth(input.length);
+        return BitVector.of(count(Bit.toNumber(input), input.length, up, mode), input.length).toArray();
+    }
+
+
+    /**
+     * count a packed counter, the same as the bit array version but without building bit arrays
+     *
+     * @param input the comb logic input
+     * @param up    the counter direction
+     * @param mode  the counter type
+     * @return the counted value with the same length of input
+     * @throws IllegalArgumentException if the counter is longer than 31 bits
+     */
+    public static BitVector count(BitVector input, boolean up, CountMode mode) {
+        checkWidth(input.length());
+        return BitVector.of(count(input.toNumber(), input.length(), up, mode), input.length());
+    }
+
+    /**
+     * the counters are counted as ints, so a wider counter would be cut silently
+     */
+    private static void checkWidth(int width) {
+        if (width > 31) throw new IllegalArgumentException("counter width must be at most 31 bits");
+    }
+
+    /**
+     * the counter kernel, every other count function is a wrapper of this one
+     *
+     * @param value the counter value, the first bit of the counter is the most significant bit
+     * @param width number of counter bits, from 1 to 31
+     * @param up    the counter direction
+     * @param mode  the counter type
+     * @return the counted value
+     */
+    public static int count(int value, int width, boolean up, CountMode mode) {
         if (mode == CountMode.SATURATING) {
-            return saturateCount(input, up);
+            return saturateCount(value, width, up);
+        } else if (mode == CountMode.UP_DOWN) {
+            return upDownCount(value, width, up);
+        } else if (mode == CountMode.JOHNSON) {
+            return johnsonCount(value, width, up);
+        } else throw new UnsupportedOperationException();
+    }
+
+    /**
+     * count an array of counters in place
+     *
+     * @param counters the counter values
+     * @param up       the direction of each counter
+     * @param offset   index of the first counter
+     * @param length   number of counters
+     * @param width    number of bits of each counter, from 1 to 31
+     * @param mode     the counter type
+     */
+    public static void count(int[] counters, boolean[] up, int offset, int length, int width, CountMode mode) {
+        if (mode == CountMode.SATURATING) {
+            for (int i = offset; i < offset + length; i++) counters[i] = saturateCount(counters[i], width, up[i]);
+        } else if (mode == CountMode.UP_DOWN) {
+            for (int i = offset; i < offset + length; i++) counters[i] = upDownCount(counters[i], width, up[i]);
+        } else if (mode == CountMode.JOHNSON) {
+            for (int i = offset; i < offset + length; i++) counters[i] = johnsonCount(counters[i], width, up[i]);
         } else throw new UnsupportedOperationException();
     }
 
 
     /**
-     * Increments or decrements the saturating counter based on the value of the input bit.
-     * If the input bit is 1, the counter is incremented by setting the rightmost 0 bit to 1
-     * and all subsequent bits to 0. If all bits are already set to 1, then the counter saturates
-     * at the maximum value. If the input bit is 0, the counter is decremented by setting the
-     * rightmost 1 bit to 0 and all subsequent bits to 1. If all bits are already set to 0, then
-     * the counter saturates at the minimum value.
+     * Increments or decrements the saturating counter. If all bits are already set to 1 the counter saturates
+     * at the maximum value, and if all bits are already set to 0 the counter saturates at the minimum value.
      *
-     * @param input the comb logic input
+     * @param value the counter value
+     * @param width number of counter bits
      * @param up    the counter direction
+     * @return the counted value
      */
-    private static Bit[] saturateCount(Bit[] input, boolean up) {
-        // counter bits number
-        int len = input.length;
+    private static int saturateCount(int value, int width, boolean up) {
+        // (value + 1) >>> width is 1 only for the upper limit and (value | -value) >>> 31 is 0 only for the lower limit
+        int increment = ((value + 1) >>> width) ^ 1;
+        int decrement = (value | -value) >>> 31;
+        return value + select(up, increment, -decrement);
+    }
 
-        // convert to decimal
-        int numberInDecimal = Bit.toNumber(input);
+    /**
+     * Increments or decrements a modular counter, the counter wraps around at both limits.
+     *
+     * @param value the counter value
+     * @param width number of counter bits
+     * @param up    the counter direction
+     * @return the counted value
+     */
+    private static int upDownCount(int value, int width, boolean up) {
+        return (value + select(up, 1, -1)) & (int) BitVector.mask(width);
+    }
 
-        // if the counter is saturated (upper limit) then return the same bits.
-        if (numberInDecimal == Math.pow(2, len) - 1 && up) {
-            return Arrays.copyOf(input, len);
-        }
-        // if the counter is saturated (lower limit) then return the same bits.
-        else if (numberInDecimal == 0 && !up) {
-            Bit[] zeroFilled = new Bit[len];
-            Arrays.fill(zeroFilled, Bit.ZERO);
-            return zeroFilled;
-        }
-        // count up or down
-        else {
-
-            if (up) numberInDecimal++;
-            else numberInDecimal--;
-
-            // Convert the updated value to a binary string representation
-            String binaryString = Integer.toBinaryString(numberInDecimal);
-
-            // Create a Bit array from the binary string
-            Bit[] bits = new Bit[len];
-            for (int i = 0; i < len; i++) {
-                if (i < len - binaryString.length()) {
-                    bits[i] = Bit.ZERO;
-                } else {
-                    bits[i] = binaryString.charAt(i - (len - binaryString.length())) == '1' ? Bit.ONE : Bit.ZERO;
-                }
-            }
-
-            return bits;
-        }
+    /**
+     * Steps a Johnson (twisted ring) counter. counting up shifts the register to right and inserts the complement
+     * of the last bit at the beginning, counting down reverses that step. a K bit counter has 2K states.
+     *
+     * @param value the counter value
+     * @param width number of counter bits
+     * @param up    the counter direction
+     * @return the counted value
+     */
+    private static int johnsonCount(int value, int width, boolean up) {
+        int forward = (value >>> 1) | ((~value & 1) << (width - 1));
+        int backward = ((value << 1) & (int) BitVector.mask(width)) | ((~value >>> (width - 1)) & 1);
+        return select(up, forward, backward);
+    }
+
+    /**
+     * @return `a` if the condition is true otherwise `b`, selected with a mask instead of a jump
+     */
+    private static int select(boolean condition, int a, int b) {
+        int mask = -(condition ? 1 : 0);
+        return (a & mask) | (b & ~mask);
     }
 
 
@@ -78,32 +146,122 @@ public final class CombinationalLogic {
      * @return hashed value of input based on the specified mode
      */
     public static Bit[] hash(Bit[] input, int outBitNumber, HashMode mode) {
+        return hash(input, new Bit[0], outBitNumber, mode);
+    }
+
+    /**
+     * @param input        the hash function input
+     * @param history      the branch history, only GSHARE mode uses it
+     * @param outBitNumber number of output bits
+     * @param mode         hash mode
+     * @return hashed value of input and history based on the specified mode
+     */
+    public static Bit[] hash(Bit[] input, Bit[] history, int outBitNumber, HashMode mode) {
+        // inputs which do not fit in a word are reduced to one first: XOR and GSHARE fold them to K bits (folding
+        // them again does not change them), SIMPLE_CUT keeps their first 64 bits and FIBONACCI folds them to 64 bits
+        boolean cut = mode == HashMode.SIMPLE_CUT || mode == HashMode.FIBONACCI;
+        int inBitNumber = input.length <= BitVector.MAX_LENGTH ? input.length
+                : cut ? BitVector.MAX_LENGTH : outBitNumber;
+        long in = input.length == inBitNumber || mode == HashMode.SIMPLE_CUT
+                ? BitVector.toLong(input, 0, inBitNumber) : fold(input, inBitNumber);
+        int historyBitNumber = history.length <= BitVector.MAX_LENGTH ? history.length : outBitNumber;
+        long past = history.length == historyBitNumber
+                ? BitVector.toLong(history, 0, historyBitNumber) : fold(history, historyBitNumber);
+
+        long hash = hash(in, inBitNumber, past, historyBitNumber, outBitNumber, mode);
+        return BitVector.of(hash, outBitNumber).toArray();
+    }
+
+    /**
+     * @param input        the hash function input
+     * @param outBitNumber number of output bits
+     * @param mode         hash mode
+     * @return hashed value of input based on the specified mode
+     */
+    public static BitVector hash(BitVector input, int outBitNumber, HashMode mode) {
+        return BitVector.of(hash(input.toLong(), input.length(), 0, 0, outBitNumber, mode), outBitNumber);
+    }
+
+    /**
+     * the word level hash kernel, every other hash function is a wrapper of this one
+     *
+     * @param input            value of the input, the first bit is the most significant bit
+     * @param inBitNumber      number of input bits
+     * @param history          value of the branch history, only GSHARE mode uses it
+     * @param historyBitNumber number of history bits, 0 if there is no history
+     * @param outBitNumber     number of output bits (K)
+     * @param mode             hash mode
+     * @return hash value in K bits
+     */
+    public static long hash(long input, int inBitNumber, long history, int historyBitNumber, int outBitNumber,
+                            HashMode mode) {
         if (mode == HashMode.XOR) {
-            return hash(input, outBitNumber);
+            return xorFold(input, inBitNumber, outBitNumber);
+        } else if (mode == HashMode.SIMPLE_CUT) {
+            return simpleCut(input, inBitNumber, outBitNumber);
+        } else if (mode == HashMode.GSHARE) {
+            return xorFold(input, inBitNumber, outBitNumber) ^ xorFold(history, historyBitNumber, outBitNumber);
+        } else if (mode == HashMode.FIBONACCI) {
+            return fibonacci(input, outBitNumber);
         } else throw new UnsupportedOperationException();
+    }
+
+    /**
+     * word level version of the xor hash. the bit i of input is xor-ed into the bit (i % K) of the output,
+     * bits are numbered from the most significant one.
+     *
+     * @param bits         value of the input
+     * @param length       number of input bits
+     * @param outBitNumber number of output bits (K)
+     * @return hash value in K bits
+     */
+    private static long xorFold(long bits, int length, int outBitNumber) {
+        if (outBitNumber == 0) return 0;
+        long hash = 0;
+        for (int from = 0; from < length; from += outBitNumber) {
+            int to = Math.min(from + outBitNumber, length);
+            // a short last chunk fills the first (most significant) bits of the output
+            hash ^= BitVector.slice(bits, length, from, to) << (outBitNumber - (to - from));
+        }
+        return hash;
+    }
 
+    /**
+     * @param bits         value of the input
+     * @param length       number of input bits
+     * @param outBitNumber number of output bits (K)
+     * @return the first K bits of the input, a shorter input is filled with zero at the end
+     */
+    private static long simpleCut(long bits, int length, int outBitNumber) {
+        if (length >= outBitNumber) return BitVector.slice(bits, length, 0, outBitNumber);
+        return bits << (outBitNumber - length);
     }
 
+    /**
+     * multiplicative hashing, the first K bits of the product with 2^64 / golden ratio spread every input bit
+     * over the output.
+     *
+     * @param bits         value of the input
+     * @param outBitNumber number of output bits (K)
+     * @return hash value in K bits
+     */
+    private static long fibonacci(long bits, int outBitNumber) {
+        if (outBitNumber == 0) return 0;
+        return (bits * 0x9E3779B97F4A7C15L) >>> (BitVector.MAX_LENGTH - outBitNumber);
+    }
 
     /**
-     * hash N bits to a K bit value
+     * xor fold N bits to a K bit value, used for inputs which do not fit in a word. the bit i of `bits` is xor-ed
+     * into the bit (i % K) of the output, as in xorFold
      *
      * @param bits program counter
-     * @return hash value of fist M bits of `bits` in K bits
+     * @return hash value of `bits` in K bits
      */
-    private static Bit[] hash(Bit[] bits, int outBitNumber) {
-        Bit[] hash = new Bit[outBitNumber];
-
-        // XOR the first M bits of the PC to produce the hash
+    private static long fold(Bit[] bits, int outBitNumber) {
+        if (outBitNumber == 0) return 0;
+        long hash = 0;
         for (int i = 0; i < bits.length; i++) {
-            int j = i % outBitNumber;
-            if (hash[j] == null) {
-                hash[j] = bits[i];
-            } else {
-                Bit xorProduce = hash[j].getValue() ^ bits[i].getValue() ? Bit.ONE : Bit.ZERO;
-                hash[j] = xorProduce;
-
-            }
+            if (bits[i].getValue()) hash ^= 1L << (outBitNumber - 1 - i % outBitNumber);
         }
         return hash;
     }
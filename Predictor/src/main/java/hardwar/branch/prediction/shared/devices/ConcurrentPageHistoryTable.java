@@ -0,0 +1,200 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our concurrent Page History Table model
+ * read below assumptions about pre-defined concurrent PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the table behaves exactly like the DensePageHistoryTable, only the storage is thread safe
+ *
+ * 2) the blocks are saved in an atomic array. every block is a separate word which is changed with
+ * compare and set, so threads which use different entries never wait for each other and no lock is used.
+ *
+ * 3) count is atomic, concurrent counts of the same entry are never lost
+ *
+ * 4) a block is at most 31 bits and an empty block is saved as -1
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.MonitorFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ConcurrentPageHistoryTable implements PackedCache {
+
+    private final int nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int nEntryBits; // number of bits which is needed for addressing nRows entries
+    private final AtomicIntegerArray PHT; // block number of each entry, -1 if the entry is empty
+
+
+    public ConcurrentPageHistoryTable(int nRows, int nColumns) {
+        if (nColumns < 0 || nColumns > 31)
+            throw new IllegalArgumentException("concurrent PHT block size must be in [0, 31]");
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.nEntryBits = 32 - Integer.numberOfLeadingZeros(Math.max(nRows - 1, 0));
+        this.PHT = new AtomicIntegerArray(nRows);
+        clear();
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int block = PHT.get(Bit.toNumber(entry));
+        return block < 0 ? null : BitVector.of(block, nColumns).toArray();
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        PHT.set(Bit.toNumber(entry), Bit.toNumber(value));
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+        PHT.compareAndSet(Bit.toNumber(entry), -1, Bit.toNumber(value));
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+        if (defaultValue.length != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+
+        return BitVector.of(setDefault(Bit.toNumber(entry), Bit.toNumber(defaultValue)), nColumns).toArray();
+    }
+
+    @Override
+    public BitVector get(BitVector entry) {
+        int block = PHT.get(entry.toNumber());
+        return block < 0 ? null : BitVector.of(block, nColumns);
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        PHT.set(entry.toNumber(), value.toNumber());
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+        PHT.compareAndSet(entry.toNumber(), -1, value.toNumber());
+    }
+
+    @Override
+    public int get(long entry) {
+        return PHT.get((int) entry);
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        PHT.set((int) entry, value);
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        PHT.compareAndSet((int) entry, -1, value);
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultValue) {
+        int row = (int) entry;
+        int block = PHT.get(row);
+        if (block >= 0) return block;
+        if (PHT.compareAndSet(row, -1, defaultValue)) return defaultValue;
+        return PHT.get(row);
+    }
+
+    @Override
+    public int count(long entry, int defaultValue, int width, boolean up, CountMode mode) {
+        return count(PHT, (int) entry, defaultValue, width, up, mode);
+    }
+
+    /**
+     * count a block of an atomic array with compare and set, retry if another thread changes the block
+     *
+     * @return the number of the counted block
+     */
+    static int count(AtomicIntegerArray blocks, int row, int defaultValue, int width, boolean up, CountMode mode) {
+        while (true) {
+            int block = blocks.get(row);
+            int counted = CombinationalLogic.count(block < 0 ? defaultValue : block, width, up, mode);
+            if (blocks.compareAndSet(row, block, counted)) return counted;
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (int row = 0; row < nRows; row++) if (PHT.get(row) >= 0) size++;
+        return size;
+    }
+
+    /**
+     * save a snapshot of the table, entries which are changed while the snapshot is taken may have either value
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(nColumns);
+        DensePageHistoryTable.save(out, snapshot(PHT), 0, nRows);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "PHT rows");
+        in.expect(nColumns, "PHT block size");
+        int[] blocks = new int[nRows];
+        Arrays.fill(blocks, -1);
+        DensePageHistoryTable.restore(in, blocks, 0, nRows, nColumns);
+        for (int row = 0; row < nRows; row++) PHT.set(row, blocks[row]);
+    }
+
+    /**
+     * Clear all entries from the cache.
+     */
+    @Override
+    public void clear() {
+        for (int row = 0; row < nRows; row++) PHT.set(row, -1);
+    }
+
+    /**
+     * Returns a string representation of a snapshot of the PHT, in the same layout as PageHistoryTable.
+     * Entries which are changed while the snapshot is taken may show either value.
+     *
+     * @return a table with the address and block data for each non-empty entry in the PHT
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Address", "Block");
+        DensePageHistoryTable.monitor(table, PHT::get, 0, nRows, nEntryBits, nColumns, 0);
+    }
+
+    static int[] snapshot(AtomicIntegerArray blocks) {
+        int[] copy = new int[blocks.length()];
+        for (int i = 0; i < copy.length; i++) copy[i] = blocks.get(i);
+        return copy;
+    }
+}
@@ -0,0 +1,256 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * Our concurrent Per Address Predication History Table
+ * read below assumptions about pre-defined concurrent PAPHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the table behaves exactly like the FlatPerAddressPredictionHistoryTable, only the storage is thread safe
+ *
+ * 2) all the PHTs are saved one after another in a single atomic array, row = selector * nRowsPerPHT +
+ * blockSelector. every block is changed with compare and set, so no lock is used.
+ *
+ * 3) a PHT is associated to the PAPHT by putIfAbsent, setDefault or count and put throws an exception
+ * if the PHT is not associated yet
+ *
+ * 4) a block is at most 31 bits and an empty block is saved as -1
+ * ------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.MonitorFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ConcurrentPerAddressPredictionHistoryTable implements PackedCache {
+
+    private final int nPCSelector; // number of bits from pc which determine which PHT in PAPHT must be used.
+    private final int nRowsPerPHT; // number of rows per PHT
+    private final int nColumnsPerBlock; // number of columns per block in a PHT
+    private final int nBlockSelector; // number of bits which select the block in a PHT
+    private final AtomicIntegerArray PAPHT; // block number of each row, -1 if the row is empty
+    private final AtomicIntegerArray associated; // 1 for the PHTs which are associated to the PAPHT
+
+
+    public ConcurrentPerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock) {
+        if (nColumnsPerBlock < 0 || nColumnsPerBlock > 31)
+            throw new IllegalArgumentException("concurrent PAPHT block size must be in [0, 31]");
+        if (nPCSelector > 30 || ((long) nRowsPerPHT << nPCSelector) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("concurrent PAPHT is too large to be saved in a single array");
+
+        this.nPCSelector = nPCSelector;
+        this.nRowsPerPHT = nRowsPerPHT;
+        this.nColumnsPerBlock = nColumnsPerBlock;
+        this.nBlockSelector = 32 - Integer.numberOfLeadingZeros(Math.max(nRowsPerPHT - 1, 0));
+        this.PAPHT = new AtomicIntegerArray(nRowsPerPHT << nPCSelector);
+        this.associated = new AtomicIntegerArray(1 << nPCSelector);
+        clear();
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int block = get(toKey(entry));
+        return block < 0 ? null : BitVector.of(block, nColumnsPerBlock).toArray();
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        put(toKey(entry), Bit.toNumber(value));
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        putIfAbsent(toKey(entry), Bit.toNumber(value));
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+        if (defaultValue.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        return BitVector.of(setDefault(toKey(entry), Bit.toNumber(defaultValue)), nColumnsPerBlock).toArray();
+    }
+
+    @Override
+    public BitVector get(BitVector entry) {
+        int block = get(toKey(entry));
+        return block < 0 ? null : BitVector.of(block, nColumnsPerBlock);
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        put(toKey(entry), value.toNumber());
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        putIfAbsent(toKey(entry), value.toNumber());
+    }
+
+    @Override
+    public int get(long entry) {
+        return PAPHT.get(getRow(entry));
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        if (associated.get((int) (entry >>> nBlockSelector)) == 0)
+            throw new RuntimeException("The PHT is not associated to the PAPHT");
+        PAPHT.set(getRow(entry), value);
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        setDefault(entry, value);
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultValue) {
+        int row = getRow(entry);
+        int block = PAPHT.get(row);
+        if (block >= 0) return block;
+        associated.set((int) (entry >>> nBlockSelector), 1);
+        if (PAPHT.compareAndSet(row, -1, defaultValue)) return defaultValue;
+        return PAPHT.get(row);
+    }
+
+    @Override
+    public int count(long entry, int defaultValue, int width, boolean up, CountMode mode) {
+        associated.set((int) (entry >>> nBlockSelector), 1);
+        return ConcurrentPageHistoryTable.count(PAPHT, getRow(entry), defaultValue, width, up, mode);
+    }
+
+    /**
+     * @param entry the number key, the selector followed by nBlockSelector bits of the block selector
+     * @return index of the block in the flat array
+     */
+    private int getRow(long entry) {
+        return (int) (entry >>> nBlockSelector) * nRowsPerPHT + (int) (entry & BitVector.mask(nBlockSelector));
+    }
+
+    /**
+     * @param entry the address, first nPCSelector bits select the PHT and the other bits select the block
+     * @return the number key of the address
+     */
+    private long toKey(Bit[] entry) {
+        long selector = BitVector.toLong(entry, 0, nPCSelector);
+        return (selector << nBlockSelector) | BitVector.toLong(entry, nPCSelector, entry.length);
+    }
+
+    private long toKey(BitVector entry) {
+        long selector = BitVector.slice(entry.toLong(), entry.length(), 0, nPCSelector);
+        long blockSelector = BitVector.slice(entry.toLong(), entry.length(), nPCSelector, entry.length());
+        return (selector << nBlockSelector) | blockSelector;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (int row = 0; row < PAPHT.length(); row++) if (PAPHT.get(row) >= 0) size++;
+        return size;
+    }
+
+    /**
+     * save a snapshot of the PAPHT in the same format as FlatPerAddressPredictionHistoryTable, entries which are
+     * changed while the snapshot is taken may have either value
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        int[] blocks = ConcurrentPageHistoryTable.snapshot(PAPHT);
+        int[] selectors = ConcurrentPageHistoryTable.snapshot(associated);
+        int count = 0;
+        for (int flag : selectors) count += flag;
+
+        out.writeInt(nPCSelector);
+        out.writeInt(nRowsPerPHT);
+        out.writeInt(nColumnsPerBlock);
+        out.writeInt(count);
+        for (int selector = 0; selector < selectors.length; selector++) {
+            if (selectors[selector] == 0) continue;
+            out.writeLong(selector);
+            DensePageHistoryTable.save(out, blocks, selector * nRowsPerPHT, nRowsPerPHT);
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nPCSelector, "PAPHT selector size");
+        in.expect(nRowsPerPHT, "PAPHT rows");
+        in.expect(nColumnsPerBlock, "PAPHT block size");
+        clear();
+        int[] blocks = new int[PAPHT.length()];
+        Arrays.fill(blocks, -1);
+        int count = in.readInt();
+        if (count < 0 || count > 1 << nPCSelector) throw in.error("invalid number of PHTs");
+        for (int i = 0; i < count; i++) {
+            long selector = in.readLong();
+            if (selector < 0 || selector >= 1 << nPCSelector) throw in.error("PHT selector is out of the PAPHT");
+            associated.set((int) selector, 1);
+            DensePageHistoryTable.restore(in, blocks, (int) selector * nRowsPerPHT, nRowsPerPHT, nColumnsPerBlock);
+        }
+        for (int row = 0; row < blocks.length; row++) PAPHT.set(row, blocks[row]);
+    }
+
+    /**
+     * Clear all the caches.
+     */
+    @Override
+    public void clear() {
+        for (int row = 0; row < PAPHT.length(); row++) PAPHT.set(row, -1);
+        for (int selector = 0; selector < associated.length(); selector++) associated.set(selector, 0);
+    }
+
+    /**
+     * Returns a string representing a snapshot of the table, in the same layout as
+     * PerAddressPredictionHistoryTable.
+     *
+     * @return a string representing the current state of the Per Address Prediction History Table
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    /**
+     * Write a snapshot of the table in the same layout as monitor(), the key of a row is the selector and the
+     * block selector together, see PackedCache
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        for (int selector = 0; selector < associated.length() && !table.isFull(); selector++) {
+            if (associated.get(selector) == 0) continue;
+            table.section("PHT for selector: " + BitVector.of(selector, nPCSelector), "Address", "Block");
+            DensePageHistoryTable.monitor(table, PAPHT::get, selector * nRowsPerPHT, nRowsPerPHT, nBlockSelector,
+                    nColumnsPerBlock, (long) selector << nBlockSelector);
+            table.endSection();
+        }
+    }
+}
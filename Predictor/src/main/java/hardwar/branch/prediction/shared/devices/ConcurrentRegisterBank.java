@@ -0,0 +1,180 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * Our Concurrent Register Bank Model
+ * read below assumptions about pre-defined Concurrent Register Bank
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the bank behaves exactly like the DenseRegisterBank, only the storage is thread safe
+ *
+ * 2) all the registers are saved in an atomic array indexed by the selector number and shiftIn is
+ * a compare and set loop, so no lock is used. a register is at most 64 bits and the selector is at most 30 bits.
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ConcurrentRegisterBank implements PackedRegisterBank {
+    private final int selectorSize;
+    private final int registerSize;
+    private final AtomicLongArray registers; // content of each register, the first bit is the most significant bit
+    private final AtomicIntegerArray initialized; // 1 for the registers which are read or written at least once
+
+    /**
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param registerSize number of bits which is used for each register in register bank
+     * @throws IllegalArgumentException if the bank can not be saved in a single array
+     */
+    public ConcurrentRegisterBank(int selectorSize, int registerSize) {
+        if (selectorSize < 0 || selectorSize > 30)
+            throw new IllegalArgumentException("concurrent register bank selector size must be in [0, 30]");
+        if (registerSize < 0 || registerSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("concurrent register bank register size must be in [0, 64]");
+        this.selectorSize = selectorSize;
+        this.registerSize = registerSize;
+        this.registers = new AtomicLongArray(1 << selectorSize);
+        this.initialized = new AtomicIntegerArray(1 << selectorSize);
+    }
+
+    @Override
+    public ShiftRegister read(Bit[] selector) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        return new SIPORegister("r", getRegisterSize(),
+                BitVector.of(readAsLong(Bit.toNumber(selector)), getRegisterSize()).toArray());
+    }
+
+    @Override
+    public ShiftRegister read(BitVector selector) {
+        if (selector.length() != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        return new SIPORegister("r", getRegisterSize(),
+                BitVector.of(readAsLong(selector.toNumber()), getRegisterSize()).toArray());
+    }
+
+    @Override
+    public void write(Bit[] selector, Bit[] registerValue) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length != getRegisterSize())
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        int index = Bit.toNumber(selector);
+        initialized.set(index, 1);
+        registers.set(index, BitVector.toLong(registerValue, 0, registerValue.length));
+    }
+
+    @Override
+    public void write(BitVector selector, BitVector registerValue) {
+        if (selector.length() != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length() != getRegisterSize())
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        int index = selector.toNumber();
+        initialized.set(index, 1);
+        registers.set(index, registerValue.toLong());
+    }
+
+    @Override
+    public void shiftIn(long selector, Bit bit) {
+        int index = (int) selector;
+        initialized.set(index, 1);
+        long current;
+        do {
+            current = registers.get(index);
+        } while (!registers.compareAndSet(index, current,
+                BitVector.shiftIn(current, getRegisterSize(), bit.getValue())));
+    }
+
+    @Override
+    public long readAsLong(long selector) {
+        int index = (int) selector;
+        if (initialized.get(index) == 0) initialized.set(index, 1);
+        return registers.get(index);
+    }
+
+    @Override
+    public int getSelectorSize() {
+        return selectorSize;
+    }
+
+    @Override
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    /**
+     * save a snapshot of the bank in the same format as RegisterBank, registers which are changed while the
+     * snapshot is taken may have either value
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        int[] flags = ConcurrentPageHistoryTable.snapshot(initialized);
+        long[] values = new long[flags.length];
+        int count = 0;
+        for (int index = 0; index < flags.length; index++) {
+            values[index] = registers.get(index);
+            count += flags[index];
+        }
+
+        out.writeInt(getSelectorSize());
+        out.writeInt(getRegisterSize());
+        out.writeInt(count);
+        for (int index = 0; index < flags.length; index++) {
+            if (flags[index] == 0) continue;
+            out.writeBits(index, getSelectorSize());
+            out.writeBits(values[index], getRegisterSize());
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(getSelectorSize(), "register bank selector size");
+        in.expect(getRegisterSize(), "register size");
+        for (int index = 0; index < registers.length(); index++) {
+            registers.set(index, 0);
+            initialized.set(index, 0);
+        }
+        int count = in.readInt();
+        if (count < 0 || count > registers.length()) throw in.error("invalid number of registers");
+        for (int i = 0; i < count; i++) {
+            int index = (int) in.readBits64(getSelectorSize());
+            registers.set(index, in.readBits64(getRegisterSize()));
+            initialized.set(index, 1);
+        }
+    }
+
+    /**
+     * @return a table with the number and the value of each initialized register, in the same layout as RegisterBank
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Register Number", "Value");
+        for (int index = 0; index < registers.length() && !table.isFull(); index++) {
+            if (initialized.get(index) == 0) continue;
+            long register = registers.get(index);
+            if (!table.accept(index, register)) continue;
+            table.row(BitVector.of(index, getSelectorSize()).toString(),
+                    BitVector.of(register, getRegisterSize()).toString());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our dense Page History Table model
+ * read below assumptions about pre-defined dense PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the table behaves exactly like the PageHistoryTable, only the storage is different
+ *
+ * 2) all nRows blocks are allocated in a primitive array when the table is created. the entry
+ * number (Bit.toNumber) is the index of its block, so no key string is built on lookups.
+ *
+ * 3) a block is at most 31 bits and an empty block is saved as -1
+ *
+ * 4) the entry number must be smaller than nRows, otherwise an exception is thrown by the array
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+public class DensePageHistoryTable implements PackedCache {
+
+    private final int nRows; // number of PHT entries
+    private final int nColumns; // number of bits in a block
+    private final int nEntryBits; // number of bits which is needed for addressing nRows entries
+    private final int[] PHT; // block number of each entry, -1 if the entry is empty
+
+
+    public DensePageHistoryTable(int nRows, int nColumns) {
+        this(empty(nRows), nColumns);
+    }
+
+    /**
+     * a table which saves its blocks in the given array, so a predictor which reads and writes the counters
+     * directly can still use the checkpoint and the monitor of the table
+     *
+     * @param blocks   the block number of each entry, -1 for an empty entry
+     * @param nColumns number of bits in a block
+     */
+    public DensePageHistoryTable(int[] blocks, int nColumns) {
+        if (nColumns < 0 || nColumns > 31)
+            throw new IllegalArgumentException("dense PHT block size must be in [0, 31]");
+        this.nRows = blocks.length;
+        this.nColumns = nColumns;
+        this.nEntryBits = 32 - Integer.numberOfLeadingZeros(Math.max(nRows - 1, 0));
+        this.PHT = blocks;
+    }
+
+    private static int[] empty(int nRows) {
+        int[] blocks = new int[nRows];
+        Arrays.fill(blocks, -1);
+        return blocks;
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int block = PHT[Bit.toNumber(entry)];
+        return block < 0 ? null : BitVector.of(block, nColumns).toArray();
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        PHT[Bit.toNumber(entry)] = Bit.toNumber(value);
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        int row = Bit.toNumber(entry);
+        if (PHT[row] < 0) {
+            if (value.length != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+            PHT[row] = Bit.toNumber(value);
+        }
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
+    @Override
+    public BitVector get(BitVector entry) {
+        int block = PHT[entry.toNumber()];
+        return block < 0 ? null : BitVector.of(block, nColumns);
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        PHT[entry.toNumber()] = value.toNumber();
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        int row = entry.toNumber();
+        if (PHT[row] < 0) put(entry, value);
+    }
+
+    @Override
+    public int get(long entry) {
+        return PHT[(int) entry];
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        PHT[(int) entry] = value;
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        if (PHT[(int) entry] < 0) PHT[(int) entry] = value;
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultValue) {
+        int block = PHT[(int) entry];
+        if (block >= 0) return block;
+        PHT[(int) entry] = defaultValue;
+        return defaultValue;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (int block : PHT) if (block >= 0) size++;
+        return size;
+    }
+
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(nColumns);
+        save(out, PHT, 0, nRows);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "PHT rows");
+        in.expect(nColumns, "PHT block size");
+        clear();
+        restore(in, PHT, 0, nRows, nColumns);
+    }
+
+    /**
+     * write the number of non-empty blocks of a range and then the row and the block of each of them
+     *
+     * @param out    the checkpoint
+     * @param blocks the block numbers, -1 for empty blocks
+     * @param from   index of the first block of the table
+     * @param nRows  number of blocks of the table
+     */
+    static void save(CheckpointWriter out, int[] blocks, int from, int nRows) throws IOException {
+        int count = 0;
+        for (int row = 0; row < nRows; row++) if (blocks[from + row] >= 0) count++;
+        out.writeInt(count);
+        for (int row = 0; row < nRows; row++) {
+            if (blocks[from + row] < 0) continue;
+            out.writeInt(row);
+            out.writeInt(blocks[from + row]);
+        }
+    }
+
+    /**
+     * read the blocks which are written by save into a range, the other blocks are not changed
+     *
+     * @param in       the checkpoint
+     * @param blocks   the block numbers
+     * @param from     index of the first block of the table
+     * @param nRows    number of blocks of the table
+     * @param nColumns number of bits in a block
+     */
+    static void restore(CheckpointReader in, int[] blocks, int from, int nRows, int nColumns) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > nRows) throw in.error("invalid number of PHT entries");
+        for (int i = 0; i < count; i++) {
+            int row = in.readInt();
+            int block = in.readInt();
+            if (row < 0 || row >= nRows) throw in.error("PHT entry is out of the table");
+            if (block < 0 || block > BitVector.mask(nColumns)) throw in.error("invalid PHT block");
+            blocks[from + row] = block;
+        }
+    }
+
+    /**
+     * Clear all entries from the cache.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(PHT, -1);
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT, in the same layout as PageHistoryTable.
+     *
+     * @return a table with the address and block data for each non-empty entry in the PHT
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Address", "Block");
+        monitor(table, row -> PHT[row], 0, nRows, nEntryBits, nColumns, 0);
+    }
+
+    /**
+     * write the PageHistoryTable rows of a range of dense blocks
+     *
+     * @param table      the output
+     * @param blocks     the block number of each index, -1 for empty blocks
+     * @param from       index of the first block of the table
+     * @param nRows      number of blocks of the table
+     * @param nEntryBits number of address bits which is printed for each block
+     * @param nColumns   number of bits in a block
+     * @param keyBase    the key of the first block for the filter, the key of a block is keyBase | row
+     */
+    static void monitor(MonitorTable table, IntUnaryOperator blocks, int from, int nRows, int nEntryBits,
+                        int nColumns, long keyBase) throws IOException {
+        for (int row = 0; row < nRows && !table.isFull(); row++) {
+            int block = blocks.applyAsInt(from + row);
+            if (block < 0 || !table.accept(keyBase | row, block)) continue;
+            table.row(BitVector.of(row, nEntryBits).toString(), BitVector.of(block, nColumns).toString());
+        }
+    }
+}
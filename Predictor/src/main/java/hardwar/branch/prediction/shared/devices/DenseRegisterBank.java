@@ -0,0 +1,167 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * Our Dense Register Bank Model
+ * read below assumptions about pre-defined Dense Register Bank
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the bank behaves exactly like the RegisterBank, only the storage is different
+ *
+ * 2) all the registers are saved in a primitive array indexed by the selector number. a register
+ * is at most 64 bits and the selector is at most 30 bits.
+ *
+ * 3) shiftIn, readAsInt and readAsLong work directly on the array without creating any register
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class DenseRegisterBank implements PackedRegisterBank {
+    private final int selectorSize;
+    private final int registerSize;
+    private final long[] registers; // content of each register, the first bit is the most significant bit
+    private final BitSet initialized; // the registers which are read or written at least once
+
+    /**
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param registerSize number of bits which is used for each register in register bank
+     * @throws IllegalArgumentException if the bank can not be saved in a single array
+     */
+    public DenseRegisterBank(int selectorSize, int registerSize) {
+        if (selectorSize < 0 || selectorSize > 30)
+            throw new IllegalArgumentException("dense register bank selector size must be in [0, 30]");
+        if (registerSize < 0 || registerSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("dense register bank register size must be in [0, 64]");
+        this.selectorSize = selectorSize;
+        this.registerSize = registerSize;
+        this.registers = new long[1 << selectorSize];
+        this.initialized = new BitSet(1 << selectorSize);
+    }
+
+    @Override
+    public ShiftRegister read(Bit[] selector) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        int index = Bit.toNumber(selector);
+        initialized.set(index);
+        return new SIPORegister("r", getRegisterSize(), BitVector.of(registers[index], getRegisterSize()).toArray());
+    }
+
+    @Override
+    public ShiftRegister read(BitVector selector) {
+        if (selector.length() != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        int index = selector.toNumber();
+        initialized.set(index);
+        return new SIPORegister("r", getRegisterSize(), BitVector.of(registers[index], getRegisterSize()).toArray());
+    }
+
+    @Override
+    public void write(Bit[] selector, Bit[] registerValue) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length != getRegisterSize())
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        int index = Bit.toNumber(selector);
+        initialized.set(index);
+        registers[index] = BitVector.toLong(registerValue, 0, registerValue.length);
+    }
+
+    @Override
+    public void write(BitVector selector, BitVector registerValue) {
+        if (selector.length() != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length() != getRegisterSize())
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        int index = selector.toNumber();
+        initialized.set(index);
+        registers[index] = registerValue.toLong();
+    }
+
+    @Override
+    public void shiftIn(long selector, Bit bit) {
+        int index = (int) selector;
+        initialized.set(index);
+        registers[index] = BitVector.shiftIn(registers[index], getRegisterSize(), bit.getValue());
+    }
+
+    @Override
+    public long readAsLong(long selector) {
+        int index = (int) selector;
+        initialized.set(index);
+        return registers[index];
+    }
+
+    @Override
+    public int getSelectorSize() {
+        return selectorSize;
+    }
+
+    @Override
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    /**
+     * write the bank in the same format as RegisterBank
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(getSelectorSize());
+        out.writeInt(getRegisterSize());
+        out.writeInt(initialized.cardinality());
+        for (int index = initialized.nextSetBit(0); index >= 0; index = initialized.nextSetBit(index + 1)) {
+            out.writeBits(index, getSelectorSize());
+            out.writeBits(registers[index], getRegisterSize());
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(getSelectorSize(), "register bank selector size");
+        in.expect(getRegisterSize(), "register size");
+        Arrays.fill(registers, 0);
+        initialized.clear();
+        int count = in.readInt();
+        if (count < 0 || count > registers.length) throw in.error("invalid number of registers");
+        for (int i = 0; i < count; i++) {
+            int index = (int) in.readBits64(getSelectorSize());
+            registers[index] = in.readBits64(getRegisterSize());
+            initialized.set(index);
+        }
+    }
+
+    /**
+     * @return a table with the number and the value of each initialized register, in the same layout as RegisterBank
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Register Number", "Value");
+        for (int index = initialized.nextSetBit(0); index >= 0 && !table.isFull();
+             index = initialized.nextSetBit(index + 1)) {
+            if (!table.accept(index, registers[index])) continue;
+            table.row(BitVector.of(index, getSelectorSize()).toString(),
+                    BitVector.of(registers[index], getRegisterSize()).toString());
+        }
+    }
+}
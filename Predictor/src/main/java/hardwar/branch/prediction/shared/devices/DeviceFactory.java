@@ -0,0 +1,148 @@
+package hardwar.branch.prediction.shared.devices;
+
+
+import hardwar.branch.prediction.shared.SetAssociativeBudget;
+import hardwar.branch.prediction.shared.StorageMode;
+
+public final class DeviceFactory {
+    private DeviceFactory() {
+        // make the constructor private to avoid instantiating.
+    }
+
+    /**
+     * @param mode     the storage which is used for saving the blocks
+     * @param nRows    number of PHT entries
+     * @param nColumns number of bits in a block
+     * @return a page history table based on the storage mode, a SET_ASSOCIATIVE table has the default budget
+     */
+    public static PackedCache pageHistoryTable(StorageMode mode, int nRows, int nColumns) {
+        return pageHistoryTable(mode, nRows, nColumns, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param mode     the storage which is used for saving the blocks
+     * @param nRows    number of PHT entries
+     * @param nColumns number of bits in a block
+     * @param budget   the geometry of a SET_ASSOCIATIVE table
+     * @return a page history table based on the storage mode
+     */
+    public static PackedCache pageHistoryTable(StorageMode mode, int nRows, int nColumns, SetAssociativeBudget budget) {
+        if (mode == StorageMode.MAP) {
+            return new PageHistoryTable(nRows, nColumns);
+        } else if (mode == StorageMode.DENSE) {
+            return new DensePageHistoryTable(nRows, nColumns);
+        } else if (mode == StorageMode.CONCURRENT) {
+            return new ConcurrentPageHistoryTable(nRows, nColumns);
+        } else if (mode == StorageMode.SET_ASSOCIATIVE) {
+            return setAssociativeTable(bits(nRows), nColumns, budget);
+        } else throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param mode             the storage which is used for saving the blocks
+     * @param nPCSelector      number of bits which select the PHT
+     * @param nRowsPerPHT      number of rows per PHT
+     * @param nColumnsPerBlock number of bits in a block
+     * @return a per address prediction history table based on the storage mode, a SET_ASSOCIATIVE table has the
+     * default budget
+     */
+    public static PackedCache perAddressPredictionHistoryTable(StorageMode mode, int nPCSelector, int nRowsPerPHT,
+                                                               int nColumnsPerBlock) {
+        return perAddressPredictionHistoryTable(mode, nPCSelector, nRowsPerPHT, nColumnsPerBlock,
+                SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param mode             the storage which is used for saving the blocks
+     * @param nPCSelector      number of bits which select the PHT
+     * @param nRowsPerPHT      number of rows per PHT
+     * @param nColumnsPerBlock number of bits in a block
+     * @param budget           the geometry of a SET_ASSOCIATIVE table
+     * @return a per address prediction history table based on the storage mode
+     */
+    public static PackedCache perAddressPredictionHistoryTable(StorageMode mode, int nPCSelector, int nRowsPerPHT,
+                                                               int nColumnsPerBlock, SetAssociativeBudget budget) {
+        if (mode == StorageMode.MAP) {
+            return new PerAddressPredictionHistoryTable(nPCSelector, nRowsPerPHT, nColumnsPerBlock);
+        } else if (mode == StorageMode.DENSE) {
+            return new FlatPerAddressPredictionHistoryTable(nPCSelector, nRowsPerPHT, nColumnsPerBlock);
+        } else if (mode == StorageMode.CONCURRENT) {
+            return new ConcurrentPerAddressPredictionHistoryTable(nPCSelector, nRowsPerPHT, nColumnsPerBlock);
+        } else if (mode == StorageMode.SET_ASSOCIATIVE) {
+            return setAssociativeTable(nPCSelector + bits(nRowsPerPHT), nColumnsPerBlock, budget);
+        } else throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param mode         the storage which is used for saving the registers
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param registerSize number of bits which is used for each register in register bank
+     * @return a register bank based on the storage mode, a SET_ASSOCIATIVE bank has the default budget
+     */
+    public static PackedRegisterBank registerBank(StorageMode mode, int selectorSize, int registerSize) {
+        return registerBank(mode, selectorSize, registerSize, SetAssociativeBudget.DEFAULT);
+    }
+
+    /**
+     * @param mode         the storage which is used for saving the registers
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param registerSize number of bits which is used for each register in register bank
+     * @param budget       the geometry of a SET_ASSOCIATIVE bank
+     * @return a register bank based on the storage mode
+     */
+    public static PackedRegisterBank registerBank(StorageMode mode, int selectorSize, int registerSize,
+                                                  SetAssociativeBudget budget) {
+        if (mode == StorageMode.MAP) {
+            return new RegisterBank(selectorSize, registerSize);
+        } else if (mode == StorageMode.DENSE) {
+            return new DenseRegisterBank(selectorSize, registerSize);
+        } else if (mode == StorageMode.CONCURRENT) {
+            return new ConcurrentRegisterBank(selectorSize, registerSize);
+        } else if (mode == StorageMode.SET_ASSOCIATIVE) {
+            int nEntries = entries(selectorSize, budget);
+            int nWays = Math.min(budget.getWays(), nEntries);
+            return new SetAssociativeRegisterBank(selectorSize, nEntries / nWays, nWays, registerSize,
+                    budget.getPolicy());
+        } else throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param mode the storage which is used for saving the register, only CONCURRENT needs a different register
+     * @param name the register name
+     * @param size the size of the register
+     * @return a zero filled shift register based on the storage mode
+     */
+    public static ShiftRegister shiftRegister(StorageMode mode, String name, int size) {
+        if (mode == StorageMode.MAP || mode == StorageMode.DENSE || mode == StorageMode.SET_ASSOCIATIVE) {
+            return new SIPORegister(name, size, null);
+        } else if (mode == StorageMode.CONCURRENT) {
+            return new AtomicShiftRegister(name, size, null);
+        } else throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param nEntryBits number of bits of an entry
+     * @param nColumns   number of bits in a block
+     * @return a SET_ASSOCIATIVE table with the ways and the policy of the budget, the table has the entries of the
+     * budget or one entry for each address if there are less addresses
+     */
+    private static PackedCache setAssociativeTable(int nEntryBits, int nColumns, SetAssociativeBudget budget) {
+        int nEntries = entries(nEntryBits, budget);
+        int nWays = Math.min(budget.getWays(), nEntries);
+        return new SetAssociativePageHistoryTable(nEntryBits, nEntries / nWays, nWays, nColumns, budget.getPolicy());
+    }
+
+    /**
+     * @return number of entries of a SET_ASSOCIATIVE store of nEntryBits bits entries
+     */
+    private static int entries(int nEntryBits, SetAssociativeBudget budget) {
+        return nEntryBits >= 31 ? budget.getEntries() : Math.min(1 << nEntryBits, budget.getEntries());
+    }
+
+    /**
+     * @return number of bits which is needed for addressing nRows entries
+     */
+    private static int bits(int nRows) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(nRows - 1, 0));
+    }
+}
@@ -0,0 +1,252 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * Our flat Per Address Predication History Table
+ * read below assumptions about pre-defined flat PAPHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the table behaves exactly like the PerAddressPredictionHistoryTable, only the storage is different
+ *
+ * 2) all the PHTs are saved one after another in a single primitive array. the block of an entry is
+ * saved in row = selector * nRowsPerPHT + blockSelector, so no nested table or key string is needed.
+ *
+ * 3) as in PerAddressPredictionHistoryTable, a PHT is associated to the PAPHT by putIfAbsent or setDefault
+ * and put throws an exception if the PHT is not associated yet
+ *
+ * 4) a block is at most 31 bits and an empty block is saved as -1
+ * ------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class FlatPerAddressPredictionHistoryTable implements PackedCache {
+
+    private final int nPCSelector; // number of bits from pc which determine which PHT in PAPHT must be used.
+    private final int nRowsPerPHT; // number of rows per PHT
+    private final int nColumnsPerBlock; // number of columns per block in a PHT
+    private final int nBlockSelector; // number of bits which select the block in a PHT
+    private final int[] PAPHT; // block number of each row, -1 if the row is empty
+    private final BitSet associated; // the PHTs which are associated to the PAPHT
+
+
+    public FlatPerAddressPredictionHistoryTable(int nPCSelector, int nRowsPerPHT, int nColumnsPerBlock) {
+        if (nColumnsPerBlock < 0 || nColumnsPerBlock > 31)
+            throw new IllegalArgumentException("flat PAPHT block size must be in [0, 31]");
+        if (nPCSelector > 30 || ((long) nRowsPerPHT << nPCSelector) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("flat PAPHT is too large to be saved in a single array");
+
+        this.nPCSelector = nPCSelector;
+        this.nRowsPerPHT = nRowsPerPHT;
+        this.nColumnsPerBlock = nColumnsPerBlock;
+        this.nBlockSelector = 32 - Integer.numberOfLeadingZeros(Math.max(nRowsPerPHT - 1, 0));
+        this.PAPHT = new int[nRowsPerPHT << nPCSelector];
+        this.associated = new BitSet(1 << nPCSelector);
+        Arrays.fill(PAPHT, -1);
+    }
+
+    /**
+     * @param entry think of key as address. First nPCSelector bits is used for finding the associated PHT
+     *              next bits is used to find the block.
+     * @return the value associated with the key, or null if the key is not found
+     */
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int block = PAPHT[getRow(entry)];
+        return block < 0 ? null : BitVector.of(block, nColumnsPerBlock).toArray();
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        int selector = (int) BitVector.toLong(entry, 0, nPCSelector);
+        if (!associated.get(selector)) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        PAPHT[getRow(selector, BitVector.toLong(entry, nPCSelector, entry.length))] = Bit.toNumber(value);
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        int selector = (int) BitVector.toLong(entry, 0, nPCSelector);
+        int row = getRow(selector, BitVector.toLong(entry, nPCSelector, entry.length));
+        associated.set(selector);
+        if (PAPHT[row] < 0) PAPHT[row] = Bit.toNumber(value);
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(entry, defaultValue);
+        return get(entry);
+    }
+
+    @Override
+    public BitVector get(BitVector entry) {
+        int block = PAPHT[getRow(entry.toLong(), entry.length())];
+        return block < 0 ? null : BitVector.of(block, nColumnsPerBlock);
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        put(toKey(entry), value.toNumber());
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        putIfAbsent(toKey(entry), value.toNumber());
+    }
+
+    @Override
+    public int get(long entry) {
+        return PAPHT[getRow((int) (entry >>> nBlockSelector), entry & BitVector.mask(nBlockSelector))];
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        int selector = (int) (entry >>> nBlockSelector);
+        if (!associated.get(selector)) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        PAPHT[getRow(selector, entry & BitVector.mask(nBlockSelector))] = value;
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        setDefault(entry, value);
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultValue) {
+        int selector = (int) (entry >>> nBlockSelector);
+        int row = getRow(selector, entry & BitVector.mask(nBlockSelector));
+        int block = PAPHT[row];
+        if (block >= 0) return block;
+        associated.set(selector);
+        PAPHT[row] = defaultValue;
+        return defaultValue;
+    }
+
+    /**
+     * @param entry the address, first nPCSelector bits select the PHT and the other bits select the block
+     * @return index of the block in the flat array
+     */
+    private int getRow(Bit[] entry) {
+        return getRow((int) BitVector.toLong(entry, 0, nPCSelector), BitVector.toLong(entry, nPCSelector, entry.length));
+    }
+
+    private int getRow(long entry, int length) {
+        return getRow((int) BitVector.slice(entry, length, 0, nPCSelector), BitVector.slice(entry, length, nPCSelector, length));
+    }
+
+    private int getRow(int selector, long blockSelector) {
+        return selector * nRowsPerPHT + (int) blockSelector;
+    }
+
+    /**
+     * @param entry the packed address
+     * @return the number key of the address with the block selector part in nBlockSelector bits
+     */
+    private long toKey(BitVector entry) {
+        long selector = BitVector.slice(entry.toLong(), entry.length(), 0, nPCSelector);
+        long blockSelector = BitVector.slice(entry.toLong(), entry.length(), nPCSelector, entry.length());
+        return (selector << nBlockSelector) | blockSelector;
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (int block : PAPHT) if (block >= 0) size++;
+        return size;
+    }
+
+    /**
+     * write the sizes of the PAPHT, the number of associated PHTs and then the selector and the entries of each
+     * associated PHT, in the same format as PerAddressPredictionHistoryTable
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nPCSelector);
+        out.writeInt(nRowsPerPHT);
+        out.writeInt(nColumnsPerBlock);
+        out.writeInt(associated.cardinality());
+        for (int selector = associated.nextSetBit(0); selector >= 0; selector = associated.nextSetBit(selector + 1)) {
+            out.writeLong(selector);
+            DensePageHistoryTable.save(out, PAPHT, selector * nRowsPerPHT, nRowsPerPHT);
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nPCSelector, "PAPHT selector size");
+        in.expect(nRowsPerPHT, "PAPHT rows");
+        in.expect(nColumnsPerBlock, "PAPHT block size");
+        clear();
+        int count = in.readInt();
+        if (count < 0 || count > 1 << nPCSelector) throw in.error("invalid number of PHTs");
+        for (int i = 0; i < count; i++) {
+            long selector = in.readLong();
+            if (selector < 0 || selector >= 1 << nPCSelector) throw in.error("PHT selector is out of the PAPHT");
+            associated.set((int) selector);
+            DensePageHistoryTable.restore(in, PAPHT, (int) selector * nRowsPerPHT, nRowsPerPHT, nColumnsPerBlock);
+        }
+    }
+
+    /**
+     * Clear all the caches.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(PAPHT, -1);
+        associated.clear();
+    }
+
+    /**
+     * Returns a string representing the current state of the table, in the same layout as
+     * PerAddressPredictionHistoryTable.
+     *
+     * @return a string representing the current state of the Per Address Prediction History Table
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    /**
+     * Write the table in the same layout as monitor(), the key of a row is the selector and the block selector
+     * together, see PackedCache
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        for (int selector = associated.nextSetBit(0); selector >= 0 && !table.isFull();
+             selector = associated.nextSetBit(selector + 1)) {
+            table.section("PHT for selector: " + BitVector.of(selector, nPCSelector), "Address", "Block");
+            DensePageHistoryTable.monitor(table, row -> PAPHT[row], selector * nRowsPerPHT, nRowsPerPHT,
+                    nBlockSelector, nColumnsPerBlock, (long) selector << nBlockSelector);
+            table.endSection();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our folded history register model
+ * read below assumptions about pre-defined folded history register
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the register behaves like a SIPORegister of the same length, the last inserted bit is the first bit
+ * of read(). the bits are saved in a circular array of longs, so the register can be much longer than 64 bits
+ *
+ * 2) a fold is the xor of the last historyLength bits of the register cut into foldLength bit chunks.
+ * every fold is updated incrementally on insert with the inserted bit and the bit which leaves its window,
+ * so an insert costs one step for each fold and does not depend on the history lengths
+ *
+ * 3) the folds are not saved in the checkpoint, they are computed again from the restored bits
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+
+import java.util.Arrays;
+
+public class FoldedHistoryRegister implements ShiftRegister {
+    private final String name;
+    private final int length; // number of bits of the register
+    private final long[] bits; // circular array of the bits, its size is a power of two and larger than length
+    private final int mask; // number of bits of the circular array minus one
+    private int head; // position of the last inserted bit
+    private int[] folds = new int[0]; // value of each fold
+    private int[] foldLengths = new int[0]; // number of bits of each fold
+    private int[] historyLengths = new int[0]; // number of history bits which are folded into each fold
+    private int[] outPoints = new int[0]; // the fold bit of the bit which leaves the window of each fold
+
+    /**
+     * Creates a new zero filled register
+     *
+     * @param name   the register name
+     * @param length the size of the register
+     */
+    public FoldedHistoryRegister(String name, int length) {
+        if (length < 0 || length > 1 << 24)
+            throw new IllegalArgumentException("folded history register size must be in [0, 2^24]");
+        int capacity = Math.max(Integer.highestOneBit(length) << 1, BitVector.MAX_LENGTH);
+        this.name = name;
+        this.length = length;
+        this.bits = new long[capacity / BitVector.MAX_LENGTH];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * add a fold of the last historyLength bits
+     *
+     * @param historyLength number of history bits which are folded, at most the length of the register
+     * @param foldLength    number of bits of the fold
+     * @return the number of the fold, which is passed to fold(int)
+     */
+    public int addFold(int historyLength, int foldLength) {
+        if (historyLength < 0 || historyLength > length)
+            throw new IllegalArgumentException("folded history length must be in [0, register size]");
+        if (foldLength < 1 || foldLength > 31)
+            throw new IllegalArgumentException("fold size must be in [1, 31]");
+
+        int fold = folds.length;
+        folds = Arrays.copyOf(folds, fold + 1);
+        foldLengths = Arrays.copyOf(foldLengths, fold + 1);
+        historyLengths = Arrays.copyOf(historyLengths, fold + 1);
+        outPoints = Arrays.copyOf(outPoints, fold + 1);
+        foldLengths[fold] = foldLength;
+        historyLengths[fold] = historyLength;
+        outPoints[fold] = historyLength % foldLength;
+        refold();
+        return fold;
+    }
+
+    /**
+     * @param fold the number of the fold
+     * @return the value of the fold
+     */
+    public int fold(int fold) {
+        return folds[fold];
+    }
+
+    /**
+     * @param age number of bits which are inserted after the bit, 0 for the last inserted bit
+     * @return the bit, which is zero if it is older than the register
+     */
+    public boolean get(int age) {
+        return age < length && bit(age);
+    }
+
+    /**
+     * shift a bit into the register and update the folds
+     *
+     * @param bit the new bit
+     */
+    public void insert(boolean bit) {
+        long[] bits = this.bits;
+        int head = (this.head + 1) & mask;
+        this.head = head;
+        int word = head >>> 6;
+        long position = 1L << head;
+        bits[word] = bit ? bits[word] | position : bits[word] & ~position;
+
+        int in = bit ? 1 : 0;
+        int[] folds = this.folds;
+        int[] foldLengths = this.foldLengths;
+        int[] historyLengths = this.historyLengths;
+        int[] outPoints = this.outPoints;
+        for (int fold = 0; fold < folds.length; fold++) {
+            int foldLength = foldLengths[fold];
+            // the bit which leaves the window of the fold, the circular array is longer than the register
+            int out = (head - historyLengths[fold]) & mask;
+            int value = (folds[fold] << 1) | in;
+            value ^= (int) (bits[out >>> 6] >>> out & 1) << outPoints[fold];
+            value ^= value >>> foldLength;
+            folds[fold] = value & ((1 << foldLength) - 1);
+        }
+
+        // clear the bit which leaves the register, so the older bits are always zero
+        int old = (head - length) & mask;
+        bits[old >>> 6] &= ~(1L << old);
+    }
+
+    private boolean bit(int age) {
+        int position = (head - age) & mask;
+        return (bits[position >>> 6] >>> (position & 63) & 1) == 1;
+    }
+
+    @Override
+    public void insert(Bit bit) {
+        insert(bit.getValue());
+    }
+
+    @Override
+    public Bit[] read() {
+        Bit[] register = new Bit[length];
+        for (int age = 0; age < length; age++) register[age] = Bit.of(get(age));
+        return register;
+    }
+
+    /**
+     * load data into register, the first bit is the last inserted bit. the folds are computed again
+     *
+     * @param bits data to be load in register
+     */
+    @Override
+    public void load(Bit[] bits) {
+        if (bits.length != length) throw new RuntimeException("invalid number of bits for register");
+        Arrays.fill(this.bits, 0);
+        head = 0;
+        for (int age = length - 1; age >= 0; age--) {
+            head = (head + 1) & mask;
+            if (bits[age].getValue()) this.bits[head >>> 6] |= 1L << (head & 63);
+        }
+        refold();
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(bits, 0);
+        Arrays.fill(folds, 0);
+        head = 0;
+    }
+
+    /**
+     * compute every fold from the bits of the register
+     */
+    private void refold() {
+        for (int fold = 0; fold < folds.length; fold++) {
+            int foldLength = foldLengths[fold];
+            int value = 0;
+            for (int age = 0; age < historyLengths[fold]; age++) {
+                if (get(age)) value ^= 1 << (age % foldLength);
+            }
+            folds[fold] = value;
+        }
+    }
+
+    /**
+     * @return the register in the same layout as a SIPORegister
+     */
+    @Override
+    public String monitor() {
+        return new SIPORegister(name, length, read()).monitor();
+    }
+}
@@ -0,0 +1,135 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.MonitorFilter;
+import hardwar.branch.prediction.shared.Monitorable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/*
+writes the address / block table layout of the monitors row by row
+
+the rows are padded by hand in the same way as String.format("| %-19s | %-10s |\n"), so the
+streaming monitors write exactly what the string monitors build. the table also keeps the page
+of the rows, the accepted rows before the offset are skipped and the rows after the limit are dropped.
+ */
+final class MonitorTable {
+    static final String LINE = "+----------------------------------+\n";
+
+    private final Appendable out;
+    private final MonitorFilter filter;
+    private final long offset; // number of accepted rows which are skipped
+    private final long limit; // maximum number of rows which are written
+    private long accepted; // number of accepted rows so far
+    private String section; // the title of the current section, written before its first row
+    private boolean sectionWritten; // the current section has at least one row
+
+    MonitorTable(Appendable out, MonitorFilter filter, long offset, long limit) {
+        this.out = out;
+        this.filter = filter;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * @return the whole snapshot of the component as a string, the same as its streaming monitor with all rows
+     */
+    static String snapshot(Monitorable component) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            component.monitor(sb, MonitorFilter.ALL, 0, Long.MAX_VALUE);
+        } catch (IOException e) {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the number of a key string, the last 64 bits are used for longer keys
+     */
+    static long number(String bits) {
+        if (bits.isEmpty()) return 0;
+        return Long.parseUnsignedLong(bits.length() > BitVector.MAX_LENGTH
+                ? bits.substring(bits.length() - BitVector.MAX_LENGTH) : bits, 2);
+    }
+
+    /**
+     * @return the number of a block, the last 64 bits are used for longer blocks
+     */
+    static long number(Bit[] bits) {
+        return BitVector.toLong(bits, Math.max(bits.length - BitVector.MAX_LENGTH, 0), bits.length);
+    }
+
+    /**
+     * start a titled table, the title and the header are only written if the table has a row. it is used for
+     * the PHTs of a PAPHT, so a filtered snapshot does not list the PHTs which have no selected row
+     */
+    void section(String title, String keyTitle, String valueTitle) throws IOException {
+        this.section = title + "\n";
+        this.sectionWritten = false;
+        StringBuilder sb = new StringBuilder(section);
+        new MonitorTable(sb, MonitorFilter.ALL, 0, 0).header(keyTitle, valueTitle);
+        this.section = sb.toString();
+    }
+
+    /**
+     * end the current section, an empty line is written after a section which has a row
+     */
+    void endSection() throws IOException {
+        if (sectionWritten) out.append("\n");
+        section = null;
+    }
+
+    void header(String keyTitle, String valueTitle) throws IOException {
+        out.append(LINE);
+        out.append("| ");
+        pad(keyTitle, 19);
+        out.append(" | ");
+        pad(valueTitle, 10);
+        out.append(" |\n");
+        out.append("|---------------------|------------|\n");
+    }
+
+    /**
+     * @return true if the row must be written, the row is counted in the page
+     */
+    boolean accept(long key, long value) {
+        if (isFull() || !filter.accept(key, value)) return false;
+        return accepted++ >= offset;
+    }
+
+    /**
+     * @return true if the limit is reached and no more rows are written
+     */
+    boolean isFull() {
+        return accepted - offset >= limit;
+    }
+
+    /**
+     * write a row, a key longer than 16 characters is cut as in the string monitors
+     */
+    void row(String key, String value) throws IOException {
+        if (section != null && !sectionWritten) {
+            out.append(section);
+            sectionWritten = true;
+        }
+        out.append("| ");
+        if (key.length() > 16) {
+            out.append(key, 0, 16).append("...");
+        } else {
+            pad(key, 19);
+        }
+        out.append(" | ");
+        pad(value, 10);
+        out.append(" |\n");
+        out.append(LINE);
+    }
+
+    private void pad(String text, int width) throws IOException {
+        out.append(text);
+        for (int i = text.length(); i < width; i++) out.append(' ');
+    }
+}
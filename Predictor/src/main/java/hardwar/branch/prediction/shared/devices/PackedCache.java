@@ -0,0 +1,106 @@
+package hardwar.branch.prediction.shared.devices;
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.Checkpointable;
+import hardwar.branch.prediction.shared.CountMode;
+
+/*
+a cache of bit blocks which can also be addressed with packed bit vectors or plain numbers
+
+the packed functions behave exactly like the bit array ones, they only skip building
+bit arrays for keys and blocks. in the number functions the key is the number of the entry
+bits (see Bit.toNumber) and the block is the number of the block bits. a missing block is
+reported as -1.
+
+a table is saved into a checkpoint as its sizes and the number and block of each non-empty entry,
+so tables of different storage modes with the same sizes share the same checkpoint. the set associative
+table is the exception, it also saves its tags and replacement state (see SetAssociativePageHistoryTable).
+ */
+public interface PackedCache extends Cache<Bit[], Bit[]>, Checkpointable {
+    /**
+     * @param key think of key as address
+     * @return the block which is saved in that address, or null if the key is not found
+     */
+    BitVector get(BitVector key);
+
+    /**
+     * @param key   the address which the data is associated with
+     * @param value the data which is saved in address (key)
+     */
+    void put(BitVector key, BitVector value);
+
+    /**
+     * map a value to the key if the key is not found in the cache
+     *
+     * @param key   the address which the data is associated with
+     * @param value the data which is mapped to address (key) if the key is not mapped to any block
+     */
+    void putIfAbsent(BitVector key, BitVector value);
+
+    /**
+     * @param key          the address
+     * @param defaultValue default value if the address is not associated with any block in cache
+     * @return the value which is saved in the address. if the value is not set then write default value in cache
+     * and return it
+     */
+    default BitVector setDefault(BitVector key, BitVector defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+
+        putIfAbsent(key, defaultValue);
+        return get(key);
+    }
+
+    /**
+     * @param key the number of the address
+     * @return the number of the block which is saved in that address, or -1 if the key is not found
+     */
+    int get(long key);
+
+    /**
+     * @return number of non-empty entries of the table
+     */
+    long size();
+
+    /**
+     * @param key   the number of the address
+     * @param value the number of the block
+     */
+    void put(long key, int value);
+
+    /**
+     * @param key   the number of the address
+     * @param value the number of the block which is mapped to the address if the address is not mapped to any block
+     */
+    void putIfAbsent(long key, int value);
+
+    /**
+     * @param key          the number of the address
+     * @param defaultValue default block number if the address is not associated with any block in cache
+     * @return the number of the block which is saved in the address, if no block is saved then the default value
+     * is written in cache and returned
+     */
+    default int setDefault(long key, int defaultValue) {
+        int block = get(key);
+        if (block >= 0) return block;
+        putIfAbsent(key, defaultValue);
+        return defaultValue;
+    }
+
+    /**
+     * count the block of the key up or down in place, the same as setDefault, CombinationalLogic.count and put
+     *
+     * @param key          the number of the address
+     * @param defaultValue default block number if the address is not associated with any block in cache
+     * @param width        number of bits of the block
+     * @param up           count up if true, otherwise count down
+     * @param mode         the counter type
+     * @return the number of the counted block
+     */
+    default int count(long key, int defaultValue, int width, boolean up, CountMode mode) {
+        int block = CombinationalLogic.count(setDefault(key, defaultValue), width, up, mode);
+        put(key, block);
+        return block;
+    }
+}
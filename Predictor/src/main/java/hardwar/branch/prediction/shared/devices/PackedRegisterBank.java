@@ -0,0 +1,92 @@
+package hardwar.branch.prediction.shared.devices;
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.Checkpointable;
+import hardwar.branch.prediction.shared.Monitorable;
+
+/*
+a bank of shift registers which can also be addressed with packed bit vectors or plain numbers
+
+the packed functions behave exactly like the bit array ones, they only skip building bit arrays
+for selectors and registers. in the number functions the selector is the number of the selector
+bits (see Bit.toNumber). a register which is never read or written is zero, as is a register which is
+replaced in a set associative bank.
+
+a bank is saved into a checkpoint as its sizes and the selector and register of each register
+which is read or written at least once, so banks of different storage modes share the same checkpoint.
+a set associative bank also saves its tags and replacement state, as a set associative table does.
+ */
+public interface PackedRegisterBank extends Monitorable, Checkpointable {
+    /**
+     * @param selector the value which is used for reading from the memory bank
+     * @return a shift register associated to that address ( a copy of it )
+     * @throws IllegalArgumentException if the selector is not in legal bound.
+     */
+    ShiftRegister read(Bit[] selector);
+
+    /**
+     * @param selector      the value which is used for reading from the memory bank
+     * @param registerValue the value which is written on specific register.
+     * @throws IllegalArgumentException if the selector is not in legal bound or the registerValue size is not as
+     *                                  same as register size
+     */
+    void write(Bit[] selector, Bit[] registerValue);
+
+    /**
+     * @param selector the value which is used for reading from the memory bank
+     * @return a shift register associated to that address ( a copy of it )
+     * @throws IllegalArgumentException if the selector is not in legal bound.
+     */
+    ShiftRegister read(BitVector selector);
+
+    /**
+     * @param selector      the value which is used for reading from the memory bank
+     * @param registerValue the value which is written on specific register.
+     * @throws IllegalArgumentException if the selector is not in legal bound or the registerValue size is not as
+     *                                  same as register size
+     */
+    void write(BitVector selector, BitVector registerValue);
+
+    /**
+     * insert a bit into the specified register in place, the same as read, insert and write but without
+     * copying the register
+     *
+     * @param selector the number of the selector bits
+     * @param bit      the bit which is inserted at the beginning of the register
+     */
+    void shiftIn(long selector, Bit bit);
+
+    /**
+     * insert a bit into the specified register in place
+     *
+     * @param selector the value which is used for selecting the register
+     * @param bit      the bit which is inserted at the beginning of the register
+     * @throws IllegalArgumentException if the selector is not in legal bound.
+     */
+    default void shiftIn(Bit[] selector, Bit bit) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        shiftIn(BitVector.toLong(selector, 0, selector.length), bit);
+    }
+
+    /**
+     * @param selector the number of the selector bits
+     * @return the number of the register content, see Bit.toNumber
+     */
+    long readAsLong(long selector);
+
+    /**
+     * @param selector the number of the selector bits
+     * @return the number of the register content, see Bit.toNumber
+     */
+    default int readAsInt(long selector) {
+        return (int) readAsLong(selector);
+    }
+
+    int getSelectorSize();
+
+    int getRegisterSize();
+}
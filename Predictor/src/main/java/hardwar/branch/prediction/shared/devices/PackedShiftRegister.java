@@ -0,0 +1,118 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our packed serial-in, parallel-out register Model
+ * read below assumption about pre-defined Register
+ * ------------------------------------------------------
+ * ASSUMPTIONS
+ * 1) the register behaves exactly like the SIPORegister, the new bit is inserted at the first
+ * element and the other bits are shifted to right.
+ *
+ * 2) the content of the register is saved in a single long, therefore the register size is at most 64 bits.
+ *
+ * 3) readVector does not copy anything, use it instead of read when the bits are not needed one by one.
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+
+import java.util.Collections;
+
+public class PackedShiftRegister implements ShiftRegister {
+    private final int size;
+    public final String name;
+    private long register; // the first bit of the register is the most significant bit
+
+    /**
+     * Creates a new register with the specified size and default value.
+     * If default_value is null, the register is zero-filled by default.
+     *
+     * @param name         the register name
+     * @param size         the size of the register
+     * @param defaultValue the default value to initialize the register with
+     * @throws IllegalArgumentException if the size is bigger than 64 bits
+     */
+    public PackedShiftRegister(String name, int size, Bit[] defaultValue) {
+        if (size < 0 || size > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("packed register size must be in [0, 64]");
+        this.name = name;
+        this.size = size;
+        if (defaultValue != null) load(defaultValue);
+    }
+
+    @Override
+    public Bit[] read() {
+        return readVector().toArray();
+    }
+
+    @Override
+    public BitVector readVector() {
+        return BitVector.of(register, size);
+    }
+
+    /**
+     * @return the register content as a number
+     */
+    public long readAsLong() {
+        return register;
+    }
+
+    @Override
+    public void load(Bit[] bits) {
+        register = BitVector.toLong(bits, 0, size);
+    }
+
+    @Override
+    public void load(BitVector bits) {
+        if (bits.length() < size) throw new IllegalArgumentException("not enough bits to load the register");
+        register = BitVector.slice(bits.toLong(), bits.length(), 0, size);
+    }
+
+    /**
+     * load the register with the `size` least significant bits of a number
+     *
+     * @param bits data to be load in register
+     */
+    public void load(long bits) {
+        register = bits & BitVector.mask(size);
+    }
+
+    @Override
+    public void insert(Bit bit) {
+        register = BitVector.shiftIn(register, size, bit.getValue());
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        register = 0;
+    }
+
+    /**
+     * Returns the contents of the register as a binary string, in the same layout as SIPORegister.
+     *
+     * @return the binary string representation of the register
+     */
+    @Override
+    public String monitor() {
+        StringBuilder sb = new StringBuilder();
+        int registerWidth = size * 4;
+        int labelWidth = name.length();
+        int lastBarIndex = registerWidth + labelWidth;
+        String line = String.join("", Collections.nCopies(lastBarIndex + 2, "-"));
+        sb.append("+").append(line).append("+\n");
+        sb.append("|").append(name).append(" ");
+        for (int i = size - 1; i >= 0; i--) {
+            sb.append(" | ").append((register >>> i & 1) == 1 ? "1" : "0");
+        }
+        sb.append(" |\n");
+        sb.append("+").append(line).append("+\n");
+        return sb.toString();
+    }
+}
@@ -22,22 +22,28 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
 
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class PageHistoryTable implements Cache<Bit[], Bit[]> {
+public class PageHistoryTable implements PackedCache {
 
     private final int nRows; // number of PHT entries
     private final int nColumns; // number of bits in a block
+    private final int nEntryBits; // number of bits which is needed for addressing nRows entries
     private final Map<String, Bit[]> PHT; // save entry and blocks
 
 
     public PageHistoryTable(int nRows, int nColumns) {
         this.nRows = nRows;
         this.nColumns = nColumns;
+        this.nEntryBits = 32 - Integer.numberOfLeadingZeros(Math.max(nRows - 1, 0));
         this.PHT = new TreeMap<>();
     }
 
@@ -104,6 +110,95 @@ public class PageHistoryTable implements Cache<Bit[], Bit[]> {
         return get(entry);
     }
 
+    @Override
+    public BitVector get(BitVector entry) {
+        Bit[] block = PHT.get(entry.toString());
+        return block == null ? null : BitVector.of(block);
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length() != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        PHT.put(entry.toString(), value.toArray());
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (!PHT.containsKey(entry.toString())) {
+            put(entry, value);
+        }
+    }
+
+    @Override
+    public int get(long entry) {
+        Bit[] block = PHT.get(BitVector.of(entry, nEntryBits).toString());
+        return block == null ? -1 : Bit.toNumber(block);
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        put(BitVector.of(entry, nEntryBits), BitVector.of(value, nColumns));
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        putIfAbsent(BitVector.of(entry, nEntryBits), BitVector.of(value, nColumns));
+    }
+
+    @Override
+    public long size() {
+        return PHT.size();
+    }
+
+    /**
+     * write the sizes of the PHT and then the number and the block of each entry, in the same format as the
+     * other PHTs. the entry number is read from the key, see Bit.toNumber
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(nColumns);
+        saveEntries(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "PHT rows");
+        in.expect(nColumns, "PHT block size");
+        clear();
+        restoreEntries(in);
+    }
+
+    /**
+     * write the number of entries and then the number and the block of each entry, without the sizes
+     */
+    void saveEntries(CheckpointWriter out) throws IOException {
+        out.writeInt(PHT.size());
+        for (Map.Entry<String, Bit[]> entry : PHT.entrySet()) {
+            out.writeInt(entry.getKey().isEmpty() ? 0 : (int) Long.parseUnsignedLong(entry.getKey(), 2));
+            out.writeInt(Bit.toNumber(entry.getValue()));
+        }
+    }
+
+    /**
+     * read the entries which are written by saveEntries, the other entries are not changed
+     */
+    void restoreEntries(CheckpointReader in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > nRows) throw in.error("invalid number of PHT entries");
+        for (int i = 0; i < count; i++) {
+            int row = in.readInt();
+            int block = in.readInt();
+            if (row < 0 || row >= nRows) throw in.error("PHT entry is out of the table");
+            if (block < 0 || block > BitVector.mask(nColumns)) throw in.error("invalid PHT block");
+            put(row, block);
+        }
+    }
+
     /**
      * Clear all entries from the cache.
      */
@@ -119,24 +214,27 @@ public class PageHistoryTable implements Cache<Bit[], Bit[]> {
      */
     @Override
     public String monitor() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("+----------------------------------+\n");
-        sb.append(String.format("| %-19s | %-10s |\n", "Address", "Block"));
-        sb.append("|---------------------|------------|\n");
+        return MonitorTable.snapshot(this);
+    }
 
-        for (HashMap.Entry<String, Bit[]> entry : PHT.entrySet()) {
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Address", "Block");
+        monitor(table, 0);
+    }
+
+    /**
+     * write the table rows, the key of a row for the filter is keyBase | entry number
+     */
+    void monitor(MonitorTable table, long keyBase) throws IOException {
+        for (Map.Entry<String, Bit[]> entry : PHT.entrySet()) {
+            if (table.isFull()) break;
             String address = entry.getKey();
             Bit[] block = entry.getValue();
-            if (address.length() > 16) {
-                String address16 = address.substring(0, 16);
-                sb.append(String.format("| %-16s... | %-10s |\n", address16, Bit.arrayToString(block)));
-            } else {
-                sb.append(String.format("| %-19s | %-10s |\n", address, Bit.arrayToString(block)));
+            if (table.accept(keyBase | MonitorTable.number(address), MonitorTable.number(block))) {
+                table.row(address, Bit.arrayToString(block));
             }
-            sb.append("+----------------------------------+\n");
-
         }
-
-        return sb.toString();
     }
 }
@@ -23,17 +23,23 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
+public class PerAddressPredictionHistoryTable implements PackedCache {
 
     private final int nPCSelector; // number of bits from pc which determine which PHT in PAPHT must be used.
     private final int nRowsPerPHT; // number of rows per PHT
     private final int nColumnsPerBlock; // number of columns per block in a PHT
-    private final Map<String, Cache<Bit[], Bit[]>> PAPHT; // per address prediction history table. string represent the
+    private final int nBlockSelector; // number of bits which select the block in a PHT
+    private final Map<String, PackedCache> PAPHT; // per address prediction history table. string represent the
     // PHT which must be used and the cache is the PHT associated to that slice of PC
 
 
@@ -41,6 +47,7 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         this.nPCSelector = nPCSelector;
         this.nRowsPerPHT = nRowsPerPHT;
         this.nColumnsPerBlock = nColumnsPerBlock;
+        this.nBlockSelector = 32 - Integer.numberOfLeadingZeros(Math.max(nRowsPerPHT - 1, 0));
 
         // initialize the Per Address Predication History Table
         this.PAPHT = new TreeMap<>();
@@ -99,7 +106,7 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         String cacheSelector = getCacheSelector(entry);
         Bit[] blockSelector = getBlockSelector(entry);
 
-        Cache<Bit[], Bit[]> PHT = PAPHT.get(cacheSelector);
+        PackedCache PHT = PAPHT.get(cacheSelector);
         if (PHT == null) {
             PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock);
             PAPHT.put(cacheSelector, PHT);
@@ -120,6 +127,69 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
         return get(entry);
     }
 
+    @Override
+    public BitVector get(BitVector entry) {
+        PackedCache PHT = PAPHT.get(entry.slice(0, nPCSelector).toString());
+        return PHT == null ? null : PHT.get(entry.slice(nPCSelector, entry.length()));
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        PackedCache PHT = PAPHT.get(entry.slice(0, nPCSelector).toString());
+        if (PHT == null) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        PHT.put(entry.slice(nPCSelector, entry.length()), value);
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length() != nColumnsPerBlock) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        String cacheSelector = entry.slice(0, nPCSelector).toString();
+        PackedCache PHT = PAPHT.get(cacheSelector);
+        if (PHT == null) {
+            PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock);
+            PAPHT.put(cacheSelector, PHT);
+        }
+        PHT.putIfAbsent(entry.slice(nPCSelector, entry.length()), value);
+    }
+
+    @Override
+    public int get(long entry) {
+        PackedCache PHT = PAPHT.get(BitVector.of(entry >>> nBlockSelector, nPCSelector).toString());
+        return PHT == null ? -1 : PHT.get(entry & BitVector.mask(nBlockSelector));
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        PackedCache PHT = PAPHT.get(BitVector.of(entry >>> nBlockSelector, nPCSelector).toString());
+        if (PHT == null) throw new RuntimeException("The PHT is not associated to the PAPHT");
+        PHT.put(entry & BitVector.mask(nBlockSelector), value);
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        setDefault(entry, value);
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultValue) {
+        String cacheSelector = BitVector.of(entry >>> nBlockSelector, nPCSelector).toString();
+        PackedCache PHT = PAPHT.get(cacheSelector);
+        if (PHT == null) {
+            PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock);
+            PAPHT.put(cacheSelector, PHT);
+        }
+        return PHT.setDefault(entry & BitVector.mask(nBlockSelector), defaultValue);
+    }
+
     /**
      * Get the cache selector string for PAPHT
      *
@@ -141,6 +211,47 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
     }
 
 
+    @Override
+    public long size() {
+        long size = 0;
+        for (PackedCache PHT : PAPHT.values()) size += PHT.size();
+        return size;
+    }
+
+    /**
+     * write the sizes of the PAPHT, the number of associated PHTs and then the selector and the entries of each
+     * associated PHT. the selector number is read from the key, see Bit.toNumber
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nPCSelector);
+        out.writeInt(nRowsPerPHT);
+        out.writeInt(nColumnsPerBlock);
+        out.writeInt(PAPHT.size());
+        for (Map.Entry<String, PackedCache> entry : PAPHT.entrySet()) {
+            out.writeLong(entry.getKey().isEmpty() ? 0 : Long.parseUnsignedLong(entry.getKey(), 2));
+            ((PageHistoryTable) entry.getValue()).saveEntries(out);
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nPCSelector, "PAPHT selector size");
+        in.expect(nRowsPerPHT, "PAPHT rows");
+        in.expect(nColumnsPerBlock, "PAPHT block size");
+        clear();
+        int count = in.readInt();
+        if (count < 0) throw in.error("invalid number of PHTs");
+        for (int i = 0; i < count; i++) {
+            long selector = in.readLong();
+            if (nPCSelector < BitVector.MAX_LENGTH && selector >>> nPCSelector != 0)
+                throw in.error("PHT selector is out of the PAPHT");
+            PageHistoryTable PHT = new PageHistoryTable(nRowsPerPHT, nColumnsPerBlock);
+            PHT.restoreEntries(in);
+            PAPHT.put(BitVector.of(selector, nPCSelector).toString(), PHT);
+        }
+    }
+
     /**
      * Clear all the caches.
      */
@@ -159,14 +270,21 @@ public class PerAddressPredictionHistoryTable implements Cache<Bit[], Bit[]> {
      */
     @Override
     public String monitor() {
-        StringBuilder sb = new StringBuilder();
-        PAPHT.forEach((k, v) -> {
-            sb.append("PHT for selector: ");
-            sb.append(k);
-            sb.append("\n");
-            sb.append(v.monitor());
-            sb.append("\n");
-        });
-        return sb.toString();
+        return MonitorTable.snapshot(this);
+    }
+
+    /**
+     * Write the table in the same layout as monitor(), the key of a row is the selector and the block selector
+     * together, see PackedCache
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        for (Map.Entry<String, PackedCache> entry : PAPHT.entrySet()) {
+            if (table.isFull()) break;
+            table.section("PHT for selector: " + entry.getKey(), "Address", "Block");
+            ((PageHistoryTable) entry.getValue()).monitor(table, MonitorTable.number(entry.getKey()) << nBlockSelector);
+            table.endSection();
+        }
     }
 }
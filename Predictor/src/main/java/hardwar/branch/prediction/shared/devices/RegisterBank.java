@@ -14,15 +14,19 @@ package hardwar.branch.prediction.shared.devices;
  * -------------------------------------------------------
  */
 
-import hardwar.branch.prediction.shared.Monitorable;
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
 
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.TreeMap;
 
-public class RegisterBank implements Monitorable {
+public class RegisterBank implements PackedRegisterBank {
     private final int registerSize;
     private final int selectorSize;
 
@@ -46,6 +50,7 @@ public class RegisterBank implements Monitorable {
      * @return a shift register associated to that address ( a copy of it )
      * @throws IllegalArgumentException if the selector is not in legal bound.
      */
+    @Override
     public ShiftRegister read(Bit[] selector) {
         // check the arguments
         if (selector.length != selectorSize)
@@ -69,6 +74,7 @@ public class RegisterBank implements Monitorable {
      * @throws IllegalArgumentException if the selector is not in legal bound or the registerValue size is not as same as
      *                                  register size
      */
+    @Override
     public void write(Bit[] selector, Bit[] registerValue) {
         // check the arguments
         if (selector.length != selectorSize)
@@ -86,26 +92,150 @@ public class RegisterBank implements Monitorable {
         }
     }
 
+    /**
+     * read the specified register from the register bank using a packed selector.
+     *
+     * @param selector the value which is used for reading from the memory bank
+     * @return a shift register associated to that address ( a copy of it )
+     * @throws IllegalArgumentException if the selector is not in legal bound.
+     */
+    @Override
+    public ShiftRegister read(BitVector selector) {
+        if (selector.length() != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        String selectorToString = selector.toString();
+        ShiftRegister register = RB.get(selectorToString);
+        if (register == null) {
+            register = new SIPORegister("r", registerSize, null);
+            RB.put(selectorToString, register);
+        }
+        return new SIPORegister("r", registerSize, register.read());
+    }
+
+    /**
+     * write a packed value on a specific register.
+     *
+     * @param selector      the value which is used for reading from the memory bank
+     * @param registerValue the value which is written on specific register.
+     * @throws IllegalArgumentException if the selector is not in legal bound or the registerValue size is not as same as
+     *                                  register size
+     */
+    @Override
+    public void write(BitVector selector, BitVector registerValue) {
+        if (selector.length() != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length() != this.registerSize)
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        String selectorToString = selector.toString();
+        ShiftRegister correspondingRegister = RB.get(selectorToString);
+        if (correspondingRegister != null) {
+            correspondingRegister.load(registerValue);
+        } else {
+            RB.put(selectorToString, new SIPORegister("r", registerSize, registerValue.toArray()));
+        }
+    }
+
+    @Override
+    public void shiftIn(long selector, Bit bit) {
+        getRegister(BitVector.of(selector, selectorSize).toString()).insert(bit);
+    }
+
+    /**
+     * insert a bit into the specified register in place, the selector is the key of the register as it is, so it
+     * can be longer than 64 bits
+     *
+     * @param selector the value which is used for selecting the register
+     * @param bit      the bit which is inserted at the beginning of the register
+     * @throws IllegalArgumentException if the selector is not in legal bound.
+     */
+    @Override
+    public void shiftIn(Bit[] selector, Bit bit) {
+        if (selector.length != selectorSize)
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        getRegister(Bit.arrayToString(selector)).insert(bit);
+    }
+
+    @Override
+    public long readAsLong(long selector) {
+        return getRegister(BitVector.of(selector, selectorSize).toString()).readVector().toLong();
+    }
+
+    /**
+     * @param selectorToString the selector bits
+     * @return the register itself (not a copy of it), a new register is initialized if it is not found
+     */
+    private ShiftRegister getRegister(String selectorToString) {
+        ShiftRegister register = RB.get(selectorToString);
+        if (register == null) {
+            register = new SIPORegister("r", registerSize, null);
+            RB.put(selectorToString, register);
+        }
+        return register;
+    }
+
+    @Override
+    public int getSelectorSize() {
+        return selectorSize;
+    }
+
+    @Override
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    /**
+     * write the sizes of the bank, the number of registers and then the selector bits and the bits of each
+     * register which is read or written at least once
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(selectorSize);
+        out.writeInt(registerSize);
+        out.writeInt(RB.size());
+        for (Map.Entry<String, ShiftRegister> entry : RB.entrySet()) {
+            Bit[] selector = new Bit[selectorSize];
+            for (int i = 0; i < selectorSize; i++) selector[i] = Bit.of(entry.getKey().charAt(i) == '1');
+            out.writeBits(selector);
+            out.writeBits(entry.getValue().read());
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(selectorSize, "register bank selector size");
+        in.expect(registerSize, "register size");
+        RB.clear();
+        int count = in.readInt();
+        if (count < 0) throw in.error("invalid number of registers");
+        for (int i = 0; i < count; i++) {
+            write(in.readBits(selectorSize), in.readBits(registerSize));
+        }
+    }
+
     @Override
     public String monitor() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("+----------------------------------+\n");
-        sb.append(String.format("| %-19s | %-10s |\n", "Register Number", "Value"));
-        sb.append("|---------------------|------------|\n");
+        return MonitorTable.snapshot(this);
+    }
 
+    /**
+     * Write the bank in the same layout as monitor(), the key of a row is the register number and the value is the
+     * register content
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Register Number", "Value");
         for (Map.Entry<String, ShiftRegister> entry : RB.entrySet()) {
+            if (table.isFull()) break;
             String regNumber = entry.getKey();
             Bit[] block = entry.getValue().read();
-            if (regNumber.length() > 16) {
-                String address16 = regNumber.substring(0, 16);
-                sb.append(String.format("| %-16s... | %-10s |\n", address16, Bit.arrayToString(block)));
-            } else {
-                sb.append(String.format("| %-19s | %-10s |\n", regNumber, Bit.arrayToString(block)));
+            if (table.accept(MonitorTable.number(regNumber), MonitorTable.number(block))) {
+                table.row(regNumber, Bit.arrayToString(block));
             }
-            sb.append("+----------------------------------+\n");
-
         }
-
-        return sb.toString();
     }
 }
@@ -20,6 +20,7 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -65,6 +66,28 @@ public class SIPORegister implements ShiftRegister {
         if (size >= 0) System.arraycopy(bits, 0, register, 0, size);
     }
 
+    /**
+     * read the register without copying it into a new bit array
+     *
+     * @return the register content as a packed vector
+     */
+    @Override
+    public BitVector readVector() {
+        return BitVector.of(BitVector.toLong(register, 0, size), size);
+    }
+
+    /**
+     * load packed data into register
+     *
+     * @param bits data to be load in register
+     */
+    @Override
+    public void load(BitVector bits) {
+        if (bits.length() < size) throw new IllegalArgumentException("not enough bits to load the register");
+        if (bits.length() > size) bits = bits.slice(0, size);
+        bits.copyInto(register, 0);
+    }
+
     /**
      * Inserts a new bit at the beginning of the register and shifts all existing bits
      * to the right. The new bit is represented using a Bit enum.
@@ -0,0 +1,248 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our set associative Page History Table model
+ * read below assumptions about pre-defined set associative PHT
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the table has a fixed number of sets and each set has a fixed number of ways, all of them are
+ * allocated in primitive arrays when the table is created. the memory of the table does not depend on the trace
+ *
+ * 2) an entry is the same number which is used by the number functions of PackedCache, for a PAPHT it is the
+ * selector and the block selector together. the set of an entry is a hash of the whole entry and the whole
+ * entry is saved as the tag of its way (see SetAssociativeTags)
+ *
+ * 3) a missing entry is written into an empty way of its set, or into the way which is chosen by the
+ * replacement policy if the set is full. the block of the replaced entry is lost, so the next read of it is a miss
+ *
+ * 4) every read or write of an entry is an access for the replacement policy
+ *
+ * 5) a block is at most 31 bits, an entry is at most 62 bits and the table is not thread safe
+ *
+ * 6) unlike the other tables, a put of a missing entry of a PAPHT does not throw, the entry is allocated
+ * -------------------------------------------------------
+ */
+
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.MonitorFilter;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+
+import java.io.IOException;
+
+public class SetAssociativePageHistoryTable implements PackedCache {
+    private final int nColumns; // number of bits in a block
+    private final SetAssociativeTags tags; // the entry of each way and the replacement state
+    private final int[] blocks; // block number of each way
+
+    /**
+     * @param nEntryBits number of bits of an entry, which is also the number of address bits in the monitor
+     * @param nSets      number of sets, a power of two
+     * @param nWays      number of ways of each set, a power of two up to 64 for PSEUDO_LRU
+     * @param nColumns   number of bits in a block
+     * @param policy     the way which is replaced when a set is full
+     * @throws IllegalArgumentException if the sizes are not supported
+     */
+    public SetAssociativePageHistoryTable(int nEntryBits, int nSets, int nWays, int nColumns,
+                                          ReplacementPolicy policy) {
+        if (nColumns < 0 || nColumns > 31)
+            throw new IllegalArgumentException("set associative PHT block size must be in [0, 31]");
+
+        this.nColumns = nColumns;
+        this.tags = new SetAssociativeTags("PHT", nEntryBits, nSets, nWays, policy);
+        this.blocks = new int[tags.getCapacity()];
+    }
+
+    @Override
+    public Bit[] get(Bit[] entry) {
+        int block = get(BitVector.toLong(entry, 0, entry.length));
+        return block < 0 ? null : BitVector.of(block, nColumns).toArray();
+    }
+
+    @Override
+    public void put(Bit[] entry, Bit[] value) {
+        // Check that the length of the block is equal to nColumns
+        if (value.length != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        put(BitVector.toLong(entry, 0, entry.length), Bit.toNumber(value));
+    }
+
+    @Override
+    public void putIfAbsent(Bit[] entry, Bit[] value) {
+        if (value.length != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+        putIfAbsent(BitVector.toLong(entry, 0, entry.length), Bit.toNumber(value));
+    }
+
+    @Override
+    public Bit[] setDefault(Bit[] entry, Bit[] defaultValue) {
+        if (defaultValue == null) throw new RuntimeException("block can not be null");
+        if (defaultValue.length != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+
+        int block = setDefault(BitVector.toLong(entry, 0, entry.length), Bit.toNumber(defaultValue));
+        return BitVector.of(block, nColumns).toArray();
+    }
+
+    @Override
+    public BitVector get(BitVector entry) {
+        int block = get(entry.toLong());
+        return block < 0 ? null : BitVector.of(block, nColumns);
+    }
+
+    @Override
+    public void put(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) {
+            throw new RuntimeException("invalid number of bits for cache block");
+        }
+
+        put(entry.toLong(), value.toNumber());
+    }
+
+    @Override
+    public void putIfAbsent(BitVector entry, BitVector value) {
+        if (value.length() != nColumns) throw new RuntimeException("invalid number of bits for cache block");
+        putIfAbsent(entry.toLong(), value.toNumber());
+    }
+
+    @Override
+    public int get(long entry) {
+        int way = tags.find(entry);
+        if (way < 0) return -1;
+        tags.touch(way);
+        return blocks[way];
+    }
+
+    @Override
+    public void put(long entry, int value) {
+        int way = tags.find(entry);
+        if (way < 0) way = tags.allocate(entry);
+        blocks[way] = value;
+        tags.touch(way);
+    }
+
+    @Override
+    public void putIfAbsent(long entry, int value) {
+        setDefault(entry, value);
+    }
+
+    @Override
+    public int setDefault(long entry, int defaultValue) {
+        int way = tags.find(entry);
+        if (way < 0) {
+            way = tags.allocate(entry);
+            blocks[way] = defaultValue;
+        }
+        tags.touch(way);
+        return blocks[way];
+    }
+
+    /**
+     * count the block in place with a single lookup of the set, see PackedCache
+     */
+    @Override
+    public int count(long entry, int defaultValue, int width, boolean up, CountMode mode) {
+        int way = tags.find(entry);
+        if (way < 0) {
+            way = tags.allocate(entry);
+            blocks[way] = defaultValue;
+        }
+        tags.touch(way);
+        return blocks[way] = CombinationalLogic.count(blocks[way], width, up, mode);
+    }
+
+    @Override
+    public long size() {
+        return tags.size();
+    }
+
+    /**
+     * @return the number of entries which can be saved in the table
+     */
+    public int getCapacity() {
+        return tags.getCapacity();
+    }
+
+    /**
+     * @return the number of entries which are replaced by other entries of their set since the table is cleared
+     */
+    public long getEvictions() {
+        return tags.getEvictions();
+    }
+
+    public int getSets() {
+        return tags.getSets();
+    }
+
+    public int getWays() {
+        return tags.getWays();
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return tags.getPolicy();
+    }
+
+    /**
+     * the ways are saved with their entries and the state of the replacement policy, so a restored table
+     * replaces the same entries as the saved one. the checkpoint is only restored by a table of the same geometry
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nColumns);
+        tags.save(out);
+        for (int way = 0; way < blocks.length; way++) {
+            if (!tags.isEmpty(way)) out.writeInt(blocks[way]);
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nColumns, "PHT block size");
+        tags.restore(in);
+        for (int way = 0; way < blocks.length; way++) {
+            if (tags.isEmpty(way)) {
+                blocks[way] = 0;
+                continue;
+            }
+            int block = in.readInt();
+            if (block < 0 || block > BitVector.mask(nColumns)) throw in.error("invalid PHT block");
+            blocks[way] = block;
+        }
+    }
+
+    /**
+     * Clear all entries from the cache.
+     */
+    @Override
+    public void clear() {
+        tags.clear();
+    }
+
+    /**
+     * Returns a string representation of the current state of the PHT, in the same layout as PageHistoryTable.
+     * the entries are listed set by set
+     *
+     * @return a table with the address and block data for each non-empty way in the PHT
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Address", "Block");
+        for (int way = 0; way < blocks.length && !table.isFull(); way++) {
+            if (tags.isEmpty(way)) continue;
+            long entry = tags.entry(way);
+            if (!table.accept(entry, blocks[way])) continue;
+            table.row(BitVector.of(entry, tags.getEntryBits()).toString(),
+                    BitVector.of(blocks[way], nColumns).toString());
+        }
+    }
+}
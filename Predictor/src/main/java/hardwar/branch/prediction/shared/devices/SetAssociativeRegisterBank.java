@@ -0,0 +1,187 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our set associative Register Bank model
+ * read below assumptions about pre-defined set associative Register Bank
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the bank behaves like the RegisterBank as long as no register is replaced, only the storage is different
+ *
+ * 2) the bank has a fixed number of sets and ways, the registers are saved in primitive arrays and the whole
+ * selector is the tag of its way (see SetAssociativeTags). a selector is at most 62 bits and a register is at
+ * most 64 bits, so the bank also holds the BHRs of wide branch addresses
+ *
+ * 3) a register which is read or written for the first time takes a way of its set, a full set replaces the way
+ * which is chosen by the replacement policy. the history of the replaced register is lost, so the next read of
+ * it is zero as for a register which is never used
+ *
+ * 4) every read, write or shift of a register is an access for the replacement policy
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+
+import java.io.IOException;
+
+public class SetAssociativeRegisterBank implements PackedRegisterBank {
+    private final int selectorSize;
+    private final int registerSize;
+    private final SetAssociativeTags tags; // the selector of each way and the replacement state
+    private final long[] registers; // content of the register of each way
+
+    /**
+     * @param selectorSize number of bits which is needed for selecting a register from register bank
+     * @param nSets        number of sets, a power of two
+     * @param nWays        number of ways of each set, a power of two up to 64 for PSEUDO_LRU
+     * @param registerSize number of bits which is used for each register in register bank
+     * @param policy       the way which is replaced when a set is full
+     * @throws IllegalArgumentException if the sizes are not supported
+     */
+    public SetAssociativeRegisterBank(int selectorSize, int nSets, int nWays, int registerSize,
+                                      ReplacementPolicy policy) {
+        if (registerSize < 0 || registerSize > BitVector.MAX_LENGTH)
+            throw new IllegalArgumentException("set associative register bank register size must be in [0, 64]");
+        this.selectorSize = selectorSize;
+        this.registerSize = registerSize;
+        this.tags = new SetAssociativeTags("register bank", selectorSize, nSets, nWays, policy);
+        this.registers = new long[tags.getCapacity()];
+    }
+
+    @Override
+    public ShiftRegister read(Bit[] selector) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        long register = readAsLong(BitVector.toLong(selector, 0, selector.length));
+        return new SIPORegister("r", getRegisterSize(), BitVector.of(register, getRegisterSize()).toArray());
+    }
+
+    @Override
+    public ShiftRegister read(BitVector selector) {
+        if (selector.length() != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        long register = readAsLong(selector.toLong());
+        return new SIPORegister("r", getRegisterSize(), BitVector.of(register, getRegisterSize()).toArray());
+    }
+
+    @Override
+    public void write(Bit[] selector, Bit[] registerValue) {
+        if (selector.length != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length != getRegisterSize())
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        registers[way(BitVector.toLong(selector, 0, selector.length))] =
+                BitVector.toLong(registerValue, 0, registerValue.length);
+    }
+
+    @Override
+    public void write(BitVector selector, BitVector registerValue) {
+        if (selector.length() != getSelectorSize())
+            throw new IllegalArgumentException("register bank selector is not valid");
+
+        if (registerValue.length() != getRegisterSize())
+            throw new IllegalArgumentException("registerValue size is not as same as register size");
+
+        registers[way(selector.toLong())] = registerValue.toLong();
+    }
+
+    @Override
+    public void shiftIn(long selector, Bit bit) {
+        int way = way(selector);
+        registers[way] = BitVector.shiftIn(registers[way], getRegisterSize(), bit.getValue());
+    }
+
+    @Override
+    public long readAsLong(long selector) {
+        return registers[way(selector)];
+    }
+
+    /**
+     * @return the way of the register, a missing register takes a way with a zero register
+     */
+    private int way(long selector) {
+        int way = tags.find(selector);
+        if (way < 0) {
+            way = tags.allocate(selector);
+            registers[way] = 0;
+        }
+        tags.touch(way);
+        return way;
+    }
+
+    @Override
+    public int getSelectorSize() {
+        return selectorSize;
+    }
+
+    @Override
+    public int getRegisterSize() {
+        return registerSize;
+    }
+
+    /**
+     * @return the number of registers which can be saved in the bank
+     */
+    public int getCapacity() {
+        return tags.getCapacity();
+    }
+
+    /**
+     * @return the number of registers which are replaced by other registers of their set since the bank is created or restored
+     */
+    public long getEvictions() {
+        return tags.getEvictions();
+    }
+
+    /**
+     * the ways are saved with their selectors and the state of the replacement policy, as in
+     * SetAssociativePageHistoryTable. the checkpoint is only restored by a bank of the same geometry
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(getRegisterSize());
+        tags.save(out);
+        for (int way = 0; way < registers.length; way++) {
+            if (!tags.isEmpty(way)) out.writeBits(registers[way], getRegisterSize());
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(getRegisterSize(), "register size");
+        tags.restore(in);
+        for (int way = 0; way < registers.length; way++) {
+            registers[way] = tags.isEmpty(way) ? 0 : in.readBits64(getRegisterSize());
+        }
+    }
+
+    /**
+     * @return a table with the selector and the value of each register in the bank, in the same layout as
+     * RegisterBank. the registers are listed set by set
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        table.header("Register Number", "Value");
+        for (int way = 0; way < registers.length && !table.isFull(); way++) {
+            if (tags.isEmpty(way)) continue;
+            long selector = tags.entry(way);
+            if (!table.accept(selector, registers[way])) continue;
+            table.row(BitVector.of(selector, getSelectorSize()).toString(),
+                    BitVector.of(registers[way], getRegisterSize()).toString());
+        }
+    }
+}
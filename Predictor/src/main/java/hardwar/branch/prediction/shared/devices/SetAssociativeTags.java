@@ -0,0 +1,244 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+the tags and the replacement state of a set associative store
+
+the ways of all the sets are numbered from 0 to sets * ways - 1, the owner keeps the value of each
+way in its own array. the set of an entry is the whole entry folded to log2(sets) bits with xor, so
+entries which only differ in their first bits (e.g. the selector of a PAPHT) are spread over the sets
+as well. the fold gives every set the same number of entries, so a store with a way for every entry
+never replaces one.
+ */
+final class SetAssociativeTags {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final String name; // name of the store in the error messages
+    private final int nEntryBits; // number of bits of an entry
+    private final int nSets; // number of sets, a power of two
+    private final int nWays; // number of ways of each set
+    private final int setBits; // log2(nSets)
+    private final ReplacementPolicy policy;
+    private final long[] tags; // entry + 1 of each way, 0 for an empty way
+    private final long[] lastUse; // time of the last access of each way, only for LRU
+    private final long[] tree; // the pseudo LRU tree bits of each set, only for PSEUDO_LRU
+    private long time; // number of accesses, the clock of LRU
+    private long seed; // state of the random generator of RANDOM
+    private long evictions; // number of entries which are replaced
+
+    /**
+     * @throws IllegalArgumentException if the sizes are not supported
+     */
+    SetAssociativeTags(String name, int nEntryBits, int nSets, int nWays, ReplacementPolicy policy) {
+        if (nEntryBits < 0 || nEntryBits > 62)
+            throw new IllegalArgumentException("set associative " + name + " entry size must be in [0, 62]");
+        if (nSets <= 0 || Integer.bitCount(nSets) != 1)
+            throw new IllegalArgumentException("set associative " + name + " number of sets must be a power of two");
+        if (nWays <= 0 || (long) nSets * nWays > 1 << 28)
+            throw new IllegalArgumentException("set associative " + name + " size must be in [1, 2^28] entries");
+        if (policy == ReplacementPolicy.PSEUDO_LRU && (Integer.bitCount(nWays) != 1 || nWays > 64))
+            throw new IllegalArgumentException("pseudo LRU number of ways must be a power of two up to 64");
+
+        this.name = name;
+        this.nEntryBits = nEntryBits;
+        this.nSets = nSets;
+        this.nWays = nWays;
+        this.setBits = Integer.numberOfTrailingZeros(nSets);
+        this.policy = policy;
+        this.tags = new long[nSets * nWays];
+        this.lastUse = policy == ReplacementPolicy.LRU ? new long[nSets * nWays] : null;
+        this.tree = policy == ReplacementPolicy.PSEUDO_LRU ? new long[nSets] : null;
+        this.seed = SEED;
+    }
+
+    /**
+     * @return the index of the way which holds the entry, or -1 if the entry is not in its set
+     */
+    int find(long entry) {
+        int from = setOf(entry) * nWays;
+        long tag = entry + 1;
+        for (int way = from; way < from + nWays; way++) {
+            if (tags[way] == tag) return way;
+        }
+        return -1;
+    }
+
+    /**
+     * write the entry into an empty way of its set, or replace the way which is chosen by the policy. the value
+     * of the way is not changed, the owner writes the value of the new entry
+     *
+     * @return the index of the way of the entry
+     */
+    int allocate(long entry) {
+        int set = setOf(entry);
+        int from = set * nWays;
+        int way = -1;
+        for (int i = from; i < from + nWays && way < 0; i++) {
+            if (tags[i] == 0) way = i;
+        }
+        if (way < 0) {
+            way = from + victim(set);
+            evictions++;
+        }
+        tags[way] = entry + 1;
+        return way;
+    }
+
+    /**
+     * @return the number of the way in a full set which is replaced
+     */
+    private int victim(int set) {
+        if (policy == ReplacementPolicy.LRU) {
+            int from = set * nWays;
+            int victim = from;
+            for (int way = from + 1; way < from + nWays; way++) {
+                if (lastUse[way] < lastUse[victim]) victim = way;
+            }
+            return victim - from;
+        } else if (policy == ReplacementPolicy.PSEUDO_LRU) {
+            // follow the bits from the root, a bit is 1 if the victim is in the right half
+            long bits = tree[set];
+            int node = 1;
+            while (node < nWays) node = node * 2 + (int) (bits >>> node & 1);
+            return node - nWays;
+        } else {
+            // xorshift64
+            seed ^= seed << 13;
+            seed ^= seed >>> 7;
+            seed ^= seed << 17;
+            return (int) Long.remainderUnsigned(seed, nWays);
+        }
+    }
+
+    /**
+     * mark a way as the most recently used way of its set
+     */
+    void touch(int way) {
+        time++;
+        if (policy == ReplacementPolicy.LRU) {
+            lastUse[way] = time;
+        } else if (policy == ReplacementPolicy.PSEUDO_LRU) {
+            // point every node on the path of the way to the other half
+            int set = way / nWays;
+            long bits = tree[set];
+            for (int node = way % nWays + nWays; node > 1; node >>>= 1) {
+                int parent = node >>> 1;
+                if ((node & 1) == 0) bits |= 1L << parent;
+                else bits &= ~(1L << parent);
+            }
+            tree[set] = bits;
+        }
+    }
+
+    /**
+     * @return the set of the entry, the xor of the log2(nSets) bit chunks of the entry from its last bit
+     */
+    int setOf(long entry) {
+        if (setBits == 0) return 0;
+        long set = 0;
+        for (long bits = entry; bits != 0; bits >>>= setBits) set ^= bits;
+        return (int) set & (nSets - 1);
+    }
+
+    boolean isEmpty(int way) {
+        return tags[way] == 0;
+    }
+
+    /**
+     * @return the entry of a way which is not empty
+     */
+    long entry(int way) {
+        return tags[way] - 1;
+    }
+
+    long size() {
+        long size = 0;
+        for (long tag : tags) if (tag != 0) size++;
+        return size;
+    }
+
+    int getEntryBits() {
+        return nEntryBits;
+    }
+
+    int getCapacity() {
+        return tags.length;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    int getSets() {
+        return nSets;
+    }
+
+    int getWays() {
+        return nWays;
+    }
+
+    ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * save the geometry, the entry of each way which is not empty and the state of the policy. the owner saves
+     * the values of the ways which are not empty after it, in the order of the ways
+     */
+    void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nEntryBits);
+        out.writeInt(nSets);
+        out.writeInt(nWays);
+        out.writeInt(policy.ordinal());
+        out.writeInt((int) size());
+        for (int way = 0; way < tags.length; way++) {
+            if (tags[way] == 0) continue;
+            out.writeInt(way);
+            out.writeLong(tags[way] - 1);
+            if (lastUse != null) out.writeLong(lastUse[way]);
+        }
+        out.writeLong(time);
+        out.writeLong(seed);
+        out.writeLong(evictions);
+        if (tree != null) for (long bits : tree) out.writeLong(bits);
+    }
+
+    void restore(CheckpointReader in) throws IOException {
+        in.expect(nEntryBits, name + " entry size");
+        in.expect(nSets, name + " sets");
+        in.expect(nWays, name + " ways");
+        in.expect(policy.ordinal(), name + " replacement policy");
+        clear();
+        int count = in.readInt();
+        if (count < 0 || count > tags.length) throw in.error("invalid number of " + name + " entries");
+        for (int i = 0; i < count; i++) {
+            int way = in.readInt();
+            long entry = in.readLong();
+            if (way < 0 || way >= tags.length) throw in.error(name + " way is out of the table");
+            if (tags[way] != 0) throw in.error(name + " way is saved twice");
+            if (entry < 0 || entry >>> nEntryBits != 0 || setOf(entry) != way / nWays)
+                throw in.error(name + " entry is not in its set");
+            tags[way] = entry + 1;
+            if (lastUse != null) lastUse[way] = in.readLong();
+        }
+        time = in.readLong();
+        seed = in.readLong();
+        evictions = in.readLong();
+        if (tree != null) for (int set = 0; set < nSets; set++) tree[set] = in.readLong();
+    }
+
+    void clear() {
+        Arrays.fill(tags, 0);
+        if (lastUse != null) Arrays.fill(lastUse, 0);
+        if (tree != null) Arrays.fill(tree, 0);
+        time = 0;
+        seed = SEED;
+        evictions = 0;
+    }
+}
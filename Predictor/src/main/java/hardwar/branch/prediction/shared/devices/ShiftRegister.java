@@ -2,9 +2,15 @@ package hardwar.branch.prediction.shared.devices;
 
 
 import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.Checkpointable;
 import hardwar.branch.prediction.shared.Monitorable;
 
-public interface ShiftRegister extends Monitorable {
+import java.io.IOException;
+
+public interface ShiftRegister extends Monitorable, Checkpointable {
     Bit[] read();
 
     void load(Bit[] bits);
@@ -14,4 +20,35 @@ public interface ShiftRegister extends Monitorable {
     int getLength();
 
     void clear();
+
+    /**
+     * @return the register content as a packed vector
+     */
+    default BitVector readVector() {
+        return BitVector.of(read());
+    }
+
+    /**
+     * load packed data into register
+     *
+     * @param bits data to be load in register
+     */
+    default void load(BitVector bits) {
+        load(bits.toArray());
+    }
+
+    /**
+     * write the size and the bits of the register
+     */
+    @Override
+    default void save(CheckpointWriter out) throws IOException {
+        out.writeInt(getLength());
+        out.writeBits(read());
+    }
+
+    @Override
+    default void restore(CheckpointReader in) throws IOException {
+        in.expect(getLength(), "register size");
+        load(in.readBits(getLength()));
+    }
 }
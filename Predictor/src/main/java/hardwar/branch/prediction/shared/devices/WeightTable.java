@@ -0,0 +1,190 @@
+package hardwar.branch.prediction.shared.devices;
+
+/*
+ * our perceptron weight table model
+ * read below assumptions about pre-defined weight table
+ * ------------------------------------------------------
+ * ASSUMPTIONS:
+ * 1) the table has nRows perceptrons, a perceptron is a bias weight and nInputs input weights. the weights
+ * are signed weightSize bit numbers which saturate at their minimum and maximum
+ *
+ * 2) all the weights are saved in one short array, the weights of a row are next to each other, so the dot
+ * product and the training are plain loops over two short arrays which the JIT can vectorize
+ *
+ * 3) the inputs are +1 for a taken and -1 for a not taken branch, they are passed as a window of a short
+ * array, so the caller can keep its history in any layout without copying it
+ *
+ * 4) a row which is never trained is empty, its weights are zero
+ * -------------------------------------------------------
+ */
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.Checkpointable;
+import hardwar.branch.prediction.shared.MonitorFilter;
+import hardwar.branch.prediction.shared.Monitorable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class WeightTable implements Monitorable, Checkpointable {
+    private final int nRows; // number of perceptrons
+    private final int nInputs; // number of input weights of a perceptron, the bias is not counted
+    private final int nEntryBits; // number of bits which is needed for addressing nRows entries
+    private final int weightSize; // number of bits of a weight
+    private final int minWeight;
+    private final int maxWeight;
+    private final short[] weights; // the bias and then the input weights of each row
+    private final BitSet trained; // the rows which are trained at least once
+
+    /**
+     * @param nRows      number of perceptrons
+     * @param nInputs    number of inputs of a perceptron
+     * @param weightSize number of bits of a weight, in [2, 16]
+     */
+    public WeightTable(int nRows, int nInputs, int weightSize) {
+        if (nRows < 1 || nInputs < 0 || (long) nRows * (nInputs + 1) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("weight table does not fit in a single array");
+        if (weightSize < 2 || weightSize > 16)
+            throw new IllegalArgumentException("weight size must be in [2, 16]");
+        this.nRows = nRows;
+        this.nInputs = nInputs;
+        this.nEntryBits = 32 - Integer.numberOfLeadingZeros(nRows - 1);
+        this.weightSize = weightSize;
+        this.minWeight = -(1 << (weightSize - 1));
+        this.maxWeight = (1 << (weightSize - 1)) - 1;
+        this.weights = new short[nRows * (nInputs + 1)];
+        this.trained = new BitSet(nRows);
+    }
+
+    /**
+     * @param row    the perceptron
+     * @param inputs the inputs, +1 or -1
+     * @param from   index of the first input of the window
+     * @return the bias plus the dot product of the input weights and the inputs
+     */
+    public int output(int row, short[] inputs, int from) {
+        short[] weights = this.weights;
+        int base = row * (nInputs + 1);
+        int sum = weights[base];
+        base++;
+        for (int i = 0; i < nInputs; i++) {
+            sum += weights[base + i] * inputs[from + i];
+        }
+        return sum;
+    }
+
+    /**
+     * move the weights of a row towards the actual result, a weight is increased if its input agrees with the
+     * result and decreased otherwise
+     *
+     * @param row    the perceptron
+     * @param inputs the inputs of the output which is trained, +1 or -1
+     * @param from   index of the first input of the window
+     * @param taken  the actual result
+     */
+    public void train(int row, short[] inputs, int from, boolean taken) {
+        short[] weights = this.weights;
+        int minWeight = this.minWeight;
+        int maxWeight = this.maxWeight;
+        int direction = taken ? 1 : -1;
+        int base = row * (nInputs + 1);
+        weights[base] = (short) Math.max(minWeight, Math.min(maxWeight, weights[base] + direction));
+        base++;
+        for (int i = 0; i < nInputs; i++) {
+            int weight = weights[base + i] + direction * inputs[from + i];
+            weights[base + i] = (short) Math.max(minWeight, Math.min(maxWeight, weight));
+        }
+        trained.set(row);
+    }
+
+    public int getRows() {
+        return nRows;
+    }
+
+    public int getInputs() {
+        return nInputs;
+    }
+
+    public int getWeightSize() {
+        return weightSize;
+    }
+
+    /**
+     * @return number of rows which are trained at least once
+     */
+    public long size() {
+        return trained.cardinality();
+    }
+
+    public void clear() {
+        Arrays.fill(weights, (short) 0);
+        trained.clear();
+    }
+
+    /**
+     * write the sizes and then the number and the weights of each trained row
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        out.writeInt(nRows);
+        out.writeInt(nInputs);
+        out.writeInt(weightSize);
+        out.writeInt(trained.cardinality());
+        for (int row = trained.nextSetBit(0); row >= 0; row = trained.nextSetBit(row + 1)) {
+            out.writeInt(row);
+            int base = row * (nInputs + 1);
+            for (int i = 0; i <= nInputs; i++) out.writeInt(weights[base + i]);
+        }
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        in.expect(nRows, "weight table rows");
+        in.expect(nInputs, "weight table inputs");
+        in.expect(weightSize, "weight size");
+        clear();
+        int count = in.readInt();
+        if (count < 0 || count > nRows) throw in.error("invalid number of weight table rows");
+        for (int i = 0; i < count; i++) {
+            int row = in.readInt();
+            if (row < 0 || row >= nRows) throw in.error("weight table row is out of the table");
+            int base = row * (nInputs + 1);
+            for (int j = 0; j <= nInputs; j++) {
+                int weight = in.readInt();
+                if (weight < minWeight || weight > maxWeight) throw in.error("invalid weight");
+                weights[base + j] = (short) weight;
+            }
+            trained.set(row);
+        }
+    }
+
+    /**
+     * @return a table of the weights of each trained row, the first weight is the bias
+     */
+    @Override
+    public String monitor() {
+        return MonitorTable.snapshot(this);
+    }
+
+    /**
+     * Write the table in the same layout as monitor(), the key of a row is row * (nInputs + 1) + the number of
+     * the weight and the value is the weight
+     */
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        MonitorTable table = new MonitorTable(out, filter, offset, limit);
+        for (int row = trained.nextSetBit(0); row >= 0 && !table.isFull(); row = trained.nextSetBit(row + 1)) {
+            table.section("Weights for entry: " + BitVector.of(row, nEntryBits), "Weight", "Value");
+            long base = (long) row * (nInputs + 1);
+            for (int i = 0; i <= nInputs && !table.isFull(); i++) {
+                short weight = weights[(int) base + i];
+                if (!table.accept(base + i, weight)) continue;
+                table.row(i == 0 ? "bias" : String.valueOf(i), String.valueOf(weight));
+            }
+            table.endSection();
+        }
+    }
+}
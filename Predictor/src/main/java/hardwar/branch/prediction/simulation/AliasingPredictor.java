@@ -0,0 +1,110 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+import hardwar.branch.prediction.shared.Prediction;
+import hardwar.branch.prediction.shared.devices.AliasingDetector;
+
+import java.io.IOException;
+
+/*
+a predictor which records the aliasing of the pattern history table of another predictor
+
+the tables only see entry numbers, so the branches are matched to the table rows through the
+prediction tokens: the entry of a token is the PHT or PAPHT row which the prediction is read
+from (see Prediction). every branch is predicted with lookup and updated with its token, which
+gives the same results as predict and update. predictors whose tokens do not resolve the table
+entry are passed through without recording.
+ */
+public class AliasingPredictor implements BranchPredictor {
+    private final BranchPredictor predictor;
+    private final AliasingDetector detector;
+    private Prediction pending; // the token of the last predict which is not updated yet
+
+    /**
+     * @param predictor the predictor which is measured
+     * @param capacity  maximum number of table rows which are tracked
+     */
+    public AliasingPredictor(BranchPredictor predictor, int capacity) {
+        this.predictor = predictor;
+        this.detector = new AliasingDetector(capacity);
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        pending = predictor.lookup(instruction);
+        return pending.getResult();
+    }
+
+    @Override
+    public void update(BranchInstruction instruction, BranchResult result) {
+        if (pending != null && pending.getInstruction() == instruction) {
+            update(pending, result);
+        } else {
+            predictor.update(instruction, result);
+        }
+        pending = null;
+    }
+
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        return predictor.lookup(instruction);
+    }
+
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        predictor.update(prediction, actual);
+        if (prediction.getEntry() >= 0) {
+            detector.record(prediction.getEntry(), prediction.getInstruction().getPackedInstructionAddress().toLong(),
+                    prediction.getResult() == actual);
+        }
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        Prediction prediction = predictor.lookup(instruction);
+        update(prediction, actual);
+        return prediction.getResult();
+    }
+
+    public AliasingDetector getDetector() {
+        return detector;
+    }
+
+    public BranchPredictor getPredictor() {
+        return predictor;
+    }
+
+    @Override
+    public long getOccupancy() {
+        return predictor.getOccupancy();
+    }
+
+    /**
+     * save the wrapped predictor, the aliasing records are not a part of the checkpoint
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        predictor.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        predictor.restore(in);
+    }
+
+    @Override
+    public String monitor() {
+        return predictor.monitor() + detector.report();
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        predictor.monitor(out, filter, offset, limit);
+        out.append(detector.report());
+    }
+}
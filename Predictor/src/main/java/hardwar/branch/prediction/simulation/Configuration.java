@@ -0,0 +1,66 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.HashMode;
+
+/**
+ * the constructor parameters of a predictor in a parameter sweep
+ */
+public final class Configuration {
+    private final PredictorFamily family;
+    private final int BHRSize;
+    private final int SCSize;
+    private final int branchInstructionSize;
+    private final int KSize;
+    private final HashMode hashMode;
+
+    public Configuration(PredictorFamily family, int BHRSize, int SCSize, int branchInstructionSize, int KSize,
+                         HashMode hashMode) {
+        this.family = family;
+        this.BHRSize = BHRSize;
+        this.SCSize = SCSize;
+        this.branchInstructionSize = branchInstructionSize;
+        this.KSize = KSize;
+        this.hashMode = hashMode;
+    }
+
+    public PredictorFamily getFamily() {
+        return family;
+    }
+
+    public int getBHRSize() {
+        return BHRSize;
+    }
+
+    public int getSCSize() {
+        return SCSize;
+    }
+
+    public int getBranchInstructionSize() {
+        return branchInstructionSize;
+    }
+
+    public int getKSize() {
+        return KSize;
+    }
+
+    public HashMode getHashMode() {
+        return hashMode;
+    }
+
+    /**
+     * @return number of state bits of the predictor, the BHRs and the PHT blocks
+     */
+    public long getStorageBits() {
+        return family.storageBits(this);
+    }
+
+    @Override
+    public String toString() {
+        return family + "(BHRSize=" + BHRSize +
+                ", SCSize=" + SCSize +
+                ", branchInstructionSize=" + branchInstructionSize +
+                ", KSize=" + KSize +
+                ", hashMode=" + hashMode +
+                ')';
+    }
+}
@@ -0,0 +1,90 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.trace.TraceReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+a trace which is decoded once and kept in memory
+
+the trace is read only, so a single copy is shared by all the predictors of a sweep,
+also the ones which run on different threads.
+ */
+public final class DecodedTrace {
+    private final BranchInstruction[] instructions;
+    private final BranchResult[] results;
+    private final int addressLength; // width of the branch addresses, -1 if they are not all the same
+
+    private DecodedTrace(BranchInstruction[] instructions, BranchResult[] results) {
+        this.instructions = instructions;
+        this.results = results;
+        int addressLength = instructions.length == 0 ? 0 : instructions[0].getInstructionAddressLength();
+        for (BranchInstruction instruction : instructions) {
+            if (instruction.getInstructionAddressLength() != addressLength) {
+                addressLength = -1;
+                break;
+            }
+        }
+        this.addressLength = addressLength;
+    }
+
+    /**
+     * @param trace the trace, it is not closed
+     * @return the rest of the trace decoded in memory
+     * @throws IOException if the trace can not be read
+     */
+    public static DecodedTrace load(TraceReader trace) throws IOException {
+        BranchInstruction[] instructions = new BranchInstruction[TraceReader.CHUNK_SIZE];
+        BranchResult[] results = new BranchResult[TraceReader.CHUNK_SIZE];
+        int size = 0;
+        int n;
+        while ((n = trace.read(instructions, results, size, instructions.length - size)) > 0) {
+            size += n;
+            if (size == instructions.length) {
+                if (size == Integer.MAX_VALUE - 8) throw new IOException("trace is too large to be kept in memory");
+                int capacity = (int) Math.min(2L * size, Integer.MAX_VALUE - 8);
+                instructions = Arrays.copyOf(instructions, capacity);
+                results = Arrays.copyOf(results, capacity);
+            }
+        }
+        return new DecodedTrace(Arrays.copyOf(instructions, size), Arrays.copyOf(results, size));
+    }
+
+    /**
+     * @return number of branches in the trace
+     */
+    public int size() {
+        return instructions.length;
+    }
+
+    /**
+     * @return the number of bits of the branch addresses, 0 for an empty trace and -1 if the branches of the
+     * trace have addresses of different widths
+     */
+    public int getInstructionAddressLength() {
+        return addressLength;
+    }
+
+    public BranchInstruction getInstruction(int index) {
+        return instructions[index];
+    }
+
+    public BranchResult getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * predict all the branches of the trace and update the predictor with the actual results
+     *
+     * @return the accuracy of the predictor
+     */
+    public SimulationResult replay(BranchPredictor predictor) {
+        boolean[] predictions = new boolean[instructions.length];
+        long correct = predictor.predictAndUpdate(instructions, results, predictions, 0, instructions.length);
+        return new SimulationResult(predictor, instructions.length, correct);
+    }
+}
@@ -0,0 +1,136 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.trace.TraceReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+a simulator which reads a trace once and feeds every branch to several predictors
+
+in the sequential mode the predictors run one after another on each decoded chunk of the trace.
+in the parallel mode every predictor runs on its own thread and receives the chunks through a
+bounded queue, so the reader never gets more than queueCapacity chunks ahead of the slowest predictor.
+ */
+public class FanOutSimulator {
+    private final List<BranchPredictor> predictors;
+    private final boolean parallel; // run each predictor on its own thread
+    private final int chunkSize; // number of branches which are decoded at once
+    private final int queueCapacity; // number of chunks which can wait for a predictor
+
+    /**
+     * create a sequential simulator
+     */
+    public FanOutSimulator(BranchPredictor... predictors) {
+        this(Arrays.asList(predictors), false, TraceReader.CHUNK_SIZE, 16);
+    }
+
+    public FanOutSimulator(List<BranchPredictor> predictors, boolean parallel, int chunkSize, int queueCapacity) {
+        if (chunkSize <= 0 || queueCapacity <= 0)
+            throw new IllegalArgumentException("chunk size and queue capacity must be positive");
+        this.predictors = Collections.unmodifiableList(new ArrayList<>(predictors));
+        this.parallel = parallel;
+        this.chunkSize = chunkSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * feed the rest of the trace to all the predictors
+     *
+     * @param trace the trace, it is not closed
+     * @return the result of each predictor, in the order of the predictors
+     * @throws IOException if the trace can not be read
+     */
+    public List<SimulationResult> run(TraceReader trace) throws IOException {
+        return parallel ? runParallel(trace) : runSequential(trace);
+    }
+
+    private List<SimulationResult> runSequential(TraceReader trace) throws IOException {
+        long branches = 0;
+        long[] correct = new long[predictors.size()];
+        boolean[] predictions = new boolean[chunkSize]; // the predictors replay one after the other
+        TraceChunk chunk;
+        while ((chunk = TraceChunk.read(trace, chunkSize)) != null) {
+            branches += chunk.length;
+            for (int i = 0; i < correct.length; i++) correct[i] += chunk.replay(predictors.get(i), predictions);
+        }
+
+        List<SimulationResult> results = new ArrayList<>();
+        for (int i = 0; i < correct.length; i++) {
+            results.add(new SimulationResult(predictors.get(i), branches, correct[i]));
+        }
+        return results;
+    }
+
+    private List<SimulationResult> runParallel(TraceReader trace) throws IOException {
+        List<BlockingQueue<TraceChunk>> queues = new ArrayList<>();
+        List<Future<SimulationResult>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(predictors.size(), 1));
+        try {
+            for (BranchPredictor predictor : predictors) {
+                BlockingQueue<TraceChunk> queue = new ArrayBlockingQueue<>(queueCapacity);
+                queues.add(queue);
+                futures.add(executor.submit(() -> consume(predictor, queue, chunkSize)));
+            }
+
+            try {
+                TraceChunk chunk;
+                while ((chunk = TraceChunk.read(trace, chunkSize)) != null) {
+                    for (BlockingQueue<TraceChunk> queue : queues) queue.put(chunk);
+                }
+            } finally {
+                for (BlockingQueue<TraceChunk> queue : queues) queue.put(TraceChunk.END);
+            }
+
+            List<SimulationResult> results = new ArrayList<>();
+            for (Future<SimulationResult> future : futures) results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("simulation is interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("predictor failed during simulation", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * replay the chunks of the queue until the end of the trace. if the predictor fails the rest of
+     * the chunks are drained, so the reader is never blocked by a failed predictor.
+     */
+    private static SimulationResult consume(BranchPredictor predictor, BlockingQueue<TraceChunk> queue,
+                                            int chunkSize) throws InterruptedException {
+        boolean[] predictions = new boolean[chunkSize];
+        long branches = 0;
+        long correct = 0;
+        RuntimeException failure = null;
+        TraceChunk chunk;
+        while ((chunk = queue.take()) != TraceChunk.END) {
+            if (failure != null) continue;
+            try {
+                correct += chunk.replay(predictor, predictions);
+                branches += chunk.length;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) throw failure;
+        return new SimulationResult(predictor, branches, correct);
+    }
+
+    public List<BranchPredictor> getPredictors() {
+        return predictors;
+    }
+}
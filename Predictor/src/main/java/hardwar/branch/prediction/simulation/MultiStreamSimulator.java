@@ -0,0 +1,89 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.Prediction;
+import hardwar.branch.prediction.trace.TraceReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+a simulator which feeds several traces to one shared predictor at the same time
+
+every trace runs on its own thread, like the hardware threads of a core which share one predictor.
+each branch is predicted with lookup and the token is given back to update, so the threads never
+share the SC register. the predictor must be created with the CONCURRENT storage mode, otherwise
+the updates of the threads can be lost or the tables can be corrupted.
+ */
+public class MultiStreamSimulator {
+    private final BranchPredictor predictor;
+    private final int chunkSize; // number of branches which are decoded at once
+
+    public MultiStreamSimulator(BranchPredictor predictor) {
+        this(predictor, TraceReader.CHUNK_SIZE);
+    }
+
+    public MultiStreamSimulator(BranchPredictor predictor, int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunk size must be positive");
+        this.predictor = predictor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * feed the rest of each trace to the shared predictor, every trace on its own thread
+     *
+     * @param traces the traces, they are not closed
+     * @return the result of each trace, in the order of the traces
+     * @throws IOException if a trace can not be read
+     */
+    public List<SimulationResult> run(List<? extends TraceReader> traces) throws IOException {
+        List<Future<SimulationResult>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(traces.size(), 1));
+        try {
+            for (TraceReader trace : traces) {
+                futures.add(executor.submit((Callable<SimulationResult>) () -> stream(trace)));
+            }
+
+            List<SimulationResult> results = new ArrayList<>();
+            for (Future<SimulationResult> future : futures) results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("simulation is interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new RuntimeException("predictor failed during simulation", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SimulationResult stream(TraceReader trace) throws IOException {
+        BranchInstruction[] instructions = new BranchInstruction[chunkSize];
+        BranchResult[] results = new BranchResult[chunkSize];
+        long branches = 0;
+        long correct = 0;
+        int length;
+        while ((length = trace.read(instructions, results, 0, chunkSize)) > 0) {
+            for (int i = 0; i < length; i++) {
+                Prediction prediction = predictor.lookup(instructions[i]);
+                if (prediction.getResult() == results[i]) correct++;
+                predictor.update(prediction, results[i]);
+            }
+            branches += length;
+        }
+        return new SimulationResult(predictor, branches, correct);
+    }
+
+    public BranchPredictor getPredictor() {
+        return predictor;
+    }
+}
@@ -0,0 +1,151 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.StorageMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+runs every configuration of a predictor family on a decoded trace
+
+the configurations are the cartesian product of the parameter ranges. the parameters which are
+not used by the family are ignored, so each distinct predictor is run once. the configurations are
+split between the workers of a ForkJoinPool and all of them replay the same in-memory trace.
+the predictors take branch addresses of exactly branchInstructionSize bits, so a family which uses it
+can only be swept with the address width of the trace.
+ */
+public class ParameterSweep {
+    private final List<Configuration> configurations;
+    private final StorageMode storageMode; // the storage of the tables of the predictors
+
+    public ParameterSweep(PredictorFamily family, int[] BHRSizes, int[] SCSizes, int[] branchInstructionSizes,
+                          int[] KSizes, HashMode[] hashModes, StorageMode storageMode) {
+        this.storageMode = storageMode;
+        if (!family.usesBranchInstructionSize()) branchInstructionSizes = Arrays.copyOf(branchInstructionSizes, 1);
+        if (!family.usesKSize()) KSizes = Arrays.copyOf(KSizes, 1);
+        if (!family.usesHashMode()) hashModes = Arrays.copyOf(hashModes, 1);
+
+        List<Configuration> configurations = new ArrayList<>();
+        for (int BHRSize : BHRSizes)
+            for (int SCSize : SCSizes)
+                for (int branchInstructionSize : branchInstructionSizes)
+                    for (int KSize : KSizes)
+                        for (HashMode hashMode : hashModes)
+                            configurations.add(new Configuration(family, BHRSize, SCSize, branchInstructionSize,
+                                    KSize, hashMode));
+        this.configurations = Collections.unmodifiableList(configurations);
+    }
+
+    /**
+     * @param from the first value (inclusive)
+     * @param to   the last value (inclusive)
+     * @return the values of the range
+     */
+    public static int[] range(int from, int to) {
+        int[] values = new int[Math.max(to - from + 1, 0)];
+        for (int i = 0; i < values.length; i++) values[i] = from + i;
+        return values;
+    }
+
+    public List<Configuration> getConfigurations() {
+        return configurations;
+    }
+
+    /**
+     * run the sweep on the common pool
+     */
+    public List<SweepResult> run(DecodedTrace trace) {
+        return run(trace, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param trace the trace which is replayed by all the configurations
+     * @param pool  the pool which runs the configurations
+     * @return the result of each configuration, in the order of the configurations
+     * @throws IllegalArgumentException if a configuration has a branch instruction size which is not the width
+     *                                  of the branch addresses of the trace
+     */
+    public List<SweepResult> run(DecodedTrace trace, ForkJoinPool pool) {
+        checkBranchInstructionSizes(trace);
+        SweepResult[] results = new SweepResult[configurations.size()];
+        pool.invoke(new SweepTask(trace, results, 0, results.length));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * check all the configurations before running any of them, a sweep does not fail after running for a while
+     */
+    private void checkBranchInstructionSizes(DecodedTrace trace) {
+        if (trace.size() == 0) return;
+        int addressLength = trace.getInstructionAddressLength();
+        for (Configuration c : configurations) {
+            if (!c.getFamily().usesBranchInstructionSize()) continue;
+            if (addressLength < 0)
+                throw new IllegalArgumentException("branch addresses of the trace have different widths");
+            if (c.getBranchInstructionSize() != addressLength)
+                throw new IllegalArgumentException("branch instruction size " + c.getBranchInstructionSize()
+                        + " is not the width of the branch addresses of the trace: " + addressLength);
+        }
+    }
+
+    /**
+     * @return a table of the accuracy and the storage cost of the results
+     */
+    public static String table(List<SweepResult> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("+--------+------+------+------+------+------------+--------------+----------+\n");
+        sb.append(String.format("| %-6s | %-4s | %-4s | %-4s | %-4s | %-10s | %-12s | %-8s |\n",
+                "Family", "BHR", "SC", "BIS", "K", "Hash", "Storage bits", "Accuracy"));
+        sb.append("|--------|------|------|------|------|------------|--------------|----------|\n");
+        for (SweepResult result : results) {
+            Configuration c = result.getConfiguration();
+            PredictorFamily family = c.getFamily();
+            sb.append(String.format("| %-6s | %4d | %4d | %4s | %4s | %-10s | %12d | %7.2f%% |\n",
+                    family, c.getBHRSize(), c.getSCSize(),
+                    family.usesBranchInstructionSize() ? c.getBranchInstructionSize() : "-",
+                    family.usesKSize() ? c.getKSize() : "-",
+                    family.usesHashMode() ? c.getHashMode() : "-",
+                    result.getStorageBits(), 100 * result.getAccuracy()));
+        }
+        sb.append("+--------+------+------+------+------+------------+--------------+----------+\n");
+        return sb.toString();
+    }
+
+    /**
+     * runs a range of the configurations, the range is split until a single configuration is left
+     */
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DecodedTrace trace;
+        private final SweepResult[] results;
+        private final int from;
+        private final int to;
+
+        SweepTask(DecodedTrace trace, SweepResult[] results, int from, int to) {
+            this.trace = trace;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SweepTask(trace, results, from, middle), new SweepTask(trace, results, middle, to));
+                return;
+            }
+            if (to == from) return;
+
+            Configuration c = configurations.get(from);
+            SimulationResult result = trace.replay(c.getFamily().create(c, storageMode));
+            results[from] = new SweepResult(c, result.getBranches(), result.getCorrect());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.GShare.GShare;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.Perceptron.Perceptron;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.judged.TAGE.TAGE;
+import hardwar.branch.prediction.judged.Tournament.Tournament;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.StorageMode;
+
+/*
+the two level predictors which can be swept
+
+the first letter of a family is the history (G: one global BHR, P: a BHR per branch address,
+S: a BHR per K bit set) and the last letter is the PHT (g: one PHT, p: a PHT per branch address,
+s: a PHT per K bit set). the families which do not use KSize or hashMode ignore them.
+GShare has one PHT of 2^K counters which is indexed by the xor of the branch address and the BHR.
+
+the other predictors are mapped onto the same parameters: TAGE has a base table and 4 tagged tables of 2^K
+entries with 8 bit tags and histories from 2 to BHRSize bits, Perceptron has 2^K perceptrons of BHRSize
+8 bit weights and Tournament chooses between a GShare and a PAg with 2^K counters of SCSize bits.
+ */
+public enum PredictorFamily {
+    GAg('G', 'g', false) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new GAg(c.getBHRSize(), c.getSCSize(), storageMode);
+        }
+    },
+    GAp('G', 'p', false) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new GAp(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), storageMode);
+        }
+    },
+    GAs('G', 's', true) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new GAs(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), c.getKSize(),
+                    c.getHashMode(), storageMode);
+        }
+    },
+    PAg('P', 'g', false) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new PAg(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), storageMode);
+        }
+    },
+    PAp('P', 'p', false) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new PAp(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), storageMode);
+        }
+    },
+    PAs('P', 's', true) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new PAs(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), c.getKSize(),
+                    c.getHashMode(), storageMode);
+        }
+    },
+    SAg('S', 'g', true) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new SAg(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), c.getKSize(),
+                    c.getHashMode(), storageMode);
+        }
+    },
+    SAp('S', 'p', true) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new SAp(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), c.getKSize(),
+                    c.getHashMode(), storageMode);
+        }
+    },
+    SAs('S', 's', true) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new SAs(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), c.getKSize(),
+                    c.getHashMode(), storageMode);
+        }
+    },
+    GShare('G', 's', false) {
+        /**
+         * the counters of a gshare are always saved in a primitive array, so the storage mode is ignored
+         */
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new GShare(c.getBHRSize(), c.getSCSize(), c.getBranchInstructionSize(), c.getKSize());
+        }
+
+        @Override
+        long storageBits(Configuration c) {
+            return c.getBHRSize() + (1L << c.getKSize()) * c.getSCSize();
+        }
+    },
+    TAGE('G', 's', false) {
+        /**
+         * the tables of a TAGE are always saved in primitive arrays, so the storage mode is ignored
+         */
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new TAGE(4, Math.min(2, c.getBHRSize()), c.getBHRSize(), c.getKSize(), c.getKSize(), 8,
+                    c.getBranchInstructionSize());
+        }
+
+        /**
+         * a base counter is 2 bits and a tagged entry is a tag, a 2 bit usefulness counter and a 3 bit counter
+         */
+        @Override
+        long storageBits(Configuration c) {
+            return c.getBHRSize() + (1L << c.getKSize()) * 2 + 4 * (1L << c.getKSize()) * (8 + 2 + 3);
+        }
+    },
+    Perceptron('G', 's', false) {
+        /**
+         * the weights of a perceptron are always saved in a primitive array, so the storage mode is ignored
+         */
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            return new Perceptron(c.getBHRSize(), c.getKSize(), c.getBranchInstructionSize(), 8);
+        }
+
+        /**
+         * a perceptron is a bias and a weight for each history bit
+         */
+        @Override
+        long storageBits(Configuration c) {
+            return c.getBHRSize() + (1L << c.getKSize()) * (c.getBHRSize() + 1) * 8;
+        }
+    },
+    Tournament('P', 's', false) {
+        @Override
+        public BranchPredictor create(Configuration c, StorageMode storageMode) {
+            BranchPredictor global = GShare.create(c, storageMode);
+            BranchPredictor local = PAg.create(c, storageMode);
+            return new Tournament(global, local, c.getSCSize(), c.getBranchInstructionSize(), c.getKSize());
+        }
+
+        @Override
+        long storageBits(Configuration c) {
+            return GShare.storageBits(c) + PAg.storageBits(c) + (1L << c.getKSize()) * c.getSCSize();
+        }
+    };
+
+    private final char history; // G, P or S
+    private final char table; // g, p or s
+    private final boolean hashed; // the family uses a hash mode
+
+    PredictorFamily(char history, char table, boolean hashed) {
+        this.history = history;
+        this.table = table;
+        this.hashed = hashed;
+    }
+
+    /**
+     * @param c           the configuration, its family must be this family
+     * @param storageMode the storage of the tables of the predictor
+     * @return a new predictor of the configuration
+     */
+    public abstract BranchPredictor create(Configuration c, StorageMode storageMode);
+
+    /**
+     * @return the family uses the branch instruction size
+     */
+    public boolean usesBranchInstructionSize() {
+        return this != GAg;
+    }
+
+    /**
+     * @return the family uses KSize
+     */
+    public boolean usesKSize() {
+        return history == 'S' || table == 's';
+    }
+
+    /**
+     * @return the family uses a hash mode
+     */
+    public boolean usesHashMode() {
+        return hashed;
+    }
+
+    long storageBits(Configuration c) {
+        long historyBits = copies(history, c) * c.getBHRSize();
+        long tableBits = copies(Character.toUpperCase(table), c) * (1L << c.getBHRSize()) * c.getSCSize();
+        return historyBits + tableBits;
+    }
+
+    private static long copies(char level, Configuration c) {
+        if (level == 'G') return 1;
+        return 1L << (level == 'P' ? c.getBranchInstructionSize() : c.getKSize());
+    }
+}
@@ -0,0 +1,110 @@
+package hardwar.branch.prediction.simulation;
+
+/**
+ * a snapshot of the statistics of a predictor, see StatisticsPredictor.snapshot. the interval values
+ * are the changes since the previous snapshot.
+ */
+public final class PredictorStatistics {
+    private final long branches; // number of predicted branches
+    private final long mispredictions; // number of wrong predictions
+    private final long instructions; // number of executed instructions, 0 if it is not reported
+    private final long occupancy; // number of non-empty table entries, -1 if it is not reported
+    private final long intervalBranches;
+    private final long intervalMispredictions;
+    private final long intervalInstructions;
+    private final long occupancyGrowth;
+
+    public PredictorStatistics(long branches, long mispredictions, long instructions, long occupancy,
+                               long intervalBranches, long intervalMispredictions, long intervalInstructions,
+                               long occupancyGrowth) {
+        this.branches = branches;
+        this.mispredictions = mispredictions;
+        this.instructions = instructions;
+        this.occupancy = occupancy;
+        this.intervalBranches = intervalBranches;
+        this.intervalMispredictions = intervalMispredictions;
+        this.intervalInstructions = intervalInstructions;
+        this.occupancyGrowth = occupancyGrowth;
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public long getIntervalBranches() {
+        return intervalBranches;
+    }
+
+    public long getIntervalMispredictions() {
+        return intervalMispredictions;
+    }
+
+    /**
+     * @return the change of the occupancy since the previous snapshot, 0 if the occupancy is not reported
+     */
+    public long getOccupancyGrowth() {
+        return occupancyGrowth;
+    }
+
+    /**
+     * @return ratio of correct predictions, 0 if no branch is predicted
+     */
+    public double getAccuracy() {
+        return accuracy(branches, mispredictions);
+    }
+
+    /**
+     * @return ratio of correct predictions since the previous snapshot
+     */
+    public double getIntervalAccuracy() {
+        return accuracy(intervalBranches, intervalMispredictions);
+    }
+
+    /**
+     * @return mispredictions per 1000 instructions, NaN if the instructions are not reported
+     */
+    public double getMPKI() {
+        return perKilo(mispredictions, instructions);
+    }
+
+    public double getIntervalMPKI() {
+        return perKilo(intervalMispredictions, intervalInstructions);
+    }
+
+    /**
+     * @return mispredictions per 1000 branches, the traces only hold branches so it is always known
+     */
+    public double getMispredictionsPerKiloBranch() {
+        return perKilo(mispredictions, branches);
+    }
+
+    private static double accuracy(long branches, long mispredictions) {
+        return branches == 0 ? 0 : (double) (branches - mispredictions) / branches;
+    }
+
+    private static double perKilo(long count, long total) {
+        return total == 0 ? Double.NaN : 1000.0 * count / total;
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("%d branches, accuracy %.2f%% (interval %.2f%%), %.3f mispredictions per "
+                + "kilo branch", branches, 100 * getAccuracy(), 100 * getIntervalAccuracy(),
+                getMispredictionsPerKiloBranch());
+        if (instructions > 0) text += String.format(", MPKI %.3f", getMPKI());
+        if (occupancy >= 0) text += String.format(", occupancy %d (%+d)", occupancy, occupancyGrowth);
+        return text;
+    }
+}
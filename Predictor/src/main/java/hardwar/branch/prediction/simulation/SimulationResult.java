@@ -0,0 +1,43 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BranchPredictor;
+
+/**
+ * the accuracy of a predictor on a trace
+ */
+public final class SimulationResult {
+    private final BranchPredictor predictor;
+    private final long branches; // number of predicted branches
+    private final long correct; // number of correct predictions
+
+    public SimulationResult(BranchPredictor predictor, long branches, long correct) {
+        this.predictor = predictor;
+        this.branches = branches;
+        this.correct = correct;
+    }
+
+    public BranchPredictor getPredictor() {
+        return predictor;
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getCorrect() {
+        return correct;
+    }
+
+    /**
+     * @return ratio of correct predictions, 0 for an empty trace
+     */
+    public double getAccuracy() {
+        return branches == 0 ? 0 : (double) correct / branches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d (%.2f%%)", predictor.getClass().getSimpleName(), correct, branches,
+                100 * getAccuracy());
+    }
+}
@@ -0,0 +1,41 @@
+package hardwar.branch.prediction.simulation;
+
+/**
+ * the executions and mispredictions of a single static branch
+ */
+public final class StaticBranchStatistics {
+    private final String address; // the bits of the instruction address, the most significant bit first
+    private final long executions; // number of predicted executions of the branch
+    private final long mispredictions; // number of wrong predictions of the branch
+
+    public StaticBranchStatistics(String address, long executions, long mispredictions) {
+        this.address = address;
+        this.executions = executions;
+        this.mispredictions = mispredictions;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getMispredictions() {
+        return mispredictions;
+    }
+
+    /**
+     * @return ratio of wrong predictions of the branch, 0 if it is never executed
+     */
+    public double getMispredictionRate() {
+        return executions == 0 ? 0 : (double) mispredictions / executions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d mispredicted (%.2f%%)", address, mispredictions, executions,
+                100 * getMispredictionRate());
+    }
+}
@@ -0,0 +1,201 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.MonitorFilter;
+import hardwar.branch.prediction.shared.Prediction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+a predictor which records the accuracy of another predictor
+
+every prediction is passed to the wrapped predictor and its result is counted when the actual
+result is known. the counters are LongAdders, so the predictor can be shared by the threads of a
+MultiStreamSimulator, and the batch functions count a whole batch at once, so the overhead is
+small enough to keep the statistics on during long runs. the counts of each static branch are
+only kept if they are enabled, as they need a map lookup for every branch.
+
+predict and update must be paired as in the wrapped predictor, lookup and update(Prediction) can
+be used in any order.
+ */
+public class StatisticsPredictor implements BranchPredictor {
+    private final BranchPredictor predictor;
+    private final boolean perBranch; // keep the counts of each static branch
+    private final LongAdder branches = new LongAdder();
+    private final LongAdder mispredictions = new LongAdder();
+    private final LongAdder instructions = new LongAdder();
+    // the counts of each static branch, the key is the packed address or the bits of an address longer than 64 bits
+    private final Map<Object, BranchCounters> staticBranches = new ConcurrentHashMap<>();
+    private BranchResult pending; // the result of the last predict which is not updated yet
+    private PredictorStatistics last = new PredictorStatistics(0, 0, 0, -1, 0, 0, 0, 0); // the previous snapshot
+
+    public StatisticsPredictor(BranchPredictor predictor) {
+        this(predictor, false);
+    }
+
+    /**
+     * @param predictor the predictor which is measured
+     * @param perBranch keep the executions and mispredictions of each static branch
+     */
+    public StatisticsPredictor(BranchPredictor predictor, boolean perBranch) {
+        this.predictor = predictor;
+        this.perBranch = perBranch;
+    }
+
+    @Override
+    public BranchResult predict(BranchInstruction instruction) {
+        pending = predictor.predict(instruction);
+        return pending;
+    }
+
+    @Override
+    public void update(BranchInstruction instruction, BranchResult result) {
+        predictor.update(instruction, result);
+        if (pending != null) count(instruction, pending, result);
+        pending = null;
+    }
+
+    @Override
+    public Prediction lookup(BranchInstruction instruction) {
+        return predictor.lookup(instruction);
+    }
+
+    @Override
+    public void update(Prediction prediction, BranchResult actual) {
+        predictor.update(prediction, actual);
+        count(prediction.getInstruction(), prediction.getResult(), actual);
+    }
+
+    @Override
+    public BranchResult predictAndUpdate(BranchInstruction instruction, BranchResult actual) {
+        BranchResult prediction = predictor.predictAndUpdate(instruction, actual);
+        count(instruction, prediction, actual);
+        return prediction;
+    }
+
+    @Override
+    public int predictAndUpdate(BranchInstruction[] instructions, BranchResult[] actuals, boolean[] predictions,
+                                int offset, int length) {
+        int correct = predictor.predictAndUpdate(instructions, actuals, predictions, offset, length);
+        branches.add(length);
+        mispredictions.add(length - correct);
+        if (perBranch) {
+            for (int i = offset; i < offset + length; i++) {
+                countBranch(instructions[i], predictions[i] != BranchResult.isTaken(actuals[i]));
+            }
+        }
+        return correct;
+    }
+
+    private void count(BranchInstruction instruction, BranchResult prediction, BranchResult actual) {
+        boolean mispredicted = prediction != actual;
+        branches.increment();
+        if (mispredicted) mispredictions.increment();
+        if (perBranch) countBranch(instruction, mispredicted);
+    }
+
+    private void countBranch(BranchInstruction instruction, boolean mispredicted) {
+        Object address = getKey(instruction);
+        BranchCounters counters = staticBranches.get(address);
+        if (counters == null) counters = staticBranches.computeIfAbsent(address, key -> new BranchCounters());
+        counters.executions.increment();
+        if (mispredicted) counters.mispredictions.increment();
+    }
+
+    /**
+     * @return the packed address, its length is a part of the key so "01" and "1" are different branches. an
+     * address which does not fit in a long is keyed by its bits
+     */
+    private static Object getKey(BranchInstruction instruction) {
+        if (instruction.getInstructionAddressLength() > BitVector.MAX_LENGTH)
+            return Bit.arrayToString(instruction.getInstructionAddress());
+        return instruction.getPackedInstructionAddress();
+    }
+
+    /**
+     * add the instructions which are executed between the branches, they are only used for the MPKI
+     *
+     * @param count number of instructions
+     */
+    public void addInstructions(long count) {
+        instructions.add(count);
+    }
+
+    /**
+     * Take a snapshot of the statistics, the interval values of the snapshot are the changes since the previous
+     * snapshot. The occupancy of the tables is counted here, which can take a pass over a dense table.
+     *
+     * @return the statistics
+     */
+    public synchronized PredictorStatistics snapshot() {
+        long branches = this.branches.sum();
+        long mispredictions = this.mispredictions.sum();
+        long instructions = this.instructions.sum();
+        long occupancy = predictor.getOccupancy();
+        long growth = occupancy < 0 ? 0 : occupancy - Math.max(last.getOccupancy(), 0);
+        last = new PredictorStatistics(branches, mispredictions, instructions, occupancy,
+                branches - last.getBranches(), mispredictions - last.getMispredictions(),
+                instructions - last.getInstructions(), growth);
+        return last;
+    }
+
+    /**
+     * @return the counts of each static branch, the most mispredicted branches first. it is empty if the counts
+     * of the static branches are not enabled
+     */
+    public List<StaticBranchStatistics> getStaticBranches() {
+        List<StaticBranchStatistics> result = new ArrayList<>();
+        staticBranches.forEach((address, counters) -> result.add(new StaticBranchStatistics(address.toString(),
+                counters.executions.sum(), counters.mispredictions.sum())));
+        result.sort((a, b) -> Long.compare(b.getMispredictions(), a.getMispredictions()));
+        return result;
+    }
+
+    public BranchPredictor getPredictor() {
+        return predictor;
+    }
+
+    @Override
+    public long getOccupancy() {
+        return predictor.getOccupancy();
+    }
+
+    /**
+     * save the wrapped predictor, the statistics are not a part of the checkpoint
+     */
+    @Override
+    public void save(CheckpointWriter out) throws IOException {
+        predictor.save(out);
+    }
+
+    @Override
+    public void restore(CheckpointReader in) throws IOException {
+        predictor.restore(in);
+    }
+
+    @Override
+    public String monitor() {
+        return predictor.monitor();
+    }
+
+    @Override
+    public void monitor(Appendable out, MonitorFilter filter, long offset, long limit) throws IOException {
+        predictor.monitor(out, filter, offset, limit);
+    }
+
+    private static final class BranchCounters {
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder mispredictions = new LongAdder();
+    }
+}
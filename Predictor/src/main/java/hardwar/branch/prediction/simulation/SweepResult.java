@@ -0,0 +1,45 @@
+package hardwar.branch.prediction.simulation;
+
+/**
+ * the accuracy and the storage cost of a configuration
+ */
+public final class SweepResult {
+    private final Configuration configuration;
+    private final long branches; // number of predicted branches
+    private final long correct; // number of correct predictions
+
+    public SweepResult(Configuration configuration, long branches, long correct) {
+        this.configuration = configuration;
+        this.branches = branches;
+        this.correct = correct;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    public long getBranches() {
+        return branches;
+    }
+
+    public long getCorrect() {
+        return correct;
+    }
+
+    public long getStorageBits() {
+        return configuration.getStorageBits();
+    }
+
+    /**
+     * @return ratio of correct predictions, 0 for an empty trace
+     */
+    public double getAccuracy() {
+        return branches == 0 ? 0 : (double) correct / branches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d (%.2f%%), %d bits", configuration, correct, branches, 100 * getAccuracy(),
+                getStorageBits());
+    }
+}
@@ -0,0 +1,48 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.trace.TraceReader;
+
+import java.io.IOException;
+
+/*
+a decoded part of a trace which is shared between the predictors
+
+a chunk is not changed after it is read, so it can be handed to several threads at once.
+ */
+final class TraceChunk {
+    static final TraceChunk END = new TraceChunk(0); // marks the end of the trace
+
+    final BranchInstruction[] instructions;
+    final BranchResult[] results;
+    int length;
+
+    TraceChunk(int capacity) {
+        this.instructions = new BranchInstruction[capacity];
+        this.results = new BranchResult[capacity];
+    }
+
+    /**
+     * @return the next chunk of the trace, or null if the trace is finished
+     */
+    static TraceChunk read(TraceReader trace, int capacity) throws IOException {
+        TraceChunk chunk = new TraceChunk(capacity);
+        int n = trace.read(chunk.instructions, chunk.results, 0, capacity);
+        if (n <= 0) return null;
+        chunk.length = n;
+        return chunk;
+    }
+
+    /**
+     * predict the branches of the chunk and update the predictor with the actual results
+     *
+     * @param predictions the array of the consumer which the predictions are written into, at least as long as
+     *                    the chunk. it is reused for every chunk, so replaying a chunk does not allocate
+     * @return number of correct predictions
+     */
+    long replay(BranchPredictor predictor, boolean[] predictions) {
+        return predictor.predictAndUpdate(instructions, results, predictions, 0, length);
+    }
+}
@@ -0,0 +1,101 @@
+package hardwar.branch.prediction.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+the compact binary trace format
+------------------------------------------------------
+header (16 bytes, big endian):
+    int  magic       "BTRC"
+    byte version     2
+    byte opcodeBits  width of the opcodes, at most 63
+    byte addressBits width of the instruction addresses, at most 64
+    byte jumpBits    width of the jump addresses, at most 64
+    long count       number of branches
+
+records (count * recordBytes bytes):
+    every branch is saved as three big endian numbers, each in the smallest number of whole bytes:
+    opcode | taken (taken is the least significant bit), the instruction address and the jump
+    address. so a 32 bit address and a 32 bit jump address take 4 bytes each. version 1 packed
+    the whole branch into one number of at most 8 bytes and is not read anymore.
+------------------------------------------------------
+ */
+final class BinaryTrace {
+    static final int MAGIC = 0x42545243; // "BTRC"
+    static final byte VERSION = 2;
+    static final int HEADER_BYTES = 16;
+
+    final int opcodeBits;
+    final int addressBits;
+    final int jumpBits;
+    final int opcodeBytes; // bytes of the opcode and the taken bit
+    final int addressBytes;
+    final int jumpBytes;
+    final int recordBytes;
+
+    BinaryTrace(int opcodeBits, int addressBits, int jumpBits) {
+        if (opcodeBits < 0 || opcodeBits > 63)
+            throw new IllegalArgumentException("a binary trace opcode must be at most 63 bits");
+        if (addressBits < 0 || addressBits > 64 || jumpBits < 0 || jumpBits > 64)
+            throw new IllegalArgumentException("a binary trace address must be at most 64 bits");
+        this.opcodeBits = opcodeBits;
+        this.addressBits = addressBits;
+        this.jumpBits = jumpBits;
+        this.opcodeBytes = (opcodeBits + 1 + 7) / 8;
+        this.addressBytes = (addressBits + 7) / 8;
+        this.jumpBytes = (jumpBits + 7) / 8;
+        this.recordBytes = opcodeBytes + addressBytes + jumpBytes;
+    }
+
+    void writeHeader(ByteBuffer buffer, long count) {
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) opcodeBits);
+        buffer.put((byte) addressBits);
+        buffer.put((byte) jumpBits);
+        buffer.putLong(count);
+    }
+
+    /**
+     * @param buffer the first HEADER_BYTES bytes of the trace
+     * @return the format of the trace, the count is not read
+     */
+    static BinaryTrace readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC)
+            throw new IOException("malformed trace: not a binary trace");
+        if (buffer.get() != VERSION) throw new IOException("malformed trace: unsupported binary trace version");
+        try {
+            return new BinaryTrace(buffer.get(), buffer.get(), buffer.get());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("malformed trace: " + e.getMessage());
+        }
+    }
+
+    void writeRecord(ByteBuffer buffer, long opcode, long address, long jump, boolean taken) {
+        write(buffer, (opcode << 1) | (taken ? 1 : 0), opcodeBytes);
+        write(buffer, address, addressBytes);
+        write(buffer, jump, jumpBytes);
+    }
+
+    /**
+     * write the last `bytes` bytes of the number
+     */
+    static void write(ByteBuffer buffer, long number, int bytes) {
+        if (bytes == 8) {
+            buffer.putLong(number);
+            return;
+        }
+        for (int i = bytes - 1; i >= 0; i--) buffer.put((byte) (number >>> (i * 8)));
+    }
+
+    /**
+     * @return the number of the next `bytes` bytes
+     */
+    static long read(ByteBuffer buffer, int bytes) {
+        if (bytes == 8) return buffer.getLong();
+        long number = 0;
+        for (int i = 0; i < bytes; i++) number = (number << 8) | (buffer.get() & 0xFF);
+        return number;
+    }
+}
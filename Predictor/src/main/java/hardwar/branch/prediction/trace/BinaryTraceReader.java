@@ -0,0 +1,121 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+reads a compact binary trace (see BinaryTrace) through memory mapped windows of the file
+
+the records are decoded straight into packed branch instructions, so no bit array is built
+unless a predictor asks for one. traces larger than a single mapping are mapped window by window.
+ */
+public class BinaryTraceReader implements TraceReader {
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final BinaryTrace format;
+    private final long count; // number of branches in the trace
+    private final long windowBytes; // size of a mapped window, a multiple of the record size
+    private MappedByteBuffer window;
+    private long windowPosition; // position of the next window in the file
+    private long remaining; // number of branches which are not read yet
+    private long opcode; // fields of the last record
+    private long address;
+    private long jump;
+    private boolean taken;
+
+    public BinaryTraceReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), BinaryTrace.HEADER_BYTES));
+            this.format = BinaryTrace.readHeader(header);
+            this.count = header.getLong();
+            if (count < 0 || channel.size() < BinaryTrace.HEADER_BYTES + count * format.recordBytes)
+                throw new IOException("malformed trace: binary trace is truncated");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.windowBytes = WINDOW_BYTES / format.recordBytes * format.recordBytes;
+        this.windowPosition = BinaryTrace.HEADER_BYTES;
+        this.remaining = count;
+    }
+
+    /**
+     * @return number of branches in the trace
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public int getOpcodeBits() {
+        return format.opcodeBits;
+    }
+
+    public int getAddressBits() {
+        return format.addressBits;
+    }
+
+    public int getJumpBits() {
+        return format.jumpBits;
+    }
+
+    @Override
+    public TraceRecord next() throws IOException {
+        if (remaining == 0) return null;
+        nextRecord();
+        return new TraceRecord(toInstruction(), BranchResult.of(taken));
+    }
+
+    @Override
+    public int read(BranchInstruction[] instructions, BranchResult[] results, int offset, int length)
+            throws IOException {
+        if (remaining == 0) return length > 0 ? -1 : 0;
+        int n = (int) Math.min(length, remaining);
+        for (int i = 0; i < n; i++) {
+            nextRecord();
+            instructions[offset + i] = toInstruction();
+            results[offset + i] = BranchResult.of(taken);
+        }
+        return n;
+    }
+
+    /**
+     * read the fields of the next record
+     */
+    private void nextRecord() throws IOException {
+        if (window == null || !window.hasRemaining()) {
+            long size = Math.min(windowBytes, remaining * format.recordBytes);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowPosition, size);
+            windowPosition += size;
+        }
+        remaining--;
+        long head = BinaryTrace.read(window, format.opcodeBytes);
+        opcode = head >>> 1;
+        taken = (head & 1) == 1;
+        address = BinaryTrace.read(window, format.addressBytes);
+        jump = BinaryTrace.read(window, format.jumpBytes);
+    }
+
+    private BranchInstruction toInstruction() {
+        return new BranchInstruction(
+                BitVector.of(opcode, format.opcodeBits),
+                BitVector.of(address, format.addressBits),
+                BitVector.of(jump, format.jumpBits)
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,81 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+writes branches in the compact binary trace format (see BinaryTrace)
+
+the widths of the trace are fixed when the writer is created and every branch must have the same
+widths, an opcode is at most 63 bits and an address at most 64 bits. the number of branches is
+written into the header when the writer is closed.
+ */
+public class BinaryTraceWriter implements Closeable {
+    private final FileChannel channel;
+    private final BinaryTrace format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private long count;
+
+    /**
+     * @throws IllegalArgumentException if the widths are not supported by the format
+     */
+    public BinaryTraceWriter(Path path, int opcodeBits, int addressBits, int jumpBits) throws IOException {
+        this.format = new BinaryTrace(opcodeBits, addressBits, jumpBits);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        format.writeHeader(buffer, 0);
+    }
+
+    /**
+     * append a branch to the trace
+     *
+     * @throws IllegalArgumentException if the widths of the branch are not the widths of the trace
+     */
+    public void write(BranchInstruction instruction, BranchResult result) throws IOException {
+        BitVector opcode = instruction.getPackedOpcode();
+        BitVector address = instruction.getPackedInstructionAddress();
+        BitVector jump = instruction.getPackedJumpAddress();
+        if (opcode.length() != format.opcodeBits || address.length() != format.addressBits
+                || jump.length() != format.jumpBits)
+            throw new IllegalArgumentException("branch widths do not match the trace widths");
+
+        if (buffer.remaining() < format.recordBytes) flush();
+        format.writeRecord(buffer, opcode.toLong(), address.toLong(), jump.toLong(), BranchResult.isTaken(result));
+        count++;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @return number of branches which are written
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            format.writeHeader(buffer, count);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) position += channel.write(buffer, position);
+            buffer.clear();
+        } finally {
+            channel.close();
+        }
+    }
+}
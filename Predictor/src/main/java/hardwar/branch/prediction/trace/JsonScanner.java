@@ -0,0 +1,204 @@
+package hardwar.branch.prediction.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/*
+a minimal streaming JSON scanner for the trace files
+
+only the parts of JSON which are used by the traces are supported as values that are read
+(arrays, objects and strings), every other value can only be skipped. strings are matched
+against a list of expected words in place, so reading a trace does not build any string.
+ */
+final class JsonScanner implements Closeable {
+    private static final int SCRATCH_SIZE = 64;
+
+    private final Reader reader;
+    private final char[] buffer = new char[1 << 16];
+    private final char[] scratch = new char[SCRATCH_SIZE]; // content of the last string
+    private int position;
+    private int limit;
+    private boolean first; // no element of the array or object which is being read is consumed yet
+
+    JsonScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the next non-whitespace character without consuming it, or -1 at the end of input
+     */
+    int peek() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) return -1;
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+    }
+
+    /**
+     * consume the next non-whitespace character which must be the expected one
+     */
+    void expect(char expected) throws IOException {
+        int c = peek();
+        if (c != expected) throw error("expected '" + expected + "' but found " + describe(c));
+        position++;
+    }
+
+    /**
+     * consume the start of an array
+     */
+    void beginArray() throws IOException {
+        expect('[');
+        first = true;
+    }
+
+    /**
+     * consume the start of an object
+     */
+    void beginObject() throws IOException {
+        expect('{');
+        first = true;
+    }
+
+    /**
+     * consume the separator before the next element of an array or object, the elements must be separated by
+     * exactly one ','
+     *
+     * @param end the closing character of the array or object
+     * @return false if the array or object is finished (the closing character is consumed)
+     */
+    boolean hasNext(char end) throws IOException {
+        int c = peek();
+        if (c == -1) throw error("unexpected end of input");
+        if (c == end) {
+            position++;
+            // the array or object is an element of the outer one, which therefore has a consumed element
+            first = false;
+            return false;
+        }
+        if (first) {
+            if (c == ',') throw error("unexpected ',' before the first element");
+            first = false;
+            return true;
+        }
+        if (c != ',') throw error("expected ',' or '" + end + "' but found " + describe(c));
+        position++;
+        int d = peek();
+        if (d == end || d == ',') throw error("unexpected " + describe(d) + " after ','");
+        return true;
+    }
+
+    /**
+     * read a string and match it with the words
+     *
+     * @param words the expected words
+     * @return index of the matched word, or -1 if the string is not one of the words
+     */
+    int readWord(String[] words) throws IOException {
+        int length = readString();
+        for (int i = 0; i < words.length; i++) {
+            if (matches(words[i], length)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * skip the next value of any type
+     */
+    void skipValue() throws IOException {
+        int c = peek();
+        if (c == '"') {
+            readString();
+        } else if (c == '[' || c == '{') {
+            char end = c == '[' ? ']' : '}';
+            position++;
+            first = true;
+            while (hasNext(end)) {
+                if (end == '}') {
+                    readString();
+                    expect(':');
+                }
+                skipValue();
+            }
+        } else if (c == -1) {
+            throw error("unexpected end of input");
+        } else {
+            // numbers, true, false and null
+            while (true) {
+                if (position == limit && !fill()) return;
+                char d = buffer[position];
+                if (d == ',' || d == ']' || d == '}' || d == ' ' || d == '\n' || d == '\r' || d == '\t') return;
+                position++;
+            }
+        }
+    }
+
+    /**
+     * read a string into the scratch buffer, only the first SCRATCH_SIZE characters are kept
+     *
+     * @return the length of the string
+     */
+    private int readString() throws IOException {
+        expect('"');
+        int length = 0;
+        while (true) {
+            if (position == limit && !fill()) throw error("unterminated string");
+            char c = buffer[position++];
+            if (c == '"') return length;
+            if (c == '\\') {
+                if (position == limit && !fill()) throw error("unterminated string");
+                c = buffer[position++];
+                if (c == 'u') {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if (position == limit && !fill()) throw error("unterminated string");
+                        code = (code << 4) | Character.digit(buffer[position++], 16);
+                    }
+                    c = (char) code;
+                } else if (c == 'n') {
+                    c = '\n';
+                } else if (c == 't') {
+                    c = '\t';
+                } else if (c == 'r') {
+                    c = '\r';
+                } else if (c == 'b') {
+                    c = '\b';
+                } else if (c == 'f') {
+                    c = '\f';
+                }
+            }
+            if (length < SCRATCH_SIZE) scratch[length] = c;
+            length++;
+        }
+    }
+
+    private boolean matches(String word, int length) {
+        if (word.length() != length || length > SCRATCH_SIZE) return false;
+        for (int i = 0; i < length; i++) {
+            if (scratch[i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    private static String describe(int c) {
+        return c == -1 ? "end of input" : "'" + (char) c + "'";
+    }
+
+    IOException error(String message) {
+        return new IOException("malformed trace: " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
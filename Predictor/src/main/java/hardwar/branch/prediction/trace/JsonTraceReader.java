@@ -0,0 +1,120 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+a streaming reader of the instruction.json and result.json traces
+
+the two files are scanned side by side and each branch is parsed only when it is requested,
+so the whole trace is never loaded into memory. unknown keys of the instructions are skipped.
+ */
+public class JsonTraceReader implements TraceReader {
+    private static final String[] KEYS = {"opcode", "instructionAddress", "jumpAddress"};
+    private static final String[] BITS = {"ZERO", "ONE"};
+    private static final String[] RESULTS = {"NOT_TAKEN", "TAKEN"};
+
+    private final JsonScanner instructions;
+    private final JsonScanner results;
+    private Bit[] bits = new Bit[64]; // reused buffer of the bit array which is being parsed
+    private boolean started; // the opening brackets of the traces are consumed
+    private boolean finished;
+
+    public JsonTraceReader(Reader instructions, Reader results) {
+        this.instructions = new JsonScanner(instructions);
+        this.results = new JsonScanner(results);
+    }
+
+    public JsonTraceReader(Path instructions, Path results) throws IOException {
+        this(open(instructions, results));
+    }
+
+    private JsonTraceReader(Reader[] readers) {
+        this(readers[0], readers[1]);
+    }
+
+    /**
+     * @return readers of the instructions and the results, the first one is closed if the second can not be opened
+     */
+    private static Reader[] open(Path instructions, Path results) throws IOException {
+        Reader first = Files.newBufferedReader(instructions, StandardCharsets.UTF_8);
+        try {
+            return new Reader[]{first, Files.newBufferedReader(results, StandardCharsets.UTF_8)};
+        } catch (IOException | RuntimeException e) {
+            first.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public TraceRecord next() throws IOException {
+        if (finished) return null;
+        if (!started) {
+            instructions.beginArray();
+            results.beginArray();
+            started = true;
+        }
+
+        boolean hasInstruction = instructions.hasNext(']');
+        boolean hasResult = results.hasNext(']');
+        if (hasInstruction != hasResult)
+            throw new IOException("malformed trace: number of instructions and results are not equal");
+        if (!hasInstruction) {
+            finished = true;
+            return null;
+        }
+
+        return new TraceRecord(readInstruction(), readResult());
+    }
+
+    private BranchInstruction readInstruction() throws IOException {
+        Bit[][] fields = new Bit[KEYS.length][];
+        instructions.beginObject();
+        while (instructions.hasNext('}')) {
+            int key = instructions.readWord(KEYS);
+            instructions.expect(':');
+            if (key < 0) instructions.skipValue();
+            else fields[key] = readBits();
+        }
+
+        for (int i = 0; i < KEYS.length; i++) {
+            if (fields[i] == null) throw instructions.error("missing \"" + KEYS[i] + "\" in instruction");
+        }
+        return new BranchInstruction(fields[0], fields[1], fields[2]);
+    }
+
+    private Bit[] readBits() throws IOException {
+        int length = 0;
+        instructions.beginArray();
+        while (instructions.hasNext(']')) {
+            int bit = instructions.readWord(BITS);
+            if (bit < 0) throw instructions.error("bits must be \"ONE\" or \"ZERO\"");
+            if (length == bits.length) bits = Arrays.copyOf(bits, length * 2);
+            bits[length++] = Bit.of(bit == 1);
+        }
+        return Arrays.copyOf(bits, length);
+    }
+
+    private BranchResult readResult() throws IOException {
+        int result = results.readWord(RESULTS);
+        if (result < 0) throw results.error("results must be \"TAKEN\" or \"NOT_TAKEN\"");
+        return BranchResult.of(result == 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            instructions.close();
+        } finally {
+            results.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+converts traces to the compact binary trace format
+
+usage: TraceConverter instruction.json result.json trace.bin
+ */
+public final class TraceConverter {
+    private TraceConverter() {
+    }
+
+    /**
+     * write the rest of the source trace into a binary trace. the widths of the binary trace are the widths
+     * of the first branch of the source.
+     *
+     * @param source the source trace, it is not closed
+     * @param target path of the binary trace
+     * @return number of branches which are converted
+     * @throws IOException if the source can not be read or the branches do not have the same widths
+     */
+    public static long convert(TraceReader source, Path target) throws IOException {
+        TraceRecord record = source.next();
+        BranchInstruction first = record == null ? null : record.getInstruction();
+        int opcodeBits = first == null ? 0 : first.getOpcode().length;
+        int addressBits = first == null ? 0 : first.getInstructionAddress().length;
+        int jumpBits = first == null ? 0 : first.getJumpAddress().length;
+        if (opcodeBits > 63 || addressBits > 64 || jumpBits > 64)
+            throw new IOException("can not convert the trace: an opcode must be at most 63 bits and an address "
+                    + "at most 64 bits");
+
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(target, opcodeBits, addressBits, jumpBits)) {
+            BranchInstruction[] instructions = new BranchInstruction[TraceReader.CHUNK_SIZE];
+            BranchResult[] results = new BranchResult[TraceReader.CHUNK_SIZE];
+            if (record != null) write(writer, record.getInstruction(), record.getResult());
+            int n;
+            while ((n = source.read(instructions, results, 0, TraceReader.CHUNK_SIZE)) > 0) {
+                for (int i = 0; i < n; i++) write(writer, instructions[i], results[i]);
+            }
+            return writer.getCount();
+        }
+    }
+
+    private static void write(BinaryTraceWriter writer, BranchInstruction instruction,
+                              BranchResult result) throws IOException {
+        try {
+            writer.write(instruction, result);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("can not convert branch " + writer.getCount() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * convert a json trace to a binary trace
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: TraceConverter instruction.json result.json trace.bin");
+            System.exit(1);
+        }
+
+        Path target = Paths.get(args[2]);
+        try (JsonTraceReader source = new JsonTraceReader(Paths.get(args[0]), Paths.get(args[1]))) {
+            long count = convert(source, target);
+            System.out.println(count + " branches are written to " + target);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+a reader which returns the branches of a trace one by one or in chunks
+
+the reader keeps only the branches which are not read yet in memory, so a trace of
+any size can be replayed with constant memory.
+ */
+public interface TraceReader extends Closeable {
+    /**
+     * number of branches which replay reads at once
+     */
+    int CHUNK_SIZE = 4096;
+
+    /**
+     * @return the next branch of the trace, or null if the trace is finished
+     * @throws IOException if the trace can not be read or is malformed
+     */
+    TraceRecord next() throws IOException;
+
+    /**
+     * read the next branches of the trace into the arrays
+     *
+     * @param instructions the branch instructions
+     * @param results      the actual results of the branches
+     * @param offset       index of the first branch in the arrays
+     * @param length       maximum number of branches to read
+     * @return number of branches which are read, or -1 if the trace is finished
+     * @throws IOException if the trace can not be read or is malformed
+     */
+    default int read(BranchInstruction[] instructions, BranchResult[] results, int offset, int length)
+            throws IOException {
+        int n = 0;
+        while (n < length) {
+            TraceRecord record = next();
+            if (record == null) break;
+            instructions[offset + n] = record.getInstruction();
+            results[offset + n] = record.getResult();
+            n++;
+        }
+        return n == 0 && length > 0 ? -1 : n;
+    }
+
+    /**
+     * feed the rest of the trace to the predictor. each branch is predicted and then the predictor is updated
+     * with the actual result.
+     *
+     * @param predictor the branch predictor
+     * @return number of branches which are predicted correctly
+     * @throws IOException if the trace can not be read or is malformed
+     */
+    default long replay(BranchPredictor predictor) throws IOException {
+        BranchInstruction[] instructions = new BranchInstruction[CHUNK_SIZE];
+        BranchResult[] results = new BranchResult[CHUNK_SIZE];
+        boolean[] predictions = new boolean[CHUNK_SIZE];
+        long correct = 0;
+        int n;
+        while ((n = read(instructions, results, 0, CHUNK_SIZE)) > 0) {
+            correct += predictor.predictAndUpdate(instructions, results, predictions, 0, n);
+        }
+        return correct;
+    }
+}
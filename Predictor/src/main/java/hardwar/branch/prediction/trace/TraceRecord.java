@@ -0,0 +1,33 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+
+/**
+ * a branch of a trace and its actual result
+ */
+public final class TraceRecord {
+    private final BranchInstruction instruction;
+    private final BranchResult result;
+
+    public TraceRecord(BranchInstruction instruction, BranchResult result) {
+        this.instruction = instruction;
+        this.result = result;
+    }
+
+    public BranchInstruction getInstruction() {
+        return instruction;
+    }
+
+    public BranchResult getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TraceRecord{" +
+                "instruction=" + instruction +
+                ", result=" + result +
+                '}';
+    }
+}
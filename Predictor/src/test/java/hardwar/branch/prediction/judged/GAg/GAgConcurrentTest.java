@@ -0,0 +1,78 @@
+package hardwar.branch.prediction.judged.GAg;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+a CONCURRENT predictor which is shared by several threads must not lose any count. the history is empty and
+the counters are wide up / down counters, so the counter of the only entry is the number of taken branches.
+ */
+class GAgConcurrentTest {
+    private static final int THREADS = 4;
+    private static final int BRANCHES = 50_000;
+    private static final int BATCH = 1000;
+
+    private final BranchInstruction[] instructions = new BranchInstruction[BRANCHES];
+    private final BranchResult[] actuals = new BranchResult[BRANCHES];
+
+    GAgConcurrentTest() {
+        BitVector zero = BitVector.of(0, 4);
+        Arrays.fill(instructions, new BranchInstruction(zero, zero, zero));
+        Arrays.fill(actuals, BranchResult.TAKEN);
+    }
+
+    @Test
+    void fusedPathDoesNotLoseCounts() throws InterruptedException {
+        BranchPredictor predictor = predictor();
+        run(() -> {
+            for (int i = 0; i < BRANCHES; i++) predictor.predictAndUpdate(instructions[i], actuals[i]);
+        });
+
+        assertEquals(THREADS * BRANCHES, predictor.lookup(instructions[0]).getCounter());
+    }
+
+    @Test
+    void batchPathDoesNotLoseCounts() throws InterruptedException {
+        BranchPredictor predictor = predictor();
+        run(() -> {
+            boolean[] predictions = new boolean[BRANCHES];
+            for (int offset = 0; offset < BRANCHES; offset += BATCH) {
+                predictor.predictAndUpdate(instructions, actuals, predictions, offset, BATCH);
+            }
+        });
+
+        assertEquals(THREADS * BRANCHES, predictor.lookup(instructions[0]).getCounter());
+    }
+
+    @Test
+    void tokensDoNotLoseCounts() throws InterruptedException {
+        BranchPredictor predictor = predictor();
+        run(() -> {
+            for (int i = 0; i < BRANCHES; i++) predictor.update(predictor.lookup(instructions[i]), actuals[i]);
+        });
+
+        assertEquals(THREADS * BRANCHES, predictor.lookup(instructions[0]).getCounter());
+    }
+
+    private static BranchPredictor predictor() {
+        return new GAg(0, 24, StorageMode.CONCURRENT, CountMode.UP_DOWN);
+    }
+
+    private static void run(Runnable task) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(task);
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+    }
+}
@@ -0,0 +1,90 @@
+package hardwar.branch.prediction.judged.GShare;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.Prediction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GShareTest {
+    private static final int BRANCHES = 5000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entryIsTheXorOfTheFoldedAddressAndTheHistory() {
+        // an 8 bit address is folded to K = 4 bits as its high nibble xor its low nibble
+        GShare predictor = new GShare(4, 2, 8, 4);
+        Random random = new Random(7);
+        long history = 0;
+        for (int i = 0; i < 1000; i++) {
+            int address = random.nextInt(256);
+            boolean taken = random.nextBoolean();
+            Prediction prediction = predictor.lookup(branch(address, 8));
+            assertEquals((address >>> 4 ^ address & 0xF) ^ history, prediction.getEntry(), "branch " + i);
+
+            predictor.update(prediction, BranchResult.of(taken));
+            // the last result is the most significant bit of the BHR
+            history = history >>> 1 | (taken ? 0b1000 : 0);
+        }
+    }
+
+    @Test
+    void shorterAddressIsHashedAsAWhole() {
+        GShare predictor = new GShare(4, 2, 8, 4);
+        assertEquals(0b0110, predictor.lookup(branch(0b0110, 4)).getEntry());
+        // the bits are folded from the first one, so the last 3 bits are the first 3 bits of the second nibble
+        assertEquals(0b0110 ^ 0b1010, predictor.lookup(branch(0b0110101, 7)).getEntry());
+    }
+
+    @Test
+    void checkpointRestoresTheHistoryAndTheCounters() throws IOException {
+        BranchPredictor saved = new GShare(6, 2, 8, 6, CountMode.UP_DOWN);
+        BranchPredictor restored = new GShare(6, 2, 8, 6, CountMode.UP_DOWN);
+        replay(saved, 1);
+        Path file = directory.resolve("gshare.ckpt");
+        CheckpointWriter.save(saved, file);
+        CheckpointReader.restore(restored, file);
+
+        assertEquals(saved.monitor(), restored.monitor());
+        assertArrayEquals(replay(saved, 2), replay(restored, 2));
+
+        BranchPredictor other = new GShare(6, 2, 8, 6, CountMode.SATURATING);
+        assertThrows(IOException.class, () -> CheckpointReader.restore(other, file));
+    }
+
+    /**
+     * @return the predictions of a trace of random 8 bit addresses, each address is mostly taken or mostly not
+     * taken
+     */
+    private static boolean[] replay(BranchPredictor predictor, long seed) {
+        Random random = new Random(seed);
+        boolean[] predictions = new boolean[BRANCHES];
+        for (int i = 0; i < BRANCHES; i++) {
+            int address = random.nextInt(256);
+            boolean taken = (address % 3 == 0) != (random.nextInt(8) == 0);
+            predictions[i] = BranchResult.isTaken(predictor.predictAndUpdate(branch(address, 8),
+                    BranchResult.of(taken)));
+        }
+        return predictions;
+    }
+
+    private static BranchInstruction branch(long address, int length) {
+        BitVector zero = BitVector.zeros(4);
+        return new BranchInstruction(zero, BitVector.of(address, length), zero);
+    }
+}
@@ -0,0 +1,79 @@
+package hardwar.branch.prediction.judged;
+
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+the hash mode of the two-level predictors. every branch is not taken, so every BHR stays zero and the
+occupancy is the number of distinct PHT entries of the 256 branch addresses.
+ */
+class HashModeTest {
+    private static final int BHR_SIZE = 4;
+    private static final int K_SIZE = 2;
+    private static final int ADDRESS_SIZE = 8;
+
+    @Test
+    void gshareXorsTheHistoryIntoTheWholeEntry() {
+        // xor keeps 2^K address hashes next to the history, gshare folds the address into all K + BHR bits
+        for (StorageMode storageMode : new StorageMode[]{StorageMode.MAP, StorageMode.DENSE}) {
+            assertEntries(1 << K_SIZE, mode -> new GAs(BHR_SIZE, 2, ADDRESS_SIZE, K_SIZE, mode, storageMode),
+                    HashMode.XOR);
+            assertEntries(1 << (K_SIZE + BHR_SIZE),
+                    mode -> new GAs(BHR_SIZE, 2, ADDRESS_SIZE, K_SIZE, mode, storageMode), HashMode.GSHARE);
+            assertEntries(1 << (K_SIZE + BHR_SIZE),
+                    mode -> new PAs(BHR_SIZE, 2, ADDRESS_SIZE, K_SIZE, mode, storageMode), HashMode.GSHARE);
+            assertEntries(1 << (K_SIZE + BHR_SIZE),
+                    mode -> new SAs(BHR_SIZE, 2, ADDRESS_SIZE, K_SIZE, mode, storageMode), HashMode.GSHARE);
+        }
+    }
+
+    @Test
+    void sagSelectsTheBhrWithTheHashMode() {
+        // the PHT of a SAg is indexed by the BHR only, so the hash mode is seen in the selected BHRs
+        BranchPredictor xor = new SAg(BHR_SIZE, 2, ADDRESS_SIZE, K_SIZE, HashMode.XOR);
+        BranchPredictor cut = new SAg(BHR_SIZE, 2, ADDRESS_SIZE, K_SIZE, HashMode.SIMPLE_CUT);
+        // the first K bits of both addresses are 00 but their xor hashes differ
+        BranchInstruction first = branch(0b00000001);
+        BranchInstruction second = branch(0b00000010);
+        for (int i = 0; i < 8; i++) {
+            xor.predictAndUpdate(first, BranchResult.TAKEN);
+            cut.predictAndUpdate(first, BranchResult.TAKEN);
+        }
+        assertEquals(BranchResult.NOT_TAKEN, xor.predict(second));
+        assertEquals(BranchResult.TAKEN, cut.predict(second));
+    }
+
+    /**
+     * run every address through the classic and the fused paths of two predictors and check the occupancy
+     */
+    private static void assertEntries(long expected, Function<HashMode, BranchPredictor> factory, HashMode mode) {
+        BranchPredictor classic = factory.apply(mode);
+        BranchPredictor fused = factory.apply(mode);
+        for (int address = 0; address < 1 << ADDRESS_SIZE; address++) {
+            BranchInstruction instruction = branch(address);
+            classic.predict(instruction);
+            classic.update(instruction, BranchResult.NOT_TAKEN);
+            fused.predictAndUpdate(instruction, BranchResult.NOT_TAKEN);
+        }
+        assertEquals(expected, classic.getOccupancy(), mode + " " + classic.getClass().getSimpleName());
+        assertEquals(expected, fused.getOccupancy(), mode + " " + fused.getClass().getSimpleName());
+    }
+
+    private static BranchInstruction branch(int address) {
+        BitVector zero = BitVector.zeros(4);
+        return new BranchInstruction(zero, BitVector.of(address, ADDRESS_SIZE), zero);
+    }
+}
@@ -0,0 +1,91 @@
+package hardwar.branch.prediction.judged.Perceptron;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+the output of a perceptron is read from the counter of its prediction token
+ */
+class PerceptronTest {
+    private static final int BRANCHES = 5000;
+    private static final BranchInstruction X = branch(0b00000001);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void trainingStopsAboveTheThreshold() {
+        // one input, so each training of an always taken branch adds 2 to the output once the history is taken
+        Perceptron predictor = new Perceptron(1, 0, 8, 8);
+        assertEquals(15, predictor.getThreshold());
+        for (int i = 0; i < 100; i++) predictor.predictAndUpdate(X, BranchResult.TAKEN);
+
+        // the outputs are 0, 0, 2, 4, ... and the first one above the threshold is 16
+        assertEquals(16, predictor.lookup(X).getCounter());
+    }
+
+    @Test
+    void weightsSaturate() {
+        // 2 bit weights are in [-2, 1], the threshold can not be reached so every branch trains the perceptron
+        Perceptron taken = new Perceptron(1, 0, 8, 2);
+        for (int i = 0; i < 100; i++) taken.predictAndUpdate(X, BranchResult.TAKEN);
+        assertEquals(1 + 1, taken.lookup(X).getCounter());
+
+        // the history stays not taken, so the input weight grows to 1 and the output is -2 - 1
+        Perceptron notTaken = new Perceptron(1, 0, 8, 2);
+        for (int i = 0; i < 100; i++) notTaken.predictAndUpdate(X, BranchResult.NOT_TAKEN);
+        assertEquals(-3, notTaken.lookup(X).getCounter());
+        assertEquals(BranchResult.NOT_TAKEN, notTaken.predict(X));
+    }
+
+    @Test
+    void checkpointRestoresTheWeightsAndTheHistory() throws IOException {
+        BranchPredictor saved = new Perceptron(12, 6, 8, 8);
+        BranchPredictor restored = new Perceptron(12, 6, 8, 8);
+        replay(saved, 1);
+        Path file = directory.resolve("perceptron.ckpt");
+        CheckpointWriter.save(saved, file);
+        CheckpointReader.restore(restored, file);
+
+        assertEquals(saved.monitor(), restored.monitor());
+        assertArrayEquals(replay(saved, 2), replay(restored, 2));
+
+        BranchPredictor other = new Perceptron(12, 6, 8, 6);
+        assertThrows(IOException.class, () -> CheckpointReader.restore(other, file));
+    }
+
+    /**
+     * @return the predictions of a trace of random 8 bit addresses, each address is mostly taken or mostly not
+     * taken
+     */
+    private static boolean[] replay(BranchPredictor predictor, long seed) {
+        Random random = new Random(seed);
+        boolean[] predictions = new boolean[BRANCHES];
+        for (int i = 0; i < BRANCHES; i++) {
+            int address = random.nextInt(256);
+            boolean taken = (address % 3 == 0) != (random.nextInt(8) == 0);
+            predictions[i] = BranchResult.isTaken(predictor.predictAndUpdate(branch(address),
+                    BranchResult.of(taken)));
+        }
+        return predictions;
+    }
+
+    private static BranchInstruction branch(long address) {
+        BitVector zero = BitVector.zeros(4);
+        return new BranchInstruction(zero, BitVector.of(address, 8), zero);
+    }
+}
@@ -0,0 +1,202 @@
+package hardwar.branch.prediction.judged;
+
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.GAp.GAp;
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.judged.PAs.PAs;
+import hardwar.branch.prediction.judged.SAg.SAg;
+import hardwar.branch.prediction.judged.SAp.SAp;
+import hardwar.branch.prediction.judged.SAs.SAs;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.Prediction;
+import hardwar.branch.prediction.shared.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+the classic predict / update path, the fused path, the prediction tokens and the batch path of a predictor
+are the same predictor, they must make the same predictions and accept the same branches.
+ */
+class PredictionPathTest {
+    private static final int BRANCHES = 4000;
+    private static final int ADDRESS_SIZE = 8;
+
+    private static final List<Function<StorageMode, BranchPredictor>> PREDICTORS = Arrays.asList(
+            mode -> new GAg(4, 2, mode),
+            mode -> new GAp(4, 2, ADDRESS_SIZE, mode),
+            mode -> new GAs(4, 2, ADDRESS_SIZE, 3, HashMode.XOR, mode),
+            mode -> new GAs(4, 2, ADDRESS_SIZE, 3, HashMode.GSHARE, mode),
+            mode -> new PAg(4, 2, ADDRESS_SIZE, mode),
+            mode -> new PAp(4, 2, ADDRESS_SIZE, mode),
+            mode -> new PAs(4, 2, ADDRESS_SIZE, 3, HashMode.FIBONACCI, mode),
+            mode -> new SAg(4, 2, ADDRESS_SIZE, 3, HashMode.SIMPLE_CUT, mode),
+            mode -> new SAp(4, 2, ADDRESS_SIZE, 3, HashMode.XOR, mode),
+            mode -> new SAs(4, 2, ADDRESS_SIZE, 3, HashMode.GSHARE, mode));
+
+    private final BranchInstruction[] instructions = new BranchInstruction[BRANCHES];
+    private final BranchResult[] actuals = new BranchResult[BRANCHES];
+
+    PredictionPathTest() {
+        Random random = new Random(11);
+        BitVector zero = BitVector.zeros(4);
+        for (int i = 0; i < BRANCHES; i++) {
+            int address = random.nextInt(40) * 5;
+            instructions[i] = new BranchInstruction(zero, BitVector.of(address, ADDRESS_SIZE), zero);
+            // loops of different lengths, so the history is worth something
+            actuals[i] = BranchResult.of(i % (address % 7 + 2) != 0);
+        }
+    }
+
+    @Test
+    void everyPathMakesTheSamePredictions() {
+        for (StorageMode storageMode : new StorageMode[]{StorageMode.MAP, StorageMode.DENSE}) {
+            for (Function<StorageMode, BranchPredictor> factory : PREDICTORS) {
+                BranchPredictor classic = factory.apply(storageMode);
+                BranchPredictor fused = factory.apply(storageMode);
+                BranchPredictor tokens = factory.apply(storageMode);
+                BranchPredictor batch = factory.apply(storageMode);
+                String name = classic.getClass().getSimpleName() + " " + storageMode;
+
+                boolean[] expected = new boolean[BRANCHES];
+                boolean[] fusedPredictions = new boolean[BRANCHES];
+                boolean[] tokenPredictions = new boolean[BRANCHES];
+                for (int i = 0; i < BRANCHES; i++) {
+                    expected[i] = BranchResult.isTaken(classic.predict(instructions[i]));
+                    classic.update(instructions[i], actuals[i]);
+                    fusedPredictions[i] = BranchResult.isTaken(fused.predictAndUpdate(instructions[i], actuals[i]));
+                    Prediction prediction = tokens.lookup(instructions[i]);
+                    tokenPredictions[i] = BranchResult.isTaken(prediction.getResult());
+                    tokens.update(prediction, actuals[i]);
+                }
+                boolean[] batchPredictions = new boolean[BRANCHES];
+                for (int offset = 0; offset < BRANCHES; offset += 300) {
+                    batch.predictAndUpdate(instructions, actuals, batchPredictions, offset,
+                            Math.min(300, BRANCHES - offset));
+                }
+
+                assertArrayEquals(expected, fusedPredictions, name + " fused");
+                assertArrayEquals(expected, tokenPredictions, name + " tokens");
+                assertArrayEquals(expected, batchPredictions, name + " batch");
+                assertEquals(classic.getOccupancy(), batch.getOccupancy(), name);
+            }
+        }
+    }
+
+    @Test
+    void lookupsDoNotChangeThePredictor() {
+        for (StorageMode storageMode : new StorageMode[]{StorageMode.MAP, StorageMode.DENSE}) {
+            for (Function<StorageMode, BranchPredictor> factory : PREDICTORS) {
+                BranchPredictor plain = factory.apply(storageMode);
+                BranchPredictor looked = factory.apply(storageMode);
+                String name = plain.getClass().getSimpleName() + " " + storageMode;
+
+                for (int i = 0; i < BRANCHES; i++) {
+                    Prediction expected = plain.lookup(instructions[i]);
+                    // the tokens of a branch which is never resolved are dropped
+                    Prediction first = looked.lookup(instructions[(i * 7) % BRANCHES]);
+                    Prediction prediction = looked.lookup(instructions[i]);
+                    assertEquals(expected.toString(), prediction.toString(), name + " branch " + i);
+                    assertEquals(first.toString(), looked.lookup(instructions[(i * 7) % BRANCHES]).toString(), name);
+
+                    plain.update(expected, actuals[i]);
+                    looked.update(prediction, actuals[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void perAddressPredictionsInFlightAreIndependent() {
+        List<Function<StorageMode, BranchPredictor>> perAddress = PREDICTORS.subList(4, 7);
+        for (StorageMode storageMode : new StorageMode[]{StorageMode.MAP, StorageMode.DENSE}) {
+            for (Function<StorageMode, BranchPredictor> factory : perAddress) {
+                BranchPredictor sequential = factory.apply(storageMode);
+                BranchPredictor interleaved = factory.apply(storageMode);
+                String name = sequential.getClass().getSimpleName() + " " + storageMode;
+
+                for (int i = 0; i + 1 < BRANCHES; i += 2) {
+                    Prediction a = sequential.lookup(instructions[i]);
+                    sequential.update(a, actuals[i]);
+                    sequential.update(sequential.lookup(instructions[i + 1]), actuals[i + 1]);
+
+                    // a branch of the same address would read the history which the first one has not updated yet
+                    if (instructions[i].getPackedInstructionAddress().toLong()
+                            == instructions[i + 1].getPackedInstructionAddress().toLong()) {
+                        interleaved.update(interleaved.lookup(instructions[i]), actuals[i]);
+                        interleaved.update(interleaved.lookup(instructions[i + 1]), actuals[i + 1]);
+                        continue;
+                    }
+                    Prediction first = interleaved.lookup(instructions[i]);
+                    Prediction second = interleaved.lookup(instructions[i + 1]);
+                    // the second branch may share a counter of the first one, so only the first result is the same
+                    assertEquals(a.getResult(), first.getResult(), name + " branch " + i);
+                    interleaved.update(first, actuals[i]);
+                    interleaved.update(second, actuals[i + 1]);
+                }
+                assertEquals(sequential.monitor(), interleaved.monitor(), name);
+            }
+        }
+    }
+
+    @Test
+    void globalPredictionsInFlightReadTheSameHistory() {
+        BranchPredictor predictor = new GAg(1, 2, StorageMode.DENSE);
+        BranchInstruction branch = instructions[0];
+        Prediction first = predictor.lookup(branch);
+        Prediction second = predictor.lookup(branch);
+        assertEquals(0, second.getEntry());
+
+        // both updates count the entry of the empty history, and both results are shifted into the BHR
+        predictor.update(first, BranchResult.TAKEN);
+        predictor.update(second, BranchResult.TAKEN);
+        Prediction taken = predictor.lookup(branch);
+        assertEquals(1, taken.getEntry());
+        assertEquals(0, taken.getCounter());
+
+        predictor.update(taken, BranchResult.NOT_TAKEN);
+        Prediction notTaken = predictor.lookup(branch);
+        assertEquals(0, notTaken.getEntry());
+        assertEquals(0b10, notTaken.getCounter());
+        assertEquals(BranchResult.TAKEN, notTaken.getResult());
+    }
+
+    @Test
+    void everyPathRejectsAddressesOfOtherWidths() {
+        BitVector zero = BitVector.zeros(4);
+        for (StorageMode storageMode : StorageMode.values()) {
+            for (Function<StorageMode, BranchPredictor> factory : PREDICTORS) {
+                BranchPredictor predictor = factory.apply(storageMode);
+                // GAg, GAs and SAs hash or ignore the whole address, so they take any width
+                if (predictor instanceof GAg || predictor instanceof GAs || predictor instanceof SAs) continue;
+
+                for (int width : new int[]{ADDRESS_SIZE - 1, ADDRESS_SIZE + 1}) {
+                    BranchInstruction branch = new BranchInstruction(zero, BitVector.of(5, width), zero);
+                    BranchInstruction[] branches = {instructions[0], branch};
+                    BranchResult[] results = {BranchResult.TAKEN, BranchResult.TAKEN};
+
+                    assertThrows(IllegalArgumentException.class, () -> predictor.predict(branch));
+                    assertThrows(IllegalArgumentException.class, () -> predictor.update(branch, BranchResult.TAKEN));
+                    assertThrows(IllegalArgumentException.class,
+                            () -> predictor.predictAndUpdate(branch, BranchResult.TAKEN));
+                    assertThrows(IllegalArgumentException.class, () -> predictor.lookup(branch));
+                    assertThrows(IllegalArgumentException.class,
+                            () -> predictor.predictAndUpdate(branches, results, new boolean[2], 0, 2));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package hardwar.branch.prediction.judged.TAGE;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+the small predictors have one tagged table of a 1 bit history, so a not taken branch clears the history and
+the base table is the alternate of every tagged entry
+ */
+class TAGETest {
+    private static final int BRANCHES = 5000;
+    private static final BranchInstruction X = branch(0b00000001);
+    private static final BranchInstruction Y = branch(0b00000010);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mispredictionAllocatesAnEntry() {
+        TAGE predictor = small();
+        // the empty base counter predicts not taken, so the first not taken branch is right
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predictAndUpdate(X, BranchResult.NOT_TAKEN));
+        assertEquals(1, predictor.getOccupancy());
+
+        // the base counter is still not taken, the misprediction allocates a tagged entry
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predictAndUpdate(X, BranchResult.TAKEN));
+        assertEquals(2, predictor.getOccupancy());
+
+        // a right prediction does not allocate
+        predictor.predictAndUpdate(Y, BranchResult.NOT_TAKEN);
+        assertEquals(3, predictor.getOccupancy());
+    }
+
+    @Test
+    void newProviderDefersToTheAlternateUntilItIsUseful() {
+        TAGE predictor = small();
+        predictor.predictAndUpdate(X, BranchResult.TAKEN); // allocates a weak taken entry of X
+        predictor.predictAndUpdate(Y, BranchResult.NOT_TAKEN); // clears the history
+
+        // the new entry of X is the provider, but it is not useful yet, so the base counter (weak not taken)
+        // predicts the branch
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predictAndUpdate(X, BranchResult.TAKEN));
+        predictor.predictAndUpdate(Y, BranchResult.NOT_TAKEN);
+
+        // the provider was right where the alternate was wrong, so it is useful and predicts the branch now
+        assertEquals(BranchResult.TAKEN, predictor.predict(X));
+    }
+
+    @Test
+    void longHistoryTablesProvideTheLoopExit() {
+        // the exit of a loop of 3 taken branches is only told apart with a history of 3 bits or more, so only
+        // the entries of the long tables can provide it
+        assertEquals(0, loopMispredictions(new TAGE(3, 1, 4, 4, 6, 8, 8)));
+        assertEquals(50, loopMispredictions(new TAGE(3, 1, 2, 4, 6, 8, 8)));
+    }
+
+    @Test
+    void checkpointRestoresTheTablesAndTheHistory() throws IOException {
+        BranchPredictor saved = new TAGE();
+        BranchPredictor restored = new TAGE();
+        replay(saved, 1);
+        Path file = directory.resolve("tage.ckpt");
+        CheckpointWriter.save(saved, file);
+        CheckpointReader.restore(restored, file);
+
+        assertEquals(saved.monitor(), restored.monitor());
+        assertArrayEquals(replay(saved, 2), replay(restored, 2));
+
+        BranchPredictor other = new TAGE(5, 4, 128, 12, 10, 9, 8);
+        assertThrows(IOException.class, () -> CheckpointReader.restore(other, file));
+    }
+
+    /**
+     * @return the mispredictions of the last 200 branches of 400 branches of a loop of 3 taken branches
+     */
+    private static int loopMispredictions(TAGE predictor) {
+        int mispredictions = 0;
+        for (int i = 0; i < 400; i++) {
+            BranchResult actual = BranchResult.of(i % 4 != 3);
+            if (predictor.predictAndUpdate(X, actual) != actual && i >= 200) mispredictions++;
+        }
+        return mispredictions;
+    }
+
+    private static TAGE small() {
+        return new TAGE(1, 1, 1, 4, 4, 8, 8);
+    }
+
+    /**
+     * @return the predictions of a trace of random 8 bit addresses, each address is mostly taken or mostly not
+     * taken
+     */
+    private static boolean[] replay(BranchPredictor predictor, long seed) {
+        Random random = new Random(seed);
+        boolean[] predictions = new boolean[BRANCHES];
+        for (int i = 0; i < BRANCHES; i++) {
+            int address = random.nextInt(256);
+            boolean taken = (address % 3 == 0) != (random.nextInt(8) == 0);
+            predictions[i] = BranchResult.isTaken(predictor.predictAndUpdate(branch(address),
+                    BranchResult.of(taken)));
+        }
+        return predictions;
+    }
+
+    private static BranchInstruction branch(long address) {
+        BitVector zero = BitVector.zeros(4);
+        return new BranchInstruction(zero, BitVector.of(address, 8), zero);
+    }
+}
@@ -0,0 +1,148 @@
+package hardwar.branch.prediction.judged.Tournament;
+
+import hardwar.branch.prediction.judged.GShare.GShare;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchPredictor;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.StorageMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+the chooser is trained with a component which always predicts not taken and one which always predicts taken,
+so the prediction of the tournament shows which component is selected
+ */
+class TournamentTest {
+    private static final int BRANCHES = 5000;
+    private static final BranchInstruction X = branch(0b00000001);
+    private static final BranchInstruction Y = branch(0b00000010);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void chooserSelectsTheComponentWhichIsRight() {
+        BranchPredictor predictor = new Tournament(fixed(false), fixed(true), 2, 8, 2);
+        // the empty counter selects the first component, two wrong predictions move it to the second one
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predictAndUpdate(X, BranchResult.TAKEN));
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predictAndUpdate(X, BranchResult.TAKEN));
+        assertEquals(BranchResult.TAKEN, predictor.predictAndUpdate(X, BranchResult.TAKEN));
+        assertEquals(BranchResult.TAKEN, predictor.predictAndUpdate(X, BranchResult.TAKEN));
+
+        // the counter is saturated, so two wrong predictions move it back to the first component
+        assertEquals(BranchResult.TAKEN, predictor.predictAndUpdate(X, BranchResult.NOT_TAKEN));
+        assertEquals(BranchResult.TAKEN, predictor.predictAndUpdate(X, BranchResult.NOT_TAKEN));
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predictAndUpdate(X, BranchResult.NOT_TAKEN));
+    }
+
+    @Test
+    void chooserIsOnlyCountedWhenTheComponentsDisagree() {
+        boolean[] secondTaken = {false};
+        BranchPredictor predictor = new Tournament(fixed(false), fixed(secondTaken), 2, 8, 2);
+        // both components are right, a counter which is counted towards the second one would select it
+        for (int i = 0; i < 10; i++) predictor.predictAndUpdate(X, BranchResult.NOT_TAKEN);
+
+        secondTaken[0] = true;
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predict(X));
+    }
+
+    @Test
+    void eachAddressHasItsOwnCounter() {
+        BranchPredictor predictor = new Tournament(fixed(false), fixed(true), 2, 8, 2);
+        for (int i = 0; i < 4; i++) predictor.predictAndUpdate(X, BranchResult.TAKEN);
+
+        assertEquals(BranchResult.TAKEN, predictor.predict(X));
+        assertEquals(BranchResult.NOT_TAKEN, predictor.predict(Y));
+    }
+
+    @Test
+    void tokensAndPairedPredictionsTrainTheChooser() {
+        BranchPredictor paired = new Tournament(fixed(false), fixed(true), 2, 8, 2);
+        for (int i = 0; i < 2; i++) {
+            paired.predict(X);
+            paired.update(X, BranchResult.TAKEN);
+        }
+        assertEquals(BranchResult.TAKEN, paired.predict(X));
+
+        BranchPredictor tokens = new Tournament(fixed(false), fixed(true), 2, 8, 2);
+        for (int i = 0; i < 2; i++) tokens.update(tokens.lookup(X), BranchResult.TAKEN);
+        assertEquals(BranchResult.TAKEN, tokens.lookup(X).getResult());
+    }
+
+    @Test
+    void checkpointRestoresTheComponentsAndTheChooser() throws IOException {
+        BranchPredictor saved = new Tournament(new GShare(6, 2, 8, 6), new PAg(4, 2, 8, StorageMode.DENSE), 2, 8, 4);
+        BranchPredictor restored = new Tournament(new GShare(6, 2, 8, 6), new PAg(4, 2, 8, StorageMode.MAP), 2, 8,
+                4);
+        replay(saved, 1);
+        Path file = directory.resolve("tournament.ckpt");
+        CheckpointWriter.save(saved, file);
+        CheckpointReader.restore(restored, file);
+
+        assertArrayEquals(replay(saved, 2), replay(restored, 2));
+
+        BranchPredictor other = new Tournament(new GShare(6, 2, 8, 6), new PAg(4, 2, 8, StorageMode.DENSE), 3, 8, 4);
+        assertThrows(IOException.class, () -> CheckpointReader.restore(other, file));
+    }
+
+    /**
+     * @return a component which predicts every branch the same
+     */
+    private static BranchPredictor fixed(boolean taken) {
+        return fixed(new boolean[]{taken});
+    }
+
+    /**
+     * @return a component which predicts every branch as the first element of the array
+     */
+    private static BranchPredictor fixed(boolean[] taken) {
+        return new BranchPredictor() {
+            @Override
+            public BranchResult predict(BranchInstruction instruction) {
+                return BranchResult.of(taken[0]);
+            }
+
+            @Override
+            public void update(BranchInstruction instruction, BranchResult result) {
+            }
+
+            @Override
+            public String monitor() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @return the predictions of a trace of random 8 bit addresses, each address is mostly taken or mostly not
+     * taken
+     */
+    private static boolean[] replay(BranchPredictor predictor, long seed) {
+        Random random = new Random(seed);
+        boolean[] predictions = new boolean[BRANCHES];
+        for (int i = 0; i < BRANCHES; i++) {
+            int address = random.nextInt(256);
+            boolean taken = (address % 3 == 0) != (random.nextInt(8) == 0);
+            predictions[i] = BranchResult.isTaken(predictor.predictAndUpdate(branch(address),
+                    BranchResult.of(taken)));
+        }
+        return predictions;
+    }
+
+    private static BranchInstruction branch(long address) {
+        BitVector zero = BitVector.zeros(4);
+        return new BranchInstruction(zero, BitVector.of(address, 8), zero);
+    }
+}
@@ -0,0 +1,103 @@
+package hardwar.branch.prediction.shared;
+
+import hardwar.branch.prediction.shared.devices.CombinationalLogic;
+import hardwar.branch.prediction.shared.devices.PageHistoryTable;
+import hardwar.branch.prediction.shared.devices.SIPORegister;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BitVectorTest {
+    private final Random random = new Random(1);
+
+    @Test
+    void packedVectorKeepsTheBitsOfTheArray() {
+        for (int length = 0; length <= BitVector.MAX_LENGTH; length++) {
+            Bit[] array = randomBits(length);
+            BitVector vector = BitVector.of(array);
+            assertArrayEquals(array, vector.toArray());
+            assertEquals(Bit.arrayToString(array), vector.toString());
+            if (length < 32) assertEquals(Bit.toNumber(array), vector.toNumber());
+        }
+    }
+
+    @Test
+    void sliceAndConcatAreTheArrayOperations() {
+        Bit[] array = randomBits(40);
+        BitVector vector = BitVector.of(array);
+        assertArrayEquals(Arrays.copyOfRange(array, 5, 29), vector.slice(5, 29).toArray());
+        assertEquals(vector, vector.slice(0, 17).concat(vector.slice(17, 40)));
+        assertThrows(IllegalArgumentException.class, () -> vector.concat(BitVector.zeros(25)));
+    }
+
+    @Test
+    void shiftInIsTheRegisterInsert() {
+        SIPORegister register = new SIPORegister("r", 12, randomBits(12));
+        BitVector vector = register.readVector();
+        for (int i = 0; i < 30; i++) {
+            Bit bit = Bit.of(random.nextBoolean());
+            register.insert(bit);
+            vector = vector.shiftIn(bit);
+            assertArrayEquals(register.read(), vector.toArray());
+        }
+    }
+
+    @Test
+    void vectorsOfDifferentLengthsAreDifferent() {
+        assertNotEquals(BitVector.of(1, 1), BitVector.of(1, 2));
+        assertEquals(BitVector.of(1, 2), BitVector.of(5, 2));
+        assertThrows(IllegalArgumentException.class, () -> BitVector.of(randomBits(65)));
+    }
+
+    @Test
+    void packedTableIsTheBitArrayTable() {
+        PageHistoryTable packed = new PageHistoryTable(1 << 6, 3);
+        PageHistoryTable array = new PageHistoryTable(1 << 6, 3);
+        for (int i = 0; i < 500; i++) {
+            Bit[] key = randomBits(6);
+            Bit[] value = randomBits(3);
+            packed.put(BitVector.of(key), BitVector.of(value));
+            array.put(key, value);
+            Bit[] probe = randomBits(6);
+            BitVector block = packed.get(BitVector.of(probe));
+            assertEquals(Arrays.toString(array.get(probe)),
+                    block == null ? "null" : Arrays.toString(block.toArray()));
+        }
+        assertEquals(array.monitor(), packed.monitor());
+    }
+
+    @Test
+    void packedCountIsTheBitArrayCount() {
+        for (CountMode mode : CountMode.values()) {
+            for (int width = 1; width <= 8; width++) {
+                for (int value = 0; value < 1 << width; value++) {
+                    Bit[] counter = BitVector.of(value, width).toArray();
+                    for (boolean up : new boolean[]{true, false}) {
+                        assertArrayEquals(CombinationalLogic.count(counter, up, mode),
+                                CombinationalLogic.count(BitVector.of(counter), up, mode).toArray());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void countersWiderThanAnIntAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CombinationalLogic.count(BitVector.zeros(32), true, CountMode.SATURATING));
+        assertThrows(IllegalArgumentException.class,
+                () -> CombinationalLogic.count(BitVector.zeros(40).toArray(), true, CountMode.SATURATING));
+    }
+
+    private Bit[] randomBits(int length) {
+        Bit[] bits = new Bit[length];
+        for (int i = 0; i < length; i++) bits[i] = Bit.of(random.nextBoolean());
+        return bits;
+    }
+}
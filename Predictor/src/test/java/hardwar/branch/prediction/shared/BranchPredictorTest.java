@@ -0,0 +1,93 @@
+package hardwar.branch.prediction.shared;
+
+import hardwar.branch.prediction.judged.GAg.GAg;
+import hardwar.branch.prediction.judged.PAg.PAg;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+the default batch functions of BranchPredictor
+ */
+class BranchPredictorTest {
+    private static final int BRANCHES = 3000;
+
+    private final BranchInstruction[] instructions = new BranchInstruction[BRANCHES];
+    private final BranchResult[] actuals = new BranchResult[BRANCHES];
+
+    BranchPredictorTest() {
+        Random random = new Random(7);
+        BitVector zero = BitVector.zeros(4);
+        for (int i = 0; i < BRANCHES; i++) {
+            int address = random.nextInt(16);
+            instructions[i] = new BranchInstruction(zero, BitVector.of(address, 4), zero);
+            actuals[i] = BranchResult.of((address & 1) == 0 || random.nextInt(4) == 0);
+        }
+    }
+
+    @Test
+    void bitSetBatchIsTheBooleanBatch() {
+        BranchPredictor expected = new PAg(4, 2, 4);
+        BranchPredictor actual = new PAg(4, 2, 4);
+        boolean[] predictions = new boolean[BRANCHES];
+        BitSet bits = new BitSet();
+        bits.set(0, BRANCHES);
+
+        for (int offset = 0; offset < BRANCHES; offset += 700) {
+            int length = Math.min(700, BRANCHES - offset);
+            assertEquals(expected.predictAndUpdate(instructions, actuals, predictions, offset, length),
+                    actual.predictAndUpdate(instructions, actuals, bits, offset, length));
+        }
+        for (int i = 0; i < BRANCHES; i++) assertEquals(predictions[i], bits.get(i), "branch " + i);
+    }
+
+    @Test
+    void defaultBatchIsTheSingleBranchPath() {
+        BranchPredictor single = new Counter();
+        BranchPredictor batch = new Counter();
+        boolean[] predictions = new boolean[BRANCHES];
+
+        int correct = 0;
+        for (int i = 0; i < 100; i++) {
+            if (single.predictAndUpdate(instructions[i], actuals[i]) == actuals[i]) correct++;
+        }
+        assertEquals(correct, batch.predictAndUpdate(instructions, actuals, predictions, 0, 100));
+        assertEquals(single.predict(instructions[100]), batch.predict(instructions[100]));
+    }
+
+    @Test
+    void bitSetBatchOnlyChangesTheBitsOfTheBatch() {
+        BranchPredictor predictor = new GAg(2, 2);
+        BitSet bits = new BitSet();
+        bits.set(0, BRANCHES);
+        predictor.predictAndUpdate(instructions, actuals, bits, 1000, 500);
+
+        assertEquals(1000, bits.get(0, 1000).cardinality());
+        assertEquals(BRANCHES - 1500, bits.get(1500, BRANCHES).cardinality());
+    }
+
+    /**
+     * a single saturating counter which only implements predict and update
+     */
+    private static final class Counter implements BranchPredictor {
+        private int counter;
+
+        @Override
+        public BranchResult predict(BranchInstruction instruction) {
+            return BranchResult.of(counter >= 2);
+        }
+
+        @Override
+        public void update(BranchInstruction instruction, BranchResult actual) {
+            counter = BranchResult.isTaken(actual) ? Math.min(counter + 1, 3) : Math.max(counter - 1, 0);
+        }
+
+        @Override
+        public String monitor() {
+            return "counter: " + counter + "\n";
+        }
+    }
+}
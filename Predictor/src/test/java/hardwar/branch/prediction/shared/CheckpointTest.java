@@ -0,0 +1,143 @@
+package hardwar.branch.prediction.shared;
+
+import hardwar.branch.prediction.judged.GAs.GAs;
+import hardwar.branch.prediction.judged.PAp.PAp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointTest {
+    private static final int BRANCHES = 5000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoredPredictorContinuesLikeTheSavedOne() throws IOException {
+        BranchPredictor saved = new PAp(4, 2, 6, StorageMode.MAP, CountMode.UP_DOWN);
+        BranchPredictor restored = new PAp(4, 2, 6, StorageMode.MAP, CountMode.UP_DOWN);
+        roundTrip(saved, restored);
+
+        assertEquals(saved.monitor(), restored.monitor());
+        assertSamePredictions(saved, restored);
+    }
+
+    @Test
+    void checkpointIsSharedBetweenStorageModes() throws IOException {
+        BranchPredictor saved = new PAp(4, 2, 6, StorageMode.MAP, CountMode.SATURATING);
+        BranchPredictor restored = new PAp(4, 2, 6, StorageMode.DENSE, CountMode.SATURATING);
+        roundTrip(saved, restored);
+
+        assertEquals(saved.getOccupancy(), restored.getOccupancy());
+        assertSamePredictions(saved, restored);
+    }
+
+    @Test
+    void setAssociativeTableRestoresIntoTheSameGeometry() throws IOException {
+        BranchPredictor saved = new GAs(4, 2, 8, 4, HashMode.XOR, StorageMode.SET_ASSOCIATIVE);
+        BranchPredictor restored = new GAs(4, 2, 8, 4, HashMode.XOR, StorageMode.SET_ASSOCIATIVE);
+        roundTrip(saved, restored);
+
+        assertSamePredictions(saved, restored);
+    }
+
+    @Test
+    void setAssociativeBankRestoresIntoTheSameGeometry() throws IOException {
+        // 16 entries for 64 addresses, so both the BHRs and the PHT entries are replaced
+        SetAssociativeBudget budget = new SetAssociativeBudget(16, 4, ReplacementPolicy.PSEUDO_LRU);
+        BranchPredictor saved = new PAp(4, 2, 6, StorageMode.SET_ASSOCIATIVE, CountMode.SATURATING, budget);
+        BranchPredictor restored = new PAp(4, 2, 6, StorageMode.SET_ASSOCIATIVE, CountMode.SATURATING, budget);
+        roundTrip(saved, restored);
+
+        assertEquals(saved.monitor(), restored.monitor());
+        assertSamePredictions(saved, restored);
+
+        BranchPredictor other = new PAp(4, 2, 6, StorageMode.SET_ASSOCIATIVE, CountMode.SATURATING,
+                new SetAssociativeBudget(16, 2, ReplacementPolicy.PSEUDO_LRU));
+        assertThrows(IOException.class, () -> roundTrip(saved, other));
+    }
+
+    @Test
+    void differentCountModeIsRejected() throws IOException {
+        BranchPredictor saved = new GAs(4, 2, 8, 4, HashMode.XOR, StorageMode.DENSE, CountMode.SATURATING);
+        BranchPredictor restored = new GAs(4, 2, 8, 4, HashMode.XOR, StorageMode.DENSE, CountMode.UP_DOWN);
+
+        IOException e = assertThrows(IOException.class, () -> roundTrip(saved, restored));
+        assertTrue(e.getMessage().contains("count mode"), e.getMessage());
+    }
+
+    @Test
+    void differentHashModeIsRejected() throws IOException {
+        BranchPredictor saved = new GAs(4, 2, 8, 4, HashMode.XOR, StorageMode.DENSE);
+        BranchPredictor restored = new GAs(4, 2, 8, 4, HashMode.GSHARE, StorageMode.DENSE);
+
+        IOException e = assertThrows(IOException.class, () -> roundTrip(saved, restored));
+        assertTrue(e.getMessage().contains("hash mode"), e.getMessage());
+    }
+
+    @Test
+    void differentSizesAreRejected() throws IOException {
+        BranchPredictor saved = new PAp(4, 2, 6, StorageMode.DENSE, CountMode.SATURATING);
+        BranchPredictor restored = new PAp(5, 2, 6, StorageMode.DENSE, CountMode.SATURATING);
+
+        assertThrows(IOException.class, () -> roundTrip(saved, restored));
+    }
+
+    @Test
+    void truncatedCheckpointIsRejected() throws IOException {
+        BranchPredictor saved = new PAp(4, 2, 6, StorageMode.DENSE, CountMode.SATURATING);
+        replay(saved, 1, BRANCHES);
+        Path file = directory.resolve("truncated.ckpt");
+        CheckpointWriter.save(saved, file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        BranchPredictor restored = new PAp(4, 2, 6, StorageMode.DENSE, CountMode.SATURATING);
+        assertThrows(IOException.class, () -> CheckpointReader.restore(restored, file));
+    }
+
+    /**
+     * train the saved predictor, save it into a file and restore the file into the other predictor
+     */
+    private void roundTrip(BranchPredictor saved, BranchPredictor restored) throws IOException {
+        replay(saved, 1, BRANCHES);
+        Path file = directory.resolve("predictor.ckpt");
+        CheckpointWriter.save(saved, file);
+        CheckpointReader.restore(restored, file);
+    }
+
+    /**
+     * run both predictors over a new part of the trace, they must predict every branch the same
+     */
+    private static void assertSamePredictions(BranchPredictor expected, BranchPredictor actual) {
+        assertArrayEquals(replay(expected, 2, BRANCHES), replay(actual, 2, BRANCHES));
+    }
+
+    /**
+     * @return the predictions of a trace of random 6 bit addresses, each address is mostly taken or mostly not
+     * taken
+     */
+    private static boolean[] replay(BranchPredictor predictor, long seed, int length) {
+        Random random = new Random(seed);
+        boolean[] predictions = new boolean[length];
+        BitVector zero = BitVector.of(0, 6);
+        for (int i = 0; i < length; i++) {
+            int address = random.nextInt(64);
+            boolean taken = (address % 3 == 0) != (random.nextInt(8) == 0);
+            BranchInstruction instruction = new BranchInstruction(zero, BitVector.of(address, 6), zero);
+            predictions[i] = BranchResult.isTaken(predictor.predictAndUpdate(instruction, BranchResult.of(taken)));
+        }
+        return predictions;
+    }
+}
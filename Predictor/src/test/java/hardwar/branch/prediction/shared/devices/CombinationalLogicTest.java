@@ -0,0 +1,190 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.HashMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CombinationalLogicTest {
+    private final Random random = new Random(3);
+
+    @Test
+    void xorHashIsTheBitwiseFold() {
+        for (int length = 1; length <= 130; length++) {
+            for (int out : new int[]{1, 3, 8, 13}) {
+                Bit[] input = randomBits(length);
+                Bit[] expected = fold(input, out);
+                assertArrayEquals(expected, CombinationalLogic.hash(input, out, HashMode.XOR), "length " + length);
+                assertArrayEquals(expected, CombinationalLogic.hash(input, out, HashMode.GSHARE));
+            }
+        }
+    }
+
+    @Test
+    void packedHashIsTheBitArrayHash() {
+        for (HashMode mode : HashMode.values()) {
+            for (int length = 0; length <= BitVector.MAX_LENGTH; length++) {
+                Bit[] input = randomBits(length);
+                assertArrayEquals(CombinationalLogic.hash(input, 10, mode),
+                        CombinationalLogic.hash(BitVector.of(input), 10, mode).toArray(), mode + " " + length);
+            }
+        }
+    }
+
+    @Test
+    void simpleCutKeepsTheFirstBits() {
+        Bit[] input = randomBits(100);
+        assertArrayEquals(Arrays.copyOf(input, 10), CombinationalLogic.hash(input, 10, HashMode.SIMPLE_CUT));
+        assertArrayEquals(Arrays.copyOf(input, 64), CombinationalLogic.hash(input, 64, HashMode.SIMPLE_CUT));
+        Bit[] shorter = BitVector.of(0b101, 3).toArray();
+        assertEquals("10100", Bit.arrayToString(CombinationalLogic.hash(shorter, 5, HashMode.SIMPLE_CUT)));
+    }
+
+    @Test
+    void wideFibonacciInputIsFoldedToAWord() {
+        Bit[] input = randomBits(150);
+        assertArrayEquals(CombinationalLogic.hash(fold(input, BitVector.MAX_LENGTH), 12, HashMode.FIBONACCI),
+                CombinationalLogic.hash(input, 12, HashMode.FIBONACCI));
+    }
+
+    @Test
+    void gshareIsTheXorOfTheFoldedInputAndHistory() {
+        for (int length : new int[]{5, 40, 64, 65, 100}) {
+            Bit[] input = randomBits(length);
+            Bit[] history = randomBits(length + 7);
+            Bit[] expected = xor(fold(input, 9), fold(history, 9));
+            assertArrayEquals(expected, CombinationalLogic.hash(input, history, 9, HashMode.GSHARE), "length " + length);
+            // the other modes ignore the history
+            assertArrayEquals(fold(input, 9), CombinationalLogic.hash(input, history, 9, HashMode.XOR));
+        }
+        Bit[] input = BitVector.of(0b1100, 4).toArray();
+        Bit[] history = BitVector.of(0b0110, 4).toArray();
+        assertNotEquals(Bit.arrayToString(CombinationalLogic.hash(input, 4, HashMode.XOR)),
+                Bit.arrayToString(CombinationalLogic.hash(input, history, 4, HashMode.GSHARE)));
+    }
+
+    @Test
+    void saturatingCounterStopsAtBothLimits() {
+        for (int width = 1; width <= 31; width++) {
+            int max = (int) BitVector.mask(width);
+            assertEquals(max, CombinationalLogic.count(max, width, true, CountMode.SATURATING), "width " + width);
+            assertEquals(0, CombinationalLogic.count(0, width, false, CountMode.SATURATING), "width " + width);
+            assertEquals(max, CombinationalLogic.count(max - 1, width, true, CountMode.SATURATING));
+            assertEquals(max - 1, CombinationalLogic.count(max, width, false, CountMode.SATURATING));
+        }
+        for (int value = 1; value < 7; value++) {
+            assertEquals(value + 1, CombinationalLogic.count(value, 3, true, CountMode.SATURATING));
+            assertEquals(value - 1, CombinationalLogic.count(value, 3, false, CountMode.SATURATING));
+        }
+    }
+
+    @Test
+    void upDownCounterWrapsAroundAtBothLimits() {
+        assertEquals(0, CombinationalLogic.count(0b111, 3, true, CountMode.UP_DOWN));
+        assertEquals(0b111, CombinationalLogic.count(0, 3, false, CountMode.UP_DOWN));
+        assertEquals(0, CombinationalLogic.count(1, 1, true, CountMode.UP_DOWN));
+        assertEquals(0, CombinationalLogic.count(Integer.MAX_VALUE, 31, true, CountMode.UP_DOWN));
+        for (int value = 1; value < 7; value++) {
+            assertEquals(value + 1, CombinationalLogic.count(value, 3, true, CountMode.UP_DOWN));
+            assertEquals(value - 1, CombinationalLogic.count(value, 3, false, CountMode.UP_DOWN));
+        }
+    }
+
+    @Test
+    void johnsonCounterWalksItsRing() {
+        // counting up shifts to the right and inserts the complement of the last bit as the first bit
+        int[] ring = {0b000, 0b100, 0b110, 0b111, 0b011, 0b001};
+        for (int i = 0; i < ring.length; i++) {
+            int next = ring[(i + 1) % ring.length];
+            assertEquals(next, CombinationalLogic.count(ring[i], 3, true, CountMode.JOHNSON), "up from " + ring[i]);
+            assertEquals(ring[i], CombinationalLogic.count(next, 3, false, CountMode.JOHNSON), "down from " + next);
+        }
+    }
+
+    @Test
+    void johnsonCounterHasTwiceAsManyStatesAsBits() {
+        for (int width = 1; width <= 31; width++) {
+            int value = 0;
+            for (int step = 1; step <= 2 * width; step++) {
+                value = CombinationalLogic.count(value, width, true, CountMode.JOHNSON);
+                assertEquals(step == 2 * width, value == 0, "width " + width + " step " + step);
+            }
+        }
+    }
+
+    @Test
+    void bitArrayAndPackedCountAreTheKernel() {
+        for (CountMode mode : CountMode.values()) {
+            for (int width = 1; width <= 31; width++) {
+                for (int i = 0; i < 50; i++) {
+                    int value = (int) (random.nextLong() & BitVector.mask(width));
+                    boolean up = random.nextBoolean();
+                    int expected = CombinationalLogic.count(value, width, up, mode);
+                    String where = mode + " " + width + " " + value;
+                    assertEquals(expected,
+                            Bit.toNumber(CombinationalLogic.count(BitVector.of(value, width).toArray(), up, mode)),
+                            where);
+                    assertEquals(expected, CombinationalLogic.count(BitVector.of(value, width), up, mode).toNumber(),
+                            where);
+                }
+            }
+        }
+    }
+
+    @Test
+    void batchCountsOnlyTheCountersInRange() {
+        for (CountMode mode : CountMode.values()) {
+            int[] counters = new int[20];
+            boolean[] up = new boolean[20];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = random.nextInt(1 << 5);
+                up[i] = random.nextBoolean();
+            }
+            int[] expected = counters.clone();
+            for (int i = 3; i < 3 + 12; i++) expected[i] = CombinationalLogic.count(counters[i], 5, up[i], mode);
+
+            CombinationalLogic.count(counters, up, 3, 12, 5, mode);
+            assertArrayEquals(expected, counters, mode.toString());
+        }
+    }
+
+    @Test
+    void counterWiderThanAnIntIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CombinationalLogic.count(BitVector.zeros(32), true, CountMode.SATURATING));
+        assertThrows(IllegalArgumentException.class,
+                () -> CombinationalLogic.count(BitVector.zeros(32).toArray(), false, CountMode.SATURATING));
+    }
+
+    /**
+     * the reference xor hash, the bit i of the input is xor-ed into the bit (i % K) of the output
+     */
+    private static Bit[] fold(Bit[] input, int out) {
+        boolean[] hash = new boolean[out];
+        for (int i = 0; i < input.length; i++) hash[i % out] ^= input[i].getValue();
+        Bit[] bits = new Bit[out];
+        for (int i = 0; i < out; i++) bits[i] = Bit.of(hash[i]);
+        return bits;
+    }
+
+    private static Bit[] xor(Bit[] a, Bit[] b) {
+        Bit[] bits = new Bit[a.length];
+        for (int i = 0; i < a.length; i++) bits[i] = Bit.of(a[i].getValue() ^ b[i].getValue());
+        return bits;
+    }
+
+    private Bit[] randomBits(int length) {
+        Bit[] bits = new Bit[length];
+        for (int i = 0; i < length; i++) bits[i] = Bit.of(random.nextBoolean());
+        return bits;
+    }
+}
@@ -0,0 +1,55 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.shared.CountMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrentPageHistoryTableTest {
+    private static final int THREADS = 4;
+    private static final int COUNTS = 100_000;
+
+    @Test
+    void countsOfTheSameEntryAreNotLost() throws InterruptedException {
+        ConcurrentPageHistoryTable table = new ConcurrentPageHistoryTable(4, 24);
+        run(() -> {
+            for (int i = 0; i < COUNTS; i++) table.count(1, 0, 24, true, CountMode.UP_DOWN);
+        });
+
+        assertEquals(THREADS * COUNTS, table.get(1));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void countsOfThePerAddressTableAreNotLost() throws InterruptedException {
+        ConcurrentPerAddressPredictionHistoryTable table = new ConcurrentPerAddressPredictionHistoryTable(2, 4, 24);
+        run(() -> {
+            for (int i = 0; i < COUNTS; i++) table.count(5, 0, 24, true, CountMode.UP_DOWN);
+        });
+
+        assertEquals(THREADS * COUNTS, table.get(5));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void saturatingCountsStopAtTheMaximum() throws InterruptedException {
+        ConcurrentPageHistoryTable table = new ConcurrentPageHistoryTable(1, 2);
+        run(() -> {
+            for (int i = 0; i < COUNTS; i++) table.count(0, 0, 2, true, CountMode.SATURATING);
+        });
+
+        assertEquals(3, table.get(0));
+    }
+
+    /**
+     * run the task in THREADS threads at once and wait for all of them
+     */
+    static void run(Runnable task) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(task);
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+    }
+}
@@ -0,0 +1,92 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/*
+the tables have 2 sets, so the set of an entry is the parity of its bits and the entries of SET are all in
+the first set
+ */
+class SetAssociativePageHistoryTableTest {
+    private static final long[] SET = {0b0000, 0b0011, 0b0101, 0b0110, 0b1001, 0b1010, 0b1100, 0b1111};
+
+    @Test
+    void lruReplacesTheLeastRecentlyUsedWay() {
+        SetAssociativePageHistoryTable table = table(ReplacementPolicy.LRU);
+        for (int i = 0; i < 4; i++) table.put(SET[i], i + 1);
+        table.get(SET[0]); // SET[1] is now the least recently used entry
+
+        table.put(SET[4], 5);
+
+        assertEquals(-1, table.get(SET[1]));
+        assertEquals(1, table.get(SET[0]));
+        assertEquals(3, table.get(SET[2]));
+        assertEquals(4, table.get(SET[3]));
+        assertEquals(5, table.get(SET[4]));
+        assertEquals(1, table.getEvictions());
+    }
+
+    @Test
+    void lruEvictsInTheOrderOfUse() {
+        SetAssociativePageHistoryTable table = table(ReplacementPolicy.LRU);
+        for (int i = 0; i < 4; i++) table.put(SET[i], i);
+
+        // each new entry replaces the oldest of the first four
+        for (int i = 0; i < 4; i++) {
+            table.put(SET[4 + i], 0);
+            for (int evicted = 0; evicted <= i; evicted++) assertEquals(-1, table.get(SET[evicted]));
+        }
+        assertEquals(4, table.getEvictions());
+    }
+
+    @Test
+    void setsDoNotEvictEachOther() {
+        SetAssociativePageHistoryTable table = table(ReplacementPolicy.LRU);
+        for (int i = 0; i < 4; i++) table.put(SET[i], 1);
+        table.put(0b0001, 2);
+        table.put(0b0010, 2);
+
+        assertEquals(0, table.getEvictions());
+        assertEquals(6, table.size());
+    }
+
+    @Test
+    void pseudoLruReplacesAWayWhichIsNotRecentlyUsed() {
+        SetAssociativePageHistoryTable table = table(ReplacementPolicy.PSEUDO_LRU);
+        for (int i = 0; i < 4; i++) table.put(SET[i], i + 1);
+        table.get(SET[0]);
+
+        // the root points away from the half of SET[0] and the other node away from the last access (SET[3]),
+        // so the victim is SET[2]
+        table.put(SET[4], 5);
+
+        assertEquals(-1, table.get(SET[2]));
+        assertEquals(1, table.get(SET[0]));
+        assertEquals(2, table.get(SET[1]));
+        assertEquals(4, table.get(SET[3]));
+        assertEquals(1, table.getEvictions());
+    }
+
+    @Test
+    void countOfAMissingEntryStartsFromTheDefault() {
+        SetAssociativePageHistoryTable table = table(ReplacementPolicy.LRU);
+        assertEquals(3, table.count(0, 2, 2, true, CountMode.SATURATING));
+        assertEquals(3, table.get(0));
+    }
+
+    @Test
+    void invalidGeometryIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new SetAssociativePageHistoryTable(8, 3, 4, 2, ReplacementPolicy.LRU));
+        assertThrows(IllegalArgumentException.class,
+                () -> new SetAssociativePageHistoryTable(8, 2, 3, 2, ReplacementPolicy.PSEUDO_LRU));
+    }
+
+    private static SetAssociativePageHistoryTable table(ReplacementPolicy policy) {
+        return new SetAssociativePageHistoryTable(8, 2, 4, 2, policy);
+    }
+}
@@ -0,0 +1,101 @@
+package hardwar.branch.prediction.shared.devices;
+
+import hardwar.branch.prediction.judged.PAp.PAp;
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.CheckpointReader;
+import hardwar.branch.prediction.shared.CheckpointWriter;
+import hardwar.branch.prediction.shared.CountMode;
+import hardwar.branch.prediction.shared.ReplacementPolicy;
+import hardwar.branch.prediction.shared.SetAssociativeBudget;
+import hardwar.branch.prediction.shared.StorageMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+the banks have 2 sets, so the set of a selector is the parity of its bits and the selectors of SET are all
+in the first set
+ */
+class SetAssociativeRegisterBankTest {
+    private static final long[] SET = {0b0000, 0b0011, 0b0101};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replacedRegisterIsReadAsZero() {
+        SetAssociativeRegisterBank bank = new SetAssociativeRegisterBank(4, 2, 2, 4, ReplacementPolicy.LRU);
+        bank.write(BitVector.of(SET[0], 4), BitVector.of(0b1010, 4));
+        bank.write(BitVector.of(SET[1], 4), BitVector.of(0b0110, 4));
+        bank.write(BitVector.of(0b0001, 4), BitVector.of(0b1111, 4));
+        assertEquals(0, bank.getEvictions());
+
+        bank.shiftIn(SET[2], Bit.ONE); // replaces SET[0], the least recently used register
+
+        assertEquals(1, bank.getEvictions());
+        assertEquals(0b0110, bank.readAsLong(SET[1]));
+        assertEquals(0b1000, bank.readAsLong(SET[2])); // the bit is shifted in as the first bit
+        assertEquals(0, bank.readAsLong(SET[0]));
+        assertEquals(0b1111, bank.readAsLong(0b0001));
+    }
+
+    @Test
+    void bankWithAWayForEverySelectorKeepsEveryRegister() {
+        SetAssociativeRegisterBank bank = new SetAssociativeRegisterBank(6, 16, 4, 8, ReplacementPolicy.LRU);
+        for (long selector = 0; selector < 64; selector++) {
+            bank.write(BitVector.of(selector, 6), BitVector.of(selector, 8));
+        }
+        for (long selector = 0; selector < 64; selector++) assertEquals(selector, bank.readAsLong(selector));
+        assertEquals(0, bank.getEvictions());
+    }
+
+    @Test
+    void factoryBoundsTheBankOfWideAddresses() {
+        // a dense bank of 40 bit selectors does not fit in an array, the set associative one has the budget
+        SetAssociativeBudget budget = new SetAssociativeBudget(64, 4, ReplacementPolicy.RANDOM);
+        PackedRegisterBank bank = DeviceFactory.registerBank(StorageMode.SET_ASSOCIATIVE, 40, 4, budget);
+        assertTrue(bank instanceof SetAssociativeRegisterBank);
+        assertEquals(64, ((SetAssociativeRegisterBank) bank).getCapacity());
+
+        PAp predictor = new PAp(4, 2, 40, StorageMode.SET_ASSOCIATIVE, CountMode.SATURATING, budget);
+        Random random = new Random(5);
+        BitVector zero = BitVector.zeros(4);
+        for (int i = 0; i < 10000; i++) {
+            BitVector address = BitVector.of(random.nextLong() >>> 24, 40);
+            predictor.predictAndUpdate(new BranchInstruction(zero, address, zero), BranchResult.of(i % 3 == 0));
+        }
+        assertTrue(predictor.getOccupancy() <= 64, "occupancy " + predictor.getOccupancy());
+    }
+
+    @Test
+    void checkpointRestoresTheTagsAndTheRegisters() throws IOException {
+        SetAssociativeRegisterBank saved = new SetAssociativeRegisterBank(8, 4, 4, 6, ReplacementPolicy.LRU);
+        Random random = new Random(9);
+        for (int i = 0; i < 500; i++) {
+            saved.shiftIn(random.nextInt(256), Bit.of(random.nextBoolean()));
+        }
+        Path file = directory.resolve("bank.ckpt");
+        CheckpointWriter.save(saved, file);
+
+        SetAssociativeRegisterBank restored = new SetAssociativeRegisterBank(8, 4, 4, 6, ReplacementPolicy.LRU);
+        CheckpointReader.restore(restored, file);
+        assertEquals(saved.monitor(), restored.monitor());
+        for (int i = 0; i < 500; i++) {
+            long selector = random.nextInt(256);
+            assertEquals(saved.readAsLong(selector), restored.readAsLong(selector));
+        }
+
+        SetAssociativeRegisterBank other = new SetAssociativeRegisterBank(8, 8, 2, 6, ReplacementPolicy.LRU);
+        assertThrows(IOException.class, () -> CheckpointReader.restore(other, file));
+    }
+}
@@ -0,0 +1,96 @@
+package hardwar.branch.prediction.simulation;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import hardwar.branch.prediction.shared.HashMode;
+import hardwar.branch.prediction.shared.StorageMode;
+import hardwar.branch.prediction.trace.TraceReader;
+import hardwar.branch.prediction.trace.TraceRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParameterSweepTest {
+    private static final HashMode[] HASH_MODES = {HashMode.XOR, HashMode.GSHARE};
+
+    @Test
+    void sweepRunsEveryConfiguration() throws IOException {
+        DecodedTrace trace = trace(8, 8);
+        ParameterSweep sweep = new ParameterSweep(PredictorFamily.PAs, new int[]{2, 4}, new int[]{2},
+                new int[]{8}, new int[]{2, 3}, HASH_MODES, StorageMode.DENSE);
+
+        List<SweepResult> results = sweep.run(trace);
+        assertEquals(8, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(sweep.getConfigurations().get(i), results.get(i).getConfiguration());
+            assertEquals(trace.size(), results.get(i).getBranches());
+        }
+    }
+
+    @Test
+    void everyFamilyRunsTheTrace() throws IOException {
+        DecodedTrace trace = trace(8, 8);
+        for (PredictorFamily family : PredictorFamily.values()) {
+            for (StorageMode storageMode : StorageMode.values()) {
+                ParameterSweep sweep = new ParameterSweep(family, new int[]{4}, new int[]{2}, new int[]{8},
+                        new int[]{3}, HASH_MODES, storageMode);
+                for (SweepResult result : sweep.run(trace)) {
+                    assertEquals(trace.size(), result.getBranches(), family + " " + storageMode);
+                    assertTrue(result.getConfiguration().getStorageBits() > 0, family + " " + storageMode);
+                }
+            }
+        }
+    }
+
+    @Test
+    void branchInstructionSizeMustBeTheAddressWidth() throws IOException {
+        DecodedTrace trace = trace(8, 8);
+        assertEquals(8, trace.getInstructionAddressLength());
+        ParameterSweep sweep = new ParameterSweep(PredictorFamily.PAp, new int[]{4}, new int[]{2},
+                new int[]{8, 6}, new int[]{4}, HASH_MODES, StorageMode.MAP);
+        assertThrows(IllegalArgumentException.class, () -> sweep.run(trace));
+
+        // GAg does not use the branch address, so any size is taken
+        ParameterSweep global = new ParameterSweep(PredictorFamily.GAg, new int[]{4}, new int[]{2},
+                new int[]{6}, new int[]{4}, HASH_MODES, StorageMode.MAP);
+        assertEquals(1, global.run(trace).size());
+    }
+
+    @Test
+    void traceOfDifferentWidthsIsRejected() throws IOException {
+        DecodedTrace trace = trace(8, 9);
+        assertEquals(-1, trace.getInstructionAddressLength());
+        ParameterSweep sweep = new ParameterSweep(PredictorFamily.SAg, new int[]{4}, new int[]{2},
+                new int[]{8}, new int[]{4}, HASH_MODES, StorageMode.MAP);
+        assertThrows(IllegalArgumentException.class, () -> sweep.run(trace));
+    }
+
+    /**
+     * @return a trace of 1000 branches, the address of the last one is lastWidth bits long
+     */
+    private static DecodedTrace trace(int width, int lastWidth) throws IOException {
+        return DecodedTrace.load(new TraceReader() {
+            private int index;
+
+            @Override
+            public TraceRecord next() {
+                if (index == 1000) return null;
+                int address = index * 7 % 23;
+                BitVector zero = BitVector.zeros(2);
+                BranchInstruction instruction = new BranchInstruction(zero,
+                        BitVector.of(address, index == 999 ? lastWidth : width), zero);
+                return new TraceRecord(instruction, BranchResult.of(index++ % 3 != 0));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+}
@@ -0,0 +1,172 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.BitVector;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static hardwar.branch.prediction.trace.JsonTraceReaderTest.assertBranch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryTraceReaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsTheWrittenBranches() throws IOException {
+        Path file = directory.resolve("trace.bin");
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(file, 2, 3, 1)) {
+            writer.write(branch(0b10, 2, 0b011, 3, 1, 1), BranchResult.TAKEN);
+            writer.write(branch(0b00, 2, 0b100, 3, 0, 1), BranchResult.NOT_TAKEN);
+        }
+
+        try (BinaryTraceReader reader = new BinaryTraceReader(file)) {
+            assertEquals(2, reader.getCount());
+            assertEquals(2, reader.getOpcodeBits());
+            assertEquals(3, reader.getAddressBits());
+            assertEquals(1, reader.getJumpBits());
+
+            TraceRecord first = reader.next();
+            assertBranch("10", "011", "1", first.getInstruction());
+            assertEquals(BranchResult.TAKEN, first.getResult());
+            TraceRecord second = reader.next();
+            assertBranch("00", "100", "0", second.getInstruction());
+            assertEquals(BranchResult.NOT_TAKEN, second.getResult());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void recordsOfEightBytesAreRead() throws IOException {
+        Path file = directory.resolve("wide.bin");
+        long address = -1L >>> 34; // 30 ones
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(file, 3, 30, 30)) {
+            writer.write(branch(0b101, 3, address, 30, 1, 30), BranchResult.TAKEN);
+        }
+
+        try (BinaryTraceReader reader = new BinaryTraceReader(file)) {
+            BranchInstruction[] instructions = new BranchInstruction[2];
+            BranchResult[] results = new BranchResult[2];
+            assertEquals(1, reader.read(instructions, results, 0, 2));
+            assertEquals(BitVector.of(0b101, 3), instructions[0].getPackedOpcode());
+            assertEquals(BitVector.of(address, 30), instructions[0].getPackedInstructionAddress());
+            assertEquals(BitVector.of(1, 30), instructions[0].getPackedJumpAddress());
+            assertEquals(BranchResult.TAKEN, results[0]);
+            assertEquals(-1, reader.read(instructions, results, 0, 2));
+        }
+    }
+
+    @Test
+    void addressesOf32BitsAreRead() throws IOException {
+        Path file = directory.resolve("pc32.bin");
+        long pc = 0xDEADBEEFL;
+        long target = 0x80000004L;
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(file, 4, 32, 32)) {
+            writer.write(branch(0b1001, 4, pc, 32, target, 32), BranchResult.NOT_TAKEN);
+            writer.write(branch(0b0110, 4, target, 32, pc, 32), BranchResult.TAKEN);
+        }
+        // a byte of the opcode and the taken bit and 4 bytes of each address
+        assertEquals(16 + 2 * 9, Files.size(file));
+
+        try (BinaryTraceReader reader = new BinaryTraceReader(file)) {
+            TraceRecord first = reader.next();
+            assertEquals(BitVector.of(0b1001, 4), first.getInstruction().getPackedOpcode());
+            assertEquals(BitVector.of(pc, 32), first.getInstruction().getPackedInstructionAddress());
+            assertEquals(BitVector.of(target, 32), first.getInstruction().getPackedJumpAddress());
+            assertEquals(BranchResult.NOT_TAKEN, first.getResult());
+            TraceRecord second = reader.next();
+            assertEquals(BitVector.of(0b0110, 4), second.getInstruction().getPackedOpcode());
+            assertEquals(BitVector.of(target, 32), second.getInstruction().getPackedInstructionAddress());
+            assertEquals(BitVector.of(pc, 32), second.getInstruction().getPackedJumpAddress());
+            assertEquals(BranchResult.TAKEN, second.getResult());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void addressesOf64BitsAreRead() throws IOException {
+        Path file = directory.resolve("pc64.bin");
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(file, 63, 64, 64)) {
+            writer.write(branch(-1L >>> 1, 63, -1L, 64, Long.MIN_VALUE, 64), BranchResult.TAKEN);
+        }
+
+        try (BinaryTraceReader reader = new BinaryTraceReader(file)) {
+            TraceRecord record = reader.next();
+            assertEquals(BitVector.of(-1L >>> 1, 63), record.getInstruction().getPackedOpcode());
+            assertEquals(BitVector.of(-1L, 64), record.getInstruction().getPackedInstructionAddress());
+            assertEquals(BitVector.of(Long.MIN_VALUE, 64), record.getInstruction().getPackedJumpAddress());
+            assertEquals(BranchResult.TAKEN, record.getResult());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new BinaryTraceWriter(file, 64, 32, 32));
+    }
+
+    @Test
+    void convertedJsonTraceIsTheSameTrace() throws IOException {
+        Path file = directory.resolve("converted.bin");
+        try (JsonTraceReader source = JsonTraceReaderTest.reader(JsonTraceReaderTest.INSTRUCTIONS,
+                JsonTraceReaderTest.RESULTS)) {
+            assertEquals(2, TraceConverter.convert(source, file));
+        }
+
+        try (JsonTraceReader expected = JsonTraceReaderTest.reader(JsonTraceReaderTest.INSTRUCTIONS,
+                JsonTraceReaderTest.RESULTS);
+             BinaryTraceReader actual = new BinaryTraceReader(file)) {
+            TraceRecord record;
+            while ((record = expected.next()) != null) {
+                TraceRecord converted = actual.next();
+                assertEquals(record.getInstruction().getPackedOpcode(),
+                        converted.getInstruction().getPackedOpcode());
+                assertEquals(record.getInstruction().getPackedInstructionAddress(),
+                        converted.getInstruction().getPackedInstructionAddress());
+                assertEquals(record.getInstruction().getPackedJumpAddress(),
+                        converted.getInstruction().getPackedJumpAddress());
+                assertEquals(record.getResult(), converted.getResult());
+            }
+            assertNull(actual.next());
+        }
+    }
+
+    @Test
+    void branchOfOtherWidthsIsRejected() throws IOException {
+        Path file = directory.resolve("widths.bin");
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(file, 2, 3, 1)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> writer.write(branch(0, 2, 0, 4, 0, 1), BranchResult.TAKEN));
+        }
+    }
+
+    @Test
+    void fileWhichIsNotATraceIsRejected() throws IOException {
+        Path file = directory.resolve("text.bin");
+        Files.write(file, "not a binary trace file".getBytes("UTF-8"));
+        assertThrows(IOException.class, () -> new BinaryTraceReader(file));
+    }
+
+    @Test
+    void truncatedTraceIsRejected() throws IOException {
+        Path file = directory.resolve("truncated.bin");
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(file, 2, 3, 1)) {
+            for (int i = 0; i < 10; i++) writer.write(branch(i & 3, 2, i & 7, 3, 0, 1), BranchResult.TAKEN);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        assertThrows(IOException.class, () -> new BinaryTraceReader(file));
+    }
+
+    private static BranchInstruction branch(long opcode, int opcodeBits, long address, int addressBits, long jump,
+                                            int jumpBits) {
+        return new BranchInstruction(BitVector.of(opcode, opcodeBits), BitVector.of(address, addressBits),
+                BitVector.of(jump, jumpBits));
+    }
+}
@@ -0,0 +1,142 @@
+package hardwar.branch.prediction.trace;
+
+import hardwar.branch.prediction.shared.Bit;
+import hardwar.branch.prediction.shared.BranchInstruction;
+import hardwar.branch.prediction.shared.BranchResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonTraceReaderTest {
+    static final String INSTRUCTIONS = "[\n"
+            + "  {\"opcode\": [\"ONE\", \"ZERO\"], \"instructionAddress\": [\"ZERO\", \"ONE\", \"ONE\"],\n"
+            + "   \"jumpAddress\": [\"ONE\"]},\n"
+            + "  {\"comment\": {\"line\": [1, 2]}, \"jumpAddress\": [\"ZERO\"], \"opcode\": [\"ZERO\", \"ZERO\"],\n"
+            + "   \"instructionAddress\": [\"ONE\", \"ZERO\", \"ZERO\"]}\n"
+            + "]";
+    static final String RESULTS = "[\"TAKEN\", \"NOT_TAKEN\"]";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsTheBranchesInOrder() throws IOException {
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, RESULTS)) {
+            TraceRecord first = reader.next();
+            assertBranch("10", "011", "1", first.getInstruction());
+            assertEquals(BranchResult.TAKEN, first.getResult());
+
+            TraceRecord second = reader.next();
+            assertBranch("00", "100", "0", second.getInstruction());
+            assertEquals(BranchResult.NOT_TAKEN, second.getResult());
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void readsChunks() throws IOException {
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, RESULTS)) {
+            BranchInstruction[] instructions = new BranchInstruction[4];
+            BranchResult[] results = new BranchResult[4];
+
+            assertEquals(2, reader.read(instructions, results, 1, 3));
+            assertBranch("10", "011", "1", instructions[1]);
+            assertEquals(BranchResult.NOT_TAKEN, results[2]);
+            assertEquals(-1, reader.read(instructions, results, 0, 4));
+        }
+    }
+
+    @Test
+    void emptyTraceHasNoBranches() throws IOException {
+        try (JsonTraceReader reader = reader(" [ ] ", "[]")) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void differentNumberOfResultsIsRejected() throws IOException {
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, "[\"TAKEN\"]")) {
+            reader.next();
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void missingFieldIsRejected() throws IOException {
+        try (JsonTraceReader reader = reader("[{\"opcode\": [\"ONE\"], \"jumpAddress\": []}]", "[\"TAKEN\"]")) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void invalidBitIsRejected() throws IOException {
+        String instructions = "[{\"opcode\": [\"TWO\"], \"instructionAddress\": [], \"jumpAddress\": []}]";
+        try (JsonTraceReader reader = reader(instructions, "[\"TAKEN\"]")) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void invalidResultIsRejected() throws IOException {
+        String instructions = "[{\"opcode\": [], \"instructionAddress\": [], \"jumpAddress\": []}]";
+        try (JsonTraceReader reader = reader(instructions, "[\"MAYBE\"]")) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void missingSeparatorIsRejected() throws IOException {
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, "[\"TAKEN\" \"NOT_TAKEN\"]")) {
+            reader.next();
+            assertThrows(IOException.class, reader::next);
+        }
+        String instructions = "[{\"opcode\": [\"ONE\" \"ONE\"], \"instructionAddress\": [], \"jumpAddress\": []}]";
+        try (JsonTraceReader reader = reader(instructions, "[\"TAKEN\"]")) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void extraSeparatorIsRejected() throws IOException {
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, "[, \"TAKEN\", \"NOT_TAKEN\"]")) {
+            assertThrows(IOException.class, reader::next);
+        }
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, "[\"TAKEN\",, \"NOT_TAKEN\"]")) {
+            reader.next();
+            assertThrows(IOException.class, reader::next);
+        }
+        try (JsonTraceReader reader = reader(INSTRUCTIONS, "[\"TAKEN\", \"NOT_TAKEN\",]")) {
+            reader.next();
+            reader.next();
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void missingResultFileIsReported() throws IOException {
+        Path instructions = directory.resolve("instruction.json");
+        Files.write(instructions, INSTRUCTIONS.getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> new JsonTraceReader(instructions, directory.resolve("result.json")));
+    }
+
+    static JsonTraceReader reader(String instructions, String results) {
+        return new JsonTraceReader(new StringReader(instructions), new StringReader(results));
+    }
+
+    static void assertBranch(String opcode, String address, String jump, BranchInstruction instruction) {
+        assertEquals(opcode, Bit.arrayToString(instruction.getOpcode()));
+        assertEquals(address, Bit.arrayToString(instruction.getInstructionAddress()));
+        assertEquals(jump, Bit.arrayToString(instruction.getJumpAddress()));
+    }
+}